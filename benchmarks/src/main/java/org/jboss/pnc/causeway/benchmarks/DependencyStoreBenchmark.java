@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.benchmarks;
+
+import com.redhat.red.build.koji.model.json.BuildRoot;
+import com.redhat.red.build.koji.model.json.KojiImport;
+
+import org.jboss.pnc.causeway.pncclient.BuildArtifacts.PncArtifact;
+import org.jboss.pnc.causeway.pncclient.DependencyStore;
+import org.jboss.pnc.enums.ArtifactQuality;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap retained by the dependencies of a PNC build, as a list of {@link PncArtifact} objects and as a
+ * {@link DependencyStore}. The retained size is reported in the {@code retainedBytes} secondary result; it is measured
+ * as the difference of used heap after full GC, so the benchmark runs single shot with a large heap. The translate
+ * benchmarks show the cost of building the Koji build root from either representation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-Xms2g", "-Xmx2g" })
+public class DependencyStoreBenchmark {
+
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    @Param({ "10000", "100000" })
+    public int size;
+
+    private List<PncArtifact> artifacts;
+
+    private DependencyStore store;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class RetainedHeap {
+        public long retainedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            retainedBytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        artifacts = pncArtifacts(size);
+        store = new DependencyStore();
+        artifacts.forEach(store::add);
+    }
+
+    @Benchmark
+    public Object pncArtifacts(RetainedHeap heap) {
+        long before = usedHeap();
+        List<PncArtifact> result = pncArtifacts(size);
+        heap.retainedBytes = usedHeap() - before;
+        return result;
+    }
+
+    @Benchmark
+    public Object dependencyStore(RetainedHeap heap) {
+        long before = usedHeap();
+        DependencyStore result = new DependencyStore();
+        for (int i = 0; i < size; i++) {
+            // same strings as the artifacts carry, they become garbage right away
+            result.add(deployPath(i), md5(i), 13245);
+        }
+        heap.retainedBytes = usedHeap() - before;
+        return result;
+    }
+
+    @Benchmark
+    public Object translatePncArtifacts() {
+        BuildRoot.Builder buildRoot = new KojiImport.Builder().withNewBuildRoot(42);
+        for (PncArtifact artifact : artifacts) {
+            buildRoot.withFileComponent(artifact.deployPath)
+                    .withChecksum("md5", artifact.checksum)
+                    .withFileSize(artifact.size);
+        }
+        return buildRoot;
+    }
+
+    @Benchmark
+    public Object translateDependencyStore() {
+        BuildRoot.Builder buildRoot = new KojiImport.Builder().withNewBuildRoot(42);
+        for (int i = 0; i < store.size(); i++) {
+            buildRoot.withFileComponent(store.getDeployPath(i))
+                    .withChecksum("md5", store.getMd5(i))
+                    .withFileSize(store.getSize(i));
+        }
+        return buildRoot;
+    }
+
+    private static List<PncArtifact> pncArtifacts(int size) {
+        List<PncArtifact> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String artifactId = "dependency-" + i / 4;
+            result.add(
+                    new PncArtifact(
+                            String.valueOf(i),
+                            "org.jboss.pnc.bench.group" + i / 40 + ":" + artifactId + ":jar:1.0." + i % 4,
+                            deployPath(i),
+                            md5(i),
+                            "http://example.com/storage/" + deployPath(i),
+                            13245,
+                            ArtifactQuality.NEW));
+        }
+        return result;
+    }
+
+    /**
+     * Maven style path, several versions of an artifact and several artifacts of a group share the prefixes.
+     */
+    private static String deployPath(int i) {
+        String artifactId = "dependency-" + i / 4;
+        String version = "1.0." + i % 4;
+        return "org/jboss/pnc/bench/group" + i / 40 + "/" + artifactId + "/" + version + "/" + artifactId + "-"
+                + version + ".jar";
+    }
+
+    private static String md5(int i) {
+        return String.format("%032x", i * 2654435761L);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.benchmarks;
+
+import com.codahale.metrics.MetricRegistry;
+import com.redhat.red.build.koji.model.ImportFile;
+
+import org.jboss.pnc.api.causeway.dto.push.Build;
+import org.jboss.pnc.causeway.CausewayException;
+import org.jboss.pnc.causeway.brewclient.BuildTranslator;
+import org.jboss.pnc.causeway.brewclient.BuildTranslatorImpl;
+import org.jboss.pnc.causeway.brewclient.ImportFileGenerator;
+import org.jboss.pnc.causeway.brewclient.StorageClient;
+import org.jboss.pnc.causeway.config.CausewayConfig;
+import org.jboss.pnc.causeway.source.SourceRenamer;
+import org.jboss.pnc.pncmetrics.MetricsConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Fetching of all build artifacts and logs through the import file generator from a local stub storage, with and
+ * without the pooled storage client and prefetching.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImportFileGeneratorBenchmark {
+
+    @Param({ "100" })
+    public int artifacts;
+
+    @Param({ "16384" })
+    public int artifactSize;
+
+    @Param({ "false", "true" })
+    public boolean pooled;
+
+    @Param({ "1", "8" })
+    public int prefetch;
+
+    private StubStorage storage;
+    private StorageClient storageClient;
+    private ExecutorService executor;
+    private BuildTranslator translator;
+    private Build build;
+
+    @Setup
+    public void setup() throws IOException {
+        storage = new StubStorage(artifactSize);
+        CausewayConfig config = new CausewayConfig();
+        config.setPnclBuildsURL("http://example.com/build-records/");
+        config.setArtifactStorage(storage.getUrl());
+        config.setLogStorage(storage.getUrl());
+        config.configurationDone();
+        translator = new BuildTranslatorImpl(config, new SourceRenamer());
+        build = SyntheticBuilds.mavenBuild(artifacts, 0, artifactSize);
+        executor = Executors.newCachedThreadPool();
+        if (pooled) {
+            MetricRegistry registry = new MetricRegistry();
+            storageClient = new StorageClient(config, new MetricsConfiguration() {
+                @Override
+                public MetricRegistry getMetricRegistry() {
+                    return registry;
+                }
+            });
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (storageClient != null) {
+            storageClient.close();
+        }
+        executor.shutdownNow();
+        storage.close();
+    }
+
+    @Benchmark
+    public long fetchAll() throws CausewayException, IOException {
+        long total = 0;
+        byte[] buffer = new byte[8192];
+        try (ImportFileGenerator generator = translator.getImportFiles(build, null)) {
+            if (storageClient != null) {
+                generator.setStorageClient(storageClient);
+            }
+            generator.prefetch(executor, prefetch, Long.MAX_VALUE);
+            Iterator<Supplier<ImportFile>> it = generator.iterator();
+            it.next(); // skip the sources, there are none
+            while (it.hasNext()) {
+                try (InputStream in = it.next().get().getStream()) {
+                    for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                        total += read;
+                    }
+                }
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.benchmarks;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.jboss.pnc.causeway.CausewayException;
+import org.jboss.pnc.causeway.source.RenamedSources;
+import org.jboss.pnc.causeway.source.SourceRenamer;
+import org.jboss.pnc.causeway.source.SourcesCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.jboss.pnc.causeway.benchmarks.SyntheticBuilds.ARTIFACT_ID;
+import static org.jboss.pnc.causeway.benchmarks.SyntheticBuilds.GROUP_ID;
+import static org.jboss.pnc.causeway.benchmarks.SyntheticBuilds.VERSION;
+
+/**
+ * Repacking of synthetic source tarballs of several sizes, sequentially and with parallel compression.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SourceRenamerBenchmark {
+
+    private static final int FILE_SIZE = 256 * 1024;
+
+    @Param({ "1", "16", "128" })
+    public int sizeMb;
+
+    @Param({ "1", "4" })
+    public int threads;
+
+    private Path archive;
+    private SourceRenamer renamer;
+
+    @Setup
+    public void setup() throws IOException {
+        archive = Files.createTempFile("bench-sources-", ".tar.gz");
+        writeArchive(archive, sizeMb * 1024L * 1024L);
+        renamer = new SourceRenamer(threads, new SourcesCache());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        renamer.shutdown();
+        Files.deleteIfExists(archive);
+    }
+
+    @Benchmark
+    public String repackMaven() throws CausewayException, IOException {
+        try (InputStream input = Files.newInputStream(archive)) {
+            RenamedSources sources = renamer.repackMaven(input, GROUP_ID, ARTIFACT_ID, VERSION);
+            sources.read().close(); // deletes the repacked file
+            return sources.getMd5();
+        }
+    }
+
+    /**
+     * Writes archive with single root directory, filled with files that are partly source-like text and partly
+     * random, so that the compression ratio is realistic.
+     */
+    private static void writeArchive(Path file, long size) throws IOException {
+        Random random = new Random(42);
+        byte[] text = "public class Foo { private final String bar = \"baz\"; }\n".getBytes(StandardCharsets.UTF_8);
+        byte[] content = new byte[FILE_SIZE];
+        try (OutputStream out = Files.newOutputStream(file);
+                TarArchiveOutputStream tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(out))) {
+            TarArchiveEntry root = new TarArchiveEntry("bench-src/");
+            tar.putArchiveEntry(root);
+            tar.closeArchiveEntry();
+            for (int i = 0; (long) i * FILE_SIZE < size; i++) {
+                for (int j = 0; j < FILE_SIZE; j++) {
+                    content[j] = j % 8192 < 1024 ? (byte) random.nextInt() : text[j % text.length];
+                }
+                TarArchiveEntry entry = new TarArchiveEntry("bench-src/src/File" + i + ".java");
+                entry.setSize(FILE_SIZE);
+                tar.putArchiveEntry(entry);
+                tar.write(content);
+                tar.closeArchiveEntry();
+            }
+        }
+    }
+}
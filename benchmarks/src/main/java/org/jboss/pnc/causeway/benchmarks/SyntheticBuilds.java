@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import org.jboss.pnc.api.causeway.dto.push.Build;
+import org.jboss.pnc.api.causeway.dto.push.MavenBuild;
+import org.jboss.pnc.api.causeway.dto.push.MavenBuiltArtifact;
+
+import java.io.IOException;
+
+/**
+ * Generates Maven builds in the push API format with given number of built artifacts and dependencies.
+ */
+final class SyntheticBuilds {
+
+    static final String GROUP_ID = "org.jboss.pnc.bench";
+    static final String ARTIFACT_ID = "bench-parent";
+    static final String VERSION = "1.0.0.redhat-00001";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    static {
+        MAPPER.registerSubtypes(MavenBuild.class, MavenBuiltArtifact.class);
+        MAPPER.registerModule(new JavaTimeModule());
+    }
+
+    private SyntheticBuilds() {
+    }
+
+    /**
+     * @param artifacts Number of built artifacts.
+     * @param dependencies Number of dependencies.
+     * @param artifactSize Size declared for every built artifact.
+     */
+    static Build mavenBuild(int artifacts, int dependencies, long artifactSize) throws IOException {
+        ObjectNode build = MAPPER.createObjectNode();
+        build.put("@buildType", "maven");
+        build.put("buildName", GROUP_ID + ":" + ARTIFACT_ID);
+        build.put("externalBuildSystem", "PNC");
+        build.put("externalBuildID", 42);
+        build.put("externalBuildURL", "/pnc-rest/rest/build-records/42");
+        build.put("startTime", 1470309691844L);
+        build.put("endTime", 1470309936668L);
+        build.put("scmURL", "http://example.com/bench.git");
+        build.put("scmRevision", "bench-revision");
+        build.put("sourcesURL", "http://example.com/bench.tar.gz");
+
+        ObjectNode buildRoot = build.putObject("buildRoot");
+        buildRoot.put("container", "DOCKER_IMAGE");
+        buildRoot.put("containerArchitecture", "x86_64");
+        buildRoot.put("host", "rhel");
+        buildRoot.put("hostArchitecture", "x86_64");
+        ObjectNode tools = buildRoot.putObject("tools");
+        tools.put("JDK", "1.8.0");
+        tools.put("MAVEN", "3.6.3");
+
+        ObjectNode log = build.putArray("logs").addObject();
+        log.put("filename", "build.log");
+        log.put("deployPath", "/logs/42/build.log");
+        log.put("size", 1024);
+        log.put("md5", "bedf8af1b107b36c72f52009e6fcc768");
+
+        ArrayNode deps = build.putArray("dependencies");
+        for (int i = 0; i < dependencies; i++) {
+            ObjectNode dependency = deps.addObject();
+            dependency.put("filename", "dependency-" + i + "-1.0.jar");
+            dependency.put("md5", "bedf8af1b107b36c72f52009e6fcc768");
+            dependency.put("size", 13245);
+        }
+
+        ArrayNode built = build.putArray("builtArtifacts");
+        for (int i = 0; i < artifacts; i++) {
+            String artifactId = i == 0 ? ARTIFACT_ID : "bench-module-" + i;
+            String filename = artifactId + "-" + VERSION + ".jar";
+            ObjectNode artifact = built.addObject();
+            artifact.put("@artifactType", "maven");
+            artifact.put("id", i);
+            artifact.put("filename", filename);
+            artifact.put("architecture", "noarch");
+            artifact.put("md5", "bedf8af1b107b36c72f52009e6fcc768");
+            artifact.put("repositoryPath", "/api/hosted/build_bench");
+            artifact.put(
+                    "artifactPath",
+                    "/" + GROUP_ID.replace('.', '/') + "/" + artifactId + "/" + VERSION + "/" + filename);
+            artifact.put("size", artifactSize);
+            artifact.put("groupId", GROUP_ID);
+            artifact.put("artifactId", artifactId);
+            artifact.put("version", VERSION);
+        }
+
+        return MAPPER.treeToValue(build, Build.class);
+    }
+}
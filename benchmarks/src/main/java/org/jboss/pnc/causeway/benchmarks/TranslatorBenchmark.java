@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.benchmarks;
+
+import com.redhat.red.build.koji.model.json.KojiImport;
+
+import org.jboss.pnc.api.causeway.dto.push.Build;
+import org.jboss.pnc.causeway.CausewayException;
+import org.jboss.pnc.causeway.brewclient.BuildTranslator;
+import org.jboss.pnc.causeway.brewclient.BuildTranslatorImpl;
+import org.jboss.pnc.causeway.config.CausewayConfig;
+import org.jboss.pnc.causeway.rest.BrewNVR;
+import org.jboss.pnc.causeway.source.RenamedSources;
+import org.jboss.pnc.causeway.source.SourceRenamer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.jboss.pnc.causeway.benchmarks.SyntheticBuilds.ARTIFACT_ID;
+import static org.jboss.pnc.causeway.benchmarks.SyntheticBuilds.GROUP_ID;
+import static org.jboss.pnc.causeway.benchmarks.SyntheticBuilds.VERSION;
+
+/**
+ * Translation of push API builds to Koji imports, with the same number of built artifacts and dependencies.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TranslatorBenchmark {
+
+    @Param({ "10", "1000", "10000" })
+    public int size;
+
+    private BuildTranslator translator;
+    private Build build;
+    private BrewNVR nvr;
+    private Path sourcesFile;
+    private RenamedSources sources;
+
+    @Setup
+    public void setup() throws IOException {
+        CausewayConfig config = new CausewayConfig();
+        config.setPnclBuildsURL("http://example.com/build-records/");
+        config.setArtifactStorage("http://example.com/storage/");
+        config.setLogStorage("http://example.com/logs/");
+        config.configurationDone();
+        translator = new BuildTranslatorImpl(config, new SourceRenamer());
+        build = SyntheticBuilds.mavenBuild(size, size, 13245);
+        nvr = new BrewNVR(GROUP_ID + ":" + ARTIFACT_ID, VERSION, "1");
+
+        sourcesFile = Files.createTempFile("bench-sources-", ".tar.gz");
+        Files.write(sourcesFile, new byte[1024]);
+        sources = new RenamedSources(
+                sourcesFile,
+                "sources.tar.gz",
+                "bedf8af1b107b36c72f52009e6fcc768",
+                new RenamedSources.ArtifactType(GROUP_ID, ARTIFACT_ID, VERSION));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(sourcesFile);
+    }
+
+    @Benchmark
+    public KojiImport translate() throws CausewayException {
+        return translator.translate(nvr, build, sources, "bench");
+    }
+
+    @Benchmark
+    public String guessVersion() throws CausewayException {
+        return BuildTranslator.guessVersion(build);
+    }
+}
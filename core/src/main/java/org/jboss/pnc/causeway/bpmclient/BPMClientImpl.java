@@ -16,17 +16,13 @@
 package org.jboss.pnc.causeway.bpmclient;
 
 import org.jboss.pnc.api.dto.Request;
+import org.jboss.pnc.causeway.ctl.CallbackDispatcher;
 import org.jboss.pnc.causeway.rest.BrewPushMilestoneResult;
 import org.jboss.pnc.causeway.rest.Callback;
 import org.jboss.pnc.causeway.rest.pnc.MilestoneReleaseResultRest;
-import org.jboss.resteasy.client.jaxrs.ResteasyClient;
-import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
-import org.jboss.resteasy.client.jaxrs.ResteasyWebTarget;
 
 import javax.enterprise.context.ApplicationScoped;
-import javax.ws.rs.client.Entity;
-import javax.ws.rs.client.Invocation;
-import javax.ws.rs.core.MediaType;
+import javax.inject.Inject;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -38,19 +34,11 @@ import lombok.extern.slf4j.Slf4j;
 @Deprecated
 @Slf4j
 public class BPMClientImpl implements BPMClient {
-    private final ResteasyClient client;
+    @Inject
+    private CallbackDispatcher callbackDispatcher;
 
-    public BPMClientImpl() {
-        client = new ResteasyClientBuilder().connectionPoolSize(4).build();
-    }
-
-    private synchronized void send(Request callback, BrewPushMilestoneResult result) {
-        log.info("Will send callback to {} using http method: {}", callback.getUri(), callback.getMethod());
-
-        ResteasyWebTarget target = client.target(callback.getUri());
-        Invocation.Builder requestBuilder = target.request(MediaType.APPLICATION_JSON);
-        callback.getHeaders().forEach(h -> requestBuilder.header(h.getName(), h.getValue()));
-        requestBuilder.method(callback.getMethod().toString(), Entity.entity(result, MediaType.APPLICATION_JSON_TYPE));
+    private void send(Request callback, BrewPushMilestoneResult result) {
+        callbackDispatcher.send(callback, result);
     }
 
     @Override
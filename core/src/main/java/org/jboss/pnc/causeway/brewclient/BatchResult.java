@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.brewclient;
+
+import org.jboss.pnc.causeway.CausewayException;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Result of a batched Brew call. Holds value or failure of every item, so that one failed item doesn't fail the whole
+ * batch.
+ */
+public class BatchResult<K, V> {
+
+    private final Map<K, V> values = new HashMap<>();
+
+    private final Map<K, CausewayException> failures = new HashMap<>();
+
+    public void put(K key, V value) {
+        values.put(key, value);
+    }
+
+    public void fail(K key, CausewayException failure) {
+        failures.put(key, failure);
+    }
+
+    /**
+     * Returns value of the item, or null when there is none.
+     *
+     * @throws CausewayException the failure of the item.
+     */
+    public V get(K key) throws CausewayException {
+        CausewayException failure = failures.get(key);
+        if (failure != null) {
+            throw failure;
+        }
+        return values.get(key);
+    }
+
+    public Map<K, CausewayException> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+}
@@ -20,6 +20,9 @@ import org.jboss.pnc.causeway.rest.BrewBuild;
 import org.jboss.pnc.causeway.rest.BrewNVR;
 import org.jboss.pnc.causeway.rest.pnc.BuildImportResultRest;
 
+import java.util.Collection;
+import java.util.Set;
+
 import com.redhat.red.build.koji.model.json.KojiImport;
 
 /**
@@ -28,6 +31,15 @@ import com.redhat.red.build.koji.model.json.KojiImport;
  */
 public interface BrewClient {
 
+    /**
+     * Opens Koji session scoped to the current thread. Until the returned handle is closed, all calls made from this
+     * thread reuse the session instead of logging in and out on every call. Scopes can be nested, the session is
+     * logged out when the outermost scope is closed.
+     *
+     * @throws CausewayException when login to Koji failed.
+     */
+    BrewSession openSession() throws CausewayException;
+
     /**
      * Find Brew build with given name:version:release that was imported by Causeway. If there isn't any such build,
      * returns null. If there is build with the NVR but it wasn't imported by causeway, CausewayFailure exception is
@@ -37,6 +49,14 @@ public interface BrewClient {
      */
     BrewBuild findBrewBuildOfNVR(BrewNVR nvr) throws CausewayException;
 
+    /**
+     * Finds Brew builds of several NVRs at once, see {@link #findBrewBuildOfNVR(BrewNVR)}. NVRs without build have no
+     * value in the result, NVRs with build that wasn't imported by Causeway have a CausewayFailure.
+     *
+     * @throws CausewayException when the communication with Brew failed.
+     */
+    BatchResult<BrewNVR, BrewBuild> findBrewBuildsOfNVRs(Collection<BrewNVR> nvrs) throws CausewayException;
+
     /**
      * Find Brew build with given id that was imported by Causeway. If there isn't such build, returns null. If there is
      * build with the id but it wasn't imported by causeway, CausewayFailure exception is thrown.
@@ -68,6 +88,13 @@ public interface BrewClient {
      */
     boolean isBuildTagged(String tag, BrewBuild build) throws CausewayException;
 
+    /**
+     * Returns those of the given builds that are tagged in given tag.
+     *
+     * @throws CausewayException when there was problem communicating with Brew.
+     */
+    Set<BrewBuild> findTaggedBuilds(String tag, Collection<BrewBuild> builds) throws CausewayException;
+
     /**
      * Tag build into given tag.
      * 
@@ -77,6 +104,15 @@ public interface BrewClient {
      */
     void tagBuild(String tag, BrewBuild build) throws CausewayException;
 
+    /**
+     * Tags several builds into given tag at once. The packages are added to the tag in one Koji multicall and the
+     * builds are tagged in another one.
+     *
+     * @return Result with failures of builds that couldn't be tagged.
+     * @throws CausewayException when there was problem communicating with Brew.
+     */
+    BatchResult<BrewBuild, Void> tagBuilds(String tag, Collection<BrewBuild> builds) throws CausewayException;
+
     void untagBuild(String tag, BrewNVR nvr) throws CausewayException;
 
 }
@@ -24,6 +24,9 @@ import com.redhat.red.build.koji.model.json.KojiJsonConstants;
 import com.redhat.red.build.koji.model.xmlrpc.KojiBuildInfo;
 import com.redhat.red.build.koji.model.xmlrpc.KojiNVR;
 import com.redhat.red.build.koji.model.xmlrpc.KojiSessionInfo;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import org.jboss.pnc.causeway.CausewayException;
 import org.jboss.pnc.causeway.CausewayFailure;
 import org.jboss.pnc.causeway.config.CausewayConfig;
@@ -31,11 +34,28 @@ import org.jboss.pnc.causeway.rest.BrewBuild;
 import org.jboss.pnc.causeway.rest.BrewNVR;
 import org.jboss.pnc.causeway.rest.pnc.BuildImportResultRest;
 import org.jboss.pnc.causeway.rest.pnc.BuildImportStatus;
+import org.jboss.pnc.causeway.util.ExpiringCache;
+import org.jboss.pnc.causeway.util.JfrEvent;
+import org.jboss.pnc.pncmetrics.MetricsConfiguration;
 
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedThreadFactory;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import com.redhat.red.build.koji.model.xmlrpc.KojiTagInfo;
 
@@ -47,14 +67,94 @@ public class BrewClientImpl implements BrewClient {
 
     public static final String BUILD_TAG_SUFIX = "-candidate";
 
+    private static final String METRICS_LOGINS = "causeway.koji.logins";
+    private static final String METRICS_LOGINS_SAVED = "causeway.koji.logins.saved";
+    private static final String METRICS_ARTIFACT_FETCH = "causeway.import.artifact.fetch";
+    private static final String METRICS_TAG_CACHE = "causeway.koji.tags.cache";
+
+    private static final int TAG_CACHE_SIZE = 1000;
+
     private final KojiClient koji;
 
     private final String brewUrl;
 
+    private final long sessionTtl;
+
+    private final ThreadLocal<ScopedSession> scopedSession = new ThreadLocal<>();
+
+    private final Counter logins;
+
+    private final Counter loginsSaved;
+
+    private final Timer artifactFetch;
+
+    private final ExpiringCache<String, Boolean> tagCache;
+
+    private final StorageClient storageClient;
+
+    private final int prefetchConcurrency;
+
+    private final long prefetchMaxBytes;
+
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    private ExecutorService prefetchExecutor;
+
     @Inject
-    public BrewClientImpl(KojiClient koji, CausewayConfig config) {
+    public BrewClientImpl(
+            KojiClient koji,
+            StorageClient storageClient,
+            CausewayConfig config,
+            MetricsConfiguration metricsConfiguration) {
         this.koji = koji;
+        this.storageClient = storageClient;
         brewUrl = config.getKojiWebURL();
+        sessionTtl = TimeUnit.SECONDS.toMillis(config.getKojiSessionTtl());
+        MetricRegistry registry = metricsConfiguration.getMetricRegistry();
+        logins = registry.counter(METRICS_LOGINS);
+        loginsSaved = registry.counter(METRICS_LOGINS_SAVED);
+        artifactFetch = registry.timer(METRICS_ARTIFACT_FETCH);
+        long tagTtl = TimeUnit.SECONDS.toMillis(config.getKojiTagCacheTtl());
+        long missingTagTtl = TimeUnit.SECONDS.toMillis(config.getKojiTagCacheNegativeTtl());
+        tagCache = new ExpiringCache<>(
+                TAG_CACHE_SIZE,
+                exists -> exists ? tagTtl : missingTagTtl,
+                registry.counter(METRICS_TAG_CACHE + ".hits"),
+                registry.counter(METRICS_TAG_CACHE + ".misses"));
+        prefetchConcurrency = config.getImportPrefetchConcurrency();
+        prefetchMaxBytes = config.getImportPrefetchSize() * 1024L * 1024L;
+    }
+
+    @PreDestroy
+    synchronized void shutdown() {
+        if (prefetchExecutor != null) {
+            prefetchExecutor.shutdownNow();
+            prefetchExecutor = null;
+        }
+    }
+
+    @Override
+    public BrewSession openSession() throws CausewayException {
+        ScopedSession scoped = scopedSession.get();
+        if (scoped == null) {
+            scoped = new ScopedSession(doLogin());
+            scopedSession.set(scoped);
+        } else {
+            scoped.depth++;
+        }
+        return this::closeSession;
+    }
+
+    private void closeSession() {
+        ScopedSession scoped = scopedSession.get();
+        if (scoped == null) {
+            return;
+        }
+        if (--scoped.depth == 0) {
+            scopedSession.remove();
+            koji.logout(scoped.session);
+        }
     }
 
     @Override
@@ -63,9 +163,12 @@ public class BrewClientImpl implements BrewClient {
             KojiSessionInfo session = login();
 
             KojiNVR knvr = new KojiNVR(nvr.getKojiName(), nvr.getVersion(), nvr.getRelease());
-            KojiBuildInfo bi = koji.getBuildInfo(knvr, session); // returns null if missing
+            KojiBuildInfo bi;
+            try (JfrEvent event = kojiEvent("getBuildInfo").nvr(nvr.getNVR())) {
+                bi = koji.getBuildInfo(knvr, session); // returns null if missing
+            }
 
-            koji.logout(session);
+            logout(session);
             if (bi == null) {
                 return null;
             }
@@ -76,17 +179,51 @@ public class BrewClientImpl implements BrewClient {
         }
     }
 
+    @Override
+    public BatchResult<BrewNVR, BrewBuild> findBrewBuildsOfNVRs(Collection<BrewNVR> nvrs) throws CausewayException {
+        BatchResult<BrewNVR, BrewBuild> result = new BatchResult<>();
+        if (nvrs.isEmpty()) {
+            return result;
+        }
+        List<BrewNVR> nvrList = new ArrayList<>(nvrs);
+        List<Object> args = nvrList.stream().map(BrewNVR::getNVR).collect(Collectors.toList());
+        List<KojiBuildInfo> buildInfos;
+        try {
+            KojiSessionInfo session = login();
+            try (JfrEvent event = kojiEvent("getBuildInfo (multicall of " + args.size() + ")")) {
+                buildInfos = koji.getBuildInfo(args, session); // multicall, null for missing builds
+            }
+            logout(session);
+        } catch (KojiClientException ex) {
+            throw new CausewayException(KOJI_COMMUNICATION_FAILURE + ex.getMessage(), ex);
+        }
+        for (int i = 0; i < nvrList.size(); i++) {
+            BrewNVR nvr = nvrList.get(i);
+            KojiBuildInfo bi = buildInfos.get(i);
+            if (bi == null) {
+                continue;
+            }
+            try {
+                checkPNCImportedBuild(bi);
+                result.put(nvr, toBrewBuild(bi, nvr));
+            } catch (CausewayException ex) {
+                result.fail(nvr, ex);
+            }
+        }
+        return result;
+    }
+
     @Override
     public BrewBuild findBrewBuild(int id) throws CausewayException {
         KojiBuildInfo buildInfo;
 
         KojiSessionInfo session = login();
-        try {
+        try (JfrEvent event = kojiEvent("getBuildInfo")) {
             buildInfo = koji.getBuildInfo(id, session);
         } catch (KojiClientException ex) {
             throw new CausewayException(KOJI_COMMUNICATION_FAILURE + ex.getMessage(), ex);
         }
-        koji.logout(session);
+        logout(session);
 
         if (buildInfo == null) {
             return null;
@@ -122,46 +259,241 @@ public class BrewClientImpl implements BrewClient {
     public void tagBuild(String tag, BrewBuild build) throws CausewayException {
         log.info("Applying tag {} on build {}.", tag, build.getNVR());
         KojiSessionInfo session = login();
-        try {
+        try (JfrEvent event = kojiEvent("tagBuild").nvr(build.getNVR())) {
             koji.addPackageToTag(tag, build.getKojiName(), session);
             koji.tagBuild(tag + BUILD_TAG_SUFIX, build.getNVR(), session);
         } catch (KojiClientException ex) {
-            String msg = KOJI_COMMUNICATION_FAILURE;
-            if (ex.getMessage().contains("policy violation")) {
-                String userName = session.getUserInfo().getUserName();
-                msg += "This is most probably because of missing permisions. Ask RCM to add " + "permisions for user '"
-                        + userName + "' to add packages to tag '" + tag + "' and to tag builds into tag '" + tag
-                        + BUILD_TAG_SUFIX + "'. Cause: ";
+            throw taggingFailure(tag, session, ex);
+        }
+        logout(session);
+    }
+
+    @Override
+    public BatchResult<BrewBuild, Void> tagBuilds(String tag, Collection<BrewBuild> builds) throws CausewayException {
+        log.info("Applying tag {} on {} builds.", tag, builds.size());
+        BatchResult<BrewBuild, Void> result = new BatchResult<>();
+        if (builds.isEmpty()) {
+            return result;
+        }
+        List<String> packageNames = builds.stream().map(BrewBuild::getKojiName).distinct().collect(Collectors.toList());
+        KojiSessionInfo session = login();
+        try {
+            String owner = session.getUserInfo() == null ? null : session.getUserInfo().getUserName();
+            Map<String, CausewayFailure> packageFailures = multiCallTagging(
+                    tag,
+                    session,
+                    "packageListAdd",
+                    packageNames,
+                    name -> owner == null ? Arrays.<Object>asList(tag, name) : Arrays.<Object>asList(tag, name, owner),
+                    name -> koji.addPackageToTag(tag, name, session),
+                    name -> null);
+            List<BrewBuild> toTag = new ArrayList<>();
+            for (BrewBuild build : builds) {
+                CausewayFailure failure = packageFailures.get(build.getKojiName());
+                if (failure == null) {
+                    toTag.add(build);
+                } else {
+                    log.warn("Failed to tag build {}: {}", build.getNVR(), failure.getMessage());
+                    result.fail(build, failure);
+                }
             }
-            throw new CausewayFailure(msg + ex.getMessage(), ex);
+            Map<BrewBuild, CausewayFailure> buildFailures = multiCallTagging(
+                    tag,
+                    session,
+                    "tagBuild",
+                    toTag,
+                    build -> Arrays.<Object>asList(tag + BUILD_TAG_SUFIX, build.getNVR()),
+                    build -> koji.tagBuild(tag + BUILD_TAG_SUFIX, build.getNVR(), session),
+                    BrewBuild::getNVR);
+            buildFailures.forEach((build, failure) -> {
+                log.warn("Failed to tag build {}: {}", build.getNVR(), failure.getMessage());
+                result.fail(build, failure);
+            });
+        } finally {
+            logout(session);
+        }
+        return result;
+    }
+
+    /**
+     * Runs the tagging method for all the items in one multicall. A call that faults inside the multicall fails only
+     * its item. When the multicall itself fails, the items are retried one by one so that the failures can be
+     * attributed to them.
+     *
+     * @return Failures of the items that failed.
+     */
+    private <T> Map<T, CausewayFailure> multiCallTagging(
+            String tag,
+            KojiSessionInfo session,
+            String method,
+            List<T> items,
+            Function<T, List<Object>> args,
+            KojiItemCall<T> single,
+            Function<T, String> nvr) {
+        Map<T, CausewayFailure> failures = new HashMap<>();
+        if (items.isEmpty()) {
+            return failures;
+        }
+        List<Object> callArgs = items.stream().map(args).collect(Collectors.toList());
+        List<Object> results = null;
+        try (JfrEvent event = kojiEvent(method + " (multicall of " + items.size() + ")")) {
+            results = koji.multiCall(method, callArgs, Object.class, session);
+        } catch (KojiClientException ex) {
+            log.debug("Multicall of {} failed, retrying one by one: {}", method, ex.getMessage());
+        }
+        if (results != null) {
+            for (int i = 0; i < items.size(); i++) {
+                String fault = i < results.size() ? multiCallFault(results.get(i))
+                        : "multicall of " + method + " returned no result for the call";
+                if (fault != null) {
+                    failures.put(items.get(i), taggingFailure(tag, session, fault, null));
+                }
+            }
+            return failures;
+        }
+        for (T item : items) {
+            CausewayFailure failure = callTagging(tag, session, method, nvr.apply(item), () -> single.call(item));
+            if (failure != null) {
+                failures.put(item, failure);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Runs one tagging call and returns its failure, or null when it succeeded.
+     */
+    private CausewayFailure callTagging(
+            String tag,
+            KojiSessionInfo session,
+            String operation,
+            String nvr,
+            KojiCall call) {
+        try (JfrEvent event = kojiEvent(operation).nvr(nvr)) {
+            call.call();
+            return null;
+        } catch (KojiClientException ex) {
+            return taggingFailure(tag, session, ex.getMessage(), ex);
         }
-        koji.logout(session);
+    }
+
+    private CausewayFailure taggingFailure(String tag, KojiSessionInfo session, String message, Exception cause) {
+        String msg = KOJI_COMMUNICATION_FAILURE;
+        if (message.contains("policy violation")) {
+            String userName = session.getUserInfo().getUserName();
+            msg += "This is most probably because of missing permisions. Ask RCM to add " + "permisions for user '"
+                    + userName + "' to add packages to tag '" + tag + "' and to tag builds into tag '" + tag
+                    + BUILD_TAG_SUFIX + "'. Cause: ";
+        }
+        return new CausewayFailure(msg + message, cause);
+    }
+
+    /**
+     * Returns the fault message of one call of a multicall, or null when the call succeeded. Kojiji returns every call
+     * of the multicall as its parsed XML-RPC value, so a call that faulted is the fault struct with {@code faultCode}
+     * and {@code faultString} instead of the call's result.
+     */
+    private static String multiCallFault(Object result) {
+        if (!(result instanceof Map) || !((Map<?, ?>) result).containsKey("faultCode")) {
+            return null;
+        }
+        Map<?, ?> fault = (Map<?, ?>) result;
+        return fault.get("faultString") + " (fault code " + fault.get("faultCode") + ")";
+    }
+
+    @FunctionalInterface
+    private interface KojiCall {
+        void call() throws KojiClientException;
+    }
+
+    @FunctionalInterface
+    private interface KojiItemCall<T> {
+        void call(T item) throws KojiClientException;
     }
 
     @Override
     public boolean isBuildTagged(String tag, BrewBuild build) throws CausewayException {
         KojiSessionInfo session = login();
         String tagName = tag + BUILD_TAG_SUFIX;
-        try {
+        try (JfrEvent event = kojiEvent("listTags").nvr(build.getNVR())) {
             List<KojiTagInfo> tags = koji.listTags(build.getId(), session);
             return tags.stream().map(KojiTagInfo::getName).anyMatch(n -> tagName.equals(n));
         } catch (KojiClientException ex) {
             throw new CausewayException("Failure while getting tag information from build: " + ex.getMessage(), ex);
         } finally {
-            koji.logout(session);
+            logout(session);
+        }
+    }
+
+    @Override
+    public Set<BrewBuild> findTaggedBuilds(String tag, Collection<BrewBuild> builds) throws CausewayException {
+        String tagName = tag + BUILD_TAG_SUFIX;
+        Set<BrewBuild> tagged = new HashSet<>();
+        if (builds.isEmpty()) {
+            return tagged;
+        }
+        List<BrewBuild> buildList = new ArrayList<>(builds);
+        List<Object> args = buildList.stream().map(BrewBuild::getId).collect(Collectors.toList());
+        List<Object> buildTags;
+        KojiSessionInfo session = login();
+        try (JfrEvent event = kojiEvent("listTags (multicall of " + args.size() + ")")) {
+            buildTags = koji.multiCall("listTags", args, Object.class, session);
+        } catch (KojiClientException ex) {
+            throw new CausewayException("Failure while getting tag information from builds: " + ex.getMessage(), ex);
+        } finally {
+            logout(session);
+        }
+        if (buildTags.size() != buildList.size()) {
+            throw new CausewayException(
+                    "Failure while getting tag information from builds: expected {} results, got {}",
+                    buildList.size(),
+                    buildTags.size());
+        }
+        for (int i = 0; i < buildList.size(); i++) {
+            if (containsTag(buildList.get(i), buildTags.get(i), tagName)) {
+                tagged.add(buildList.get(i));
+            }
+        }
+        return tagged;
+    }
+
+    /**
+     * Checks one result of the listTags multicall for the tag name. The result is the parsed XML-RPC value of the call,
+     * which is a list of tag structs ({@code Map<String, Object>} with the tag {@code name}), or the fault struct when
+     * the call faulted.
+     */
+    private static boolean containsTag(BrewBuild build, Object tags, String tagName) throws CausewayException {
+        String fault = multiCallFault(tags);
+        if (fault != null) {
+            throw new CausewayException(
+                    "Failure while getting tag information from build {}: {}",
+                    build.getNVR(),
+                    fault);
+        }
+        if (!(tags instanceof List)) {
+            throw new CausewayException(
+                    "Failure while getting tag information from build {}: unexpected result {}",
+                    build.getNVR(),
+                    tags);
+        }
+        for (Object tag : (List<?>) tags) {
+            if (tagName.equals(((Map<?, ?>) tag).get("name"))) {
+                return true;
+            }
         }
+        return false;
     }
 
     @Override
     public void untagBuild(String tag, BrewNVR nvr) throws CausewayException {
         log.info("Removing tag {} from build {}.", tag, nvr.getNVR());
         KojiSessionInfo session = login();
-        try {
+        try (JfrEvent event = kojiEvent("untagBuild").nvr(nvr.getNVR())) {
             koji.untagBuild(tag + BUILD_TAG_SUFIX, nvr.getNVR(), session);
         } catch (KojiClientException ex) {
             throw new CausewayFailure(KOJI_COMMUNICATION_FAILURE + ex.getMessage(), ex);
         }
-        koji.logout(session);
+        logout(session);
     }
 
     @Override
@@ -177,8 +509,8 @@ public class BrewClientImpl implements BrewClient {
         try {
             KojiSessionInfo session = login();
 
-            KojiImportResult result = koji.importBuild(kojiImport, importFiles, session);
-            koji.logout(session);
+            KojiImportResult result = doImport(nvr, kojiImport, importFiles, session);
+            logout(session);
 
             if (checkImportErrors(result, importFiles)) {
                 ret.setStatus(BuildImportStatus.FAILED);
@@ -207,12 +539,12 @@ public class BrewClientImpl implements BrewClient {
         KojiSessionInfo session = login();
         KojiImportResult result;
         try {
-            result = koji.importBuild(kojiImport, importFiles, session);
+            result = doImport(nvr, kojiImport, importFiles, session);
         } catch (KojiClientException ex) {
             checkImportErrors(null, importFiles); // to ensure errors are logged for users
             throw new CausewayFailure("Failure while importing builds to Koji: " + ex.getMessage(), ex);
         }
-        koji.logout(session);
+        logout(session);
 
         if (checkImportErrors(result, importFiles)) {
             throw new CausewayFailure("Failure while importing artifacts");
@@ -226,6 +558,34 @@ public class BrewClientImpl implements BrewClient {
         return toBrewBuild(bi, nvr);
     }
 
+    private KojiImportResult doImport(
+            BrewNVR nvr,
+            KojiImport kojiImport,
+            ImportFileGenerator importFiles,
+            KojiSessionInfo session) throws KojiClientException {
+        importFiles.setStorageClient(storageClient);
+        importFiles.setFetchTimer(artifactFetch);
+        if (prefetchConcurrency > 1) {
+            importFiles.prefetch(getPrefetchExecutor(), prefetchConcurrency, prefetchMaxBytes);
+        }
+        try (JfrEvent event = kojiEvent("importBuild").nvr(nvr.getNVR()).bytes(importFiles.getTotalSize())) {
+            return koji.importBuild(kojiImport, importFiles, session);
+        } finally {
+            importFiles.close();
+        }
+    }
+
+    /**
+     * Prefetch tasks are awaited by import tasks, so they get their own pool instead of the shared managed executor.
+     */
+    private synchronized ExecutorService getPrefetchExecutor() {
+        if (prefetchExecutor == null) {
+            prefetchExecutor = Executors
+                    .newCachedThreadPool(threadFactory == null ? Executors.defaultThreadFactory() : threadFactory);
+        }
+        return prefetchExecutor;
+    }
+
     private boolean checkImportErrors(KojiImportResult result, ImportFileGenerator importFiles) {
         boolean errorsPresent = false;
         Map<String, KojijiErrorInfo> kojiErrors = result == null ? null : result.getUploadErrors();
@@ -251,26 +611,75 @@ public class BrewClientImpl implements BrewClient {
 
     @Override
     public boolean tagsExists(String tag) throws CausewayException {
+        return tagCache.get(tag, () -> checkTagsExist(tag));
+    }
+
+    private boolean checkTagsExist(String tag) throws CausewayException {
         boolean packageTag, buildTag;
         try {
             KojiSessionInfo session = login();
 
-            packageTag = koji.getTag(tag, session) != null;
-            buildTag = koji.getTag(tag + BUILD_TAG_SUFIX, session) != null;
+            try (JfrEvent event = kojiEvent("getTag")) {
+                packageTag = koji.getTag(tag, session) != null;
+                buildTag = koji.getTag(tag + BUILD_TAG_SUFIX, session) != null;
+            }
 
-            koji.logout(session);
+            logout(session);
         } catch (KojiClientException ex) {
             throw new CausewayException(KOJI_COMMUNICATION_FAILURE + ex.getMessage(), ex);
         }
         return packageTag && buildTag;
     }
 
+    /**
+     * Returns the session scoped to the current thread or logs in to Koji when there is no such session. Every session
+     * obtained by this method has to be released by {@link #logout(KojiSessionInfo)}.
+     */
     private KojiSessionInfo login() throws CausewayException {
-        try {
-            return koji.login();
+        ScopedSession scoped = scopedSession.get();
+        if (scoped == null) {
+            return doLogin();
+        }
+        if (System.currentTimeMillis() - scoped.created > sessionTtl) {
+            log.debug("Koji session is older than {} ms, logging in again.", sessionTtl);
+            koji.logout(scoped.session);
+            scoped.session = doLogin();
+            scoped.created = System.currentTimeMillis();
+        } else {
+            loginsSaved.inc();
+        }
+        return scoped.session;
+    }
+
+    private void logout(KojiSessionInfo session) {
+        ScopedSession scoped = scopedSession.get();
+        if (scoped == null || scoped.session != session) {
+            koji.logout(session);
+        }
+    }
+
+    private KojiSessionInfo doLogin() throws CausewayException {
+        try (JfrEvent event = kojiEvent("login")) {
+            KojiSessionInfo session = koji.login();
+            logins.inc();
+            return session;
         } catch (KojiClientException ex) {
             throw new CausewayException("Failure while loging to Koji: " + ex.getMessage(), ex);
         }
     }
 
+    private static JfrEvent kojiEvent(String operation) {
+        return JfrEvent.begin(JfrEvent.Type.KOJI_CALL).operation(operation);
+    }
+
+    private static class ScopedSession {
+        private KojiSessionInfo session;
+        private long created = System.currentTimeMillis();
+        private int depth = 1;
+
+        private ScopedSession(KojiSessionInfo session) {
+            this.session = session;
+        }
+    }
+
 }
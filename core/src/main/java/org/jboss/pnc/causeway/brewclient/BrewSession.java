@@ -0,0 +1,26 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.brewclient;
+
+/**
+ * Handle of a Koji session that is shared by all {@link BrewClient} calls made from the thread that opened it. Closing
+ * the handle logs the session out once the outermost scope is closed.
+ */
+public interface BrewSession extends AutoCloseable {
+
+    @Override
+    void close();
+}
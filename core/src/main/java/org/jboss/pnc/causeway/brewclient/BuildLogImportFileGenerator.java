@@ -15,13 +15,13 @@
  */
 package org.jboss.pnc.causeway.brewclient;
 
-import java.io.ByteArrayInputStream;
-
 import com.redhat.red.build.koji.model.ImportFile;
 
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.function.Supplier;
 
+import org.jboss.pnc.causeway.pncclient.BuildLog;
 import org.jboss.pnc.causeway.source.RenamedSources;
 
 /**
@@ -29,10 +29,10 @@ import org.jboss.pnc.causeway.source.RenamedSources;
  * @author Honza Brázdil &lt;jbrazdil@redhat.com&gt;
  */
 @Deprecated
-public class StringLogImportFileGenerator extends ImportFileGenerator {
-    private final String log;
+public class BuildLogImportFileGenerator extends ImportFileGenerator {
+    private final BuildLog log;
 
-    public StringLogImportFileGenerator(String log, RenamedSources sources) {
+    public BuildLogImportFileGenerator(BuildLog log, RenamedSources sources) {
         super(sources);
         this.log = log;
     }
@@ -61,8 +61,13 @@ public class StringLogImportFileGenerator extends ImportFileGenerator {
         public Supplier<ImportFile> next() {
             if (log != null && !logGiven) {
                 logGiven = true;
-                byte[] bytes = log.getBytes();
-                return () -> new ImportFile("build.log", new ByteArrayInputStream(bytes), bytes.length);
+                return () -> {
+                    try {
+                        return new ImportFile("build.log", log.read(), log.getSize());
+                    } catch (IOException ex) {
+                        throw new RuntimeException(ex);
+                    }
+                };
             }
             return super.next();
         }
@@ -25,11 +25,12 @@ import org.jboss.pnc.api.causeway.dto.push.NpmBuild;
 import org.jboss.pnc.api.causeway.dto.push.NpmBuiltArtifact;
 import org.jboss.pnc.causeway.CausewayException;
 import org.jboss.pnc.causeway.pncclient.BuildArtifacts;
+import org.jboss.pnc.causeway.pncclient.BuildLog;
 import org.jboss.pnc.causeway.rest.BrewNVR;
 import org.jboss.pnc.causeway.source.RenamedSources;
+import org.jboss.pnc.causeway.source.SourcesProvider;
 import org.jboss.pnc.enums.BuildType;
 
-import java.io.InputStream;
 import java.util.Objects;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -41,7 +42,7 @@ import java.util.function.Predicate;
 public interface BuildTranslator {
 
     @Deprecated
-    ImportFileGenerator getImportFiles(BuildArtifacts artifacts, RenamedSources sources, String log)
+    ImportFileGenerator getImportFiles(BuildArtifacts artifacts, RenamedSources sources, BuildLog log)
             throws CausewayException;
 
     @Deprecated
@@ -50,10 +51,13 @@ public interface BuildTranslator {
             org.jboss.pnc.dto.Build build,
             BuildArtifacts artifacts,
             RenamedSources sources,
-            String log,
+            BuildLog log,
             String username) throws CausewayException;
 
-    RenamedSources getSources(org.jboss.pnc.dto.Build build, BuildArtifacts artifacts, InputStream sourcesStream)
+    /**
+     * Returns repacked sources of the PNC build. The sources are opened only when they aren't already cached.
+     */
+    RenamedSources getSources(org.jboss.pnc.dto.Build build, BuildArtifacts artifacts, SourcesProvider sources)
             throws CausewayException;
 
     String getSourcesDeployPath(org.jboss.pnc.dto.Build build, BuildArtifacts artifacts) throws CausewayException;
@@ -43,21 +43,19 @@ import org.jboss.pnc.causeway.CausewayException;
 import org.jboss.pnc.causeway.config.CausewayConfig;
 import org.jboss.pnc.causeway.pncclient.BuildArtifacts;
 import org.jboss.pnc.causeway.pncclient.BuildArtifacts.PncArtifact;
+import org.jboss.pnc.causeway.pncclient.BuildLog;
+import org.jboss.pnc.causeway.pncclient.DependencyStore;
 import org.jboss.pnc.causeway.rest.BrewNVR;
 import org.jboss.pnc.causeway.source.RenamedSources;
 import org.jboss.pnc.causeway.source.SourceRenamer;
+import org.jboss.pnc.causeway.source.SourcesProvider;
 import org.jboss.pnc.enums.BuildType;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
-import java.io.IOException;
-import java.io.InputStream;
-import java.math.BigInteger;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.Paths;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -95,7 +93,7 @@ public class BuildTranslatorImpl implements BuildTranslator {
             org.jboss.pnc.dto.Build build,
             BuildArtifacts artifacts,
             RenamedSources sources,
-            String log,
+            BuildLog log,
             String username) throws CausewayException {
         String externalBuildId = String.valueOf(build.getId());
         String externalBuildUrl = null;
@@ -182,20 +180,12 @@ public class BuildTranslatorImpl implements BuildTranslator {
         return url;
     }
 
-    private void addLog(String log, KojiImport.Builder builder, int buildRootId) throws CausewayException {
-        try {
-            byte[] logBytes = log.getBytes();
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            BigInteger bi = new BigInteger(1, md.digest(logBytes));
-            String logHash = String.format("%032x", bi);
-            builder.withNewOutput(buildRootId, "build.log")
-                    .withOutputType(StandardOutputType.log)
-                    .withFileSize(logBytes.length)
-                    .withArch(StandardArchitecture.noarch)
-                    .withChecksum(MD5, logHash);
-        } catch (NoSuchAlgorithmException ex) {
-            throw new CausewayException("Failed to compute md5 sum of build log: " + ex.getMessage(), ex);
-        }
+    private void addLog(BuildLog log, KojiImport.Builder builder, int buildRootId) {
+        builder.withNewOutput(buildRootId, "build.log")
+                .withOutputType(StandardOutputType.log)
+                .withFileSize(log.getSize())
+                .withArch(StandardArchitecture.noarch)
+                .withChecksum(MD5, log.getMd5());
     }
 
     private void addSources(RenamedSources sources, KojiImport.Builder builder, int buildRootId) {
@@ -226,19 +216,20 @@ public class BuildTranslatorImpl implements BuildTranslator {
     }
 
     private void addDependencies(
-            List<PncArtifact> dependencies,
+            DependencyStore dependencies,
             BuildRoot.Builder buildRootBuilder,
             BuildType buildType) throws CausewayException {
-        for (PncArtifact artifact : dependencies) {
-            FileBuildComponent.Builder componentBuilder = buildRootBuilder.withFileComponent(artifact.deployPath);
-            componentBuilder.withChecksum(MD5, artifact.checksum);
+        for (int i = 0; i < dependencies.size(); i++) {
+            FileBuildComponent.Builder componentBuilder = buildRootBuilder
+                    .withFileComponent(dependencies.getDeployPath(i));
+            componentBuilder.withChecksum(MD5, dependencies.getMd5(i));
 
             switch (buildType) {
                 case GRADLE:
                 case NPM:
                 case SBT:
                 case MVN: {
-                    componentBuilder.withFileSize(artifact.size);
+                    componentBuilder.withFileSize(knownSize(dependencies.getSize(i), dependencies.getDeployPath(i)));
                     break;
                 }
                 default: {
@@ -272,13 +263,13 @@ public class BuildTranslatorImpl implements BuildTranslator {
                 case SBT:
                 case MVN: {
                     SimpleArtifactRef ref = SimpleArtifactRef.parse(artifact.identifier);
-                    outputBuilder.withFileSize((int) artifact.size);
+                    outputBuilder.withFileSize(knownSize(artifact.size, artifact.deployPath));
                     outputBuilder.withMavenInfoAndType(ref);
                     break;
                 }
                 case NPM: {
                     NpmPackageRef ref = NpmPackageRef.parse(artifact.identifier);
-                    outputBuilder.withFileSize((int) artifact.size);
+                    outputBuilder.withFileSize(knownSize(artifact.size, artifact.deployPath));
                     outputBuilder.withNpmInfoAndType(ref);
                     break;
                 }
@@ -289,6 +280,16 @@ public class BuildTranslatorImpl implements BuildTranslator {
         }
     }
 
+    /**
+     * Koji requires size of every file, so artifacts whose size PNC doesn't know can't be imported.
+     */
+    private static long knownSize(long size, String deployPath) throws CausewayException {
+        if (size == BuildArtifacts.UNKNOWN_SIZE) {
+            throw new CausewayException("Size of artifact " + deployPath + " is unknown.");
+        }
+        return size;
+    }
+
     private void addBuiltArtifacts(Set<BuiltArtifact> builtArtifacts, KojiImport.Builder builder, int buildRootId)
             throws CausewayException {
         for (BuiltArtifact artifact : builtArtifacts) {
@@ -322,10 +323,10 @@ public class BuildTranslatorImpl implements BuildTranslator {
     }
 
     @Override
-    public ImportFileGenerator getImportFiles(BuildArtifacts artifacts, RenamedSources sources, String log)
+    public ImportFileGenerator getImportFiles(BuildArtifacts artifacts, RenamedSources sources, BuildLog log)
             throws CausewayException {
         try {
-            StringLogImportFileGenerator ret = new StringLogImportFileGenerator(log, sources);
+            BuildLogImportFileGenerator ret = new BuildLogImportFileGenerator(log, sources);
             for (PncArtifact artifact : artifacts.buildArtifacts) {
                 ret.addUrl(artifact.id, artifact.deployUrl, artifact.deployPath, artifact.size);
             }
@@ -355,13 +356,20 @@ public class BuildTranslatorImpl implements BuildTranslator {
     }
 
     @Override
-    public RenamedSources getSources(org.jboss.pnc.dto.Build build, BuildArtifacts artifacts, InputStream sources)
+    public RenamedSources getSources(org.jboss.pnc.dto.Build build, BuildArtifacts artifacts, SourcesProvider sources)
             throws CausewayException {
+        String sourcesId = "pnc-build:" + build.getId();
         return buildTypeSwitch(
                 build,
                 artifacts,
-                (gav) -> renamer.repackMaven(sources, gav.getGroupId(), gav.getArtifactId(), gav.getVersionString()),
-                (npmPackage) -> renamer.repackNPM(sources, npmPackage.getName(), npmPackage.getVersionString()));
+                (gav) -> renamer.repackMaven(
+                        sourcesId,
+                        sources,
+                        gav.getGroupId(),
+                        gav.getArtifactId(),
+                        gav.getVersionString()),
+                (npmPackage) -> renamer
+                        .repackNPM(sourcesId, sources, npmPackage.getName(), npmPackage.getVersionString()));
     }
 
     @Override
@@ -380,45 +388,42 @@ public class BuildTranslatorImpl implements BuildTranslator {
         if (version == null) {
             version = BuildTranslator.guessVersion(build);
         }
-        try {
-            if (build.getClass().equals(MavenBuild.class)) {
-                MavenBuild mavenBuild = (MavenBuild) build;
-                if (mavenBuild.getVersion() != null) {
-                    version = mavenBuild.getVersion();
-                }
-                String deployPath = renamer
-                        .getMavenDeployPath(mavenBuild.getGroupId(), mavenBuild.getArtifactId(), version);
-                Optional<BuiltArtifact> any = mavenBuild.getBuiltArtifacts()
-                        .stream()
-                        .filter(a -> a.getArtifactPath().equals(deployPath))
-                        .findAny();
-                if (!any.isPresent()) {
-                    URL sourcesUrl = new URL(build.getSourcesURL());
-                    try (InputStream input = sourcesUrl.openStream()) {
-                        return renamer.repackMaven(input, mavenBuild.getGroupId(), mavenBuild.getArtifactId(), version);
-                    }
-                }
-            } else if (build.getClass().equals(NpmBuild.class)) {
-                NpmBuild npmBuild = (NpmBuild) build;
-                if (npmBuild.getVersion() != null) {
-                    version = npmBuild.getVersion();
-                }
-                String deployPath = renamer.getNPMDeployPath(npmBuild.getName(), version);
-                Optional<BuiltArtifact> any = npmBuild.getBuiltArtifacts()
-                        .stream()
-                        .filter(a -> a.getArtifactPath().equals(deployPath))
-                        .findAny();
-                if (!any.isPresent()) {
-                    URL sourcesUrl = new URL(build.getSourcesURL());
-                    try (InputStream input = sourcesUrl.openStream()) {
-                        return renamer.repackNPM(input, npmBuild.getName(), version);
-                    }
-                }
-            } else {
-                throw new IllegalArgumentException("Unsupported build type " + build.getClass());
+        String sourcesUrl = build.getSourcesURL();
+        SourcesProvider sources = () -> new URL(sourcesUrl).openStream();
+        if (build.getClass().equals(MavenBuild.class)) {
+            MavenBuild mavenBuild = (MavenBuild) build;
+            if (mavenBuild.getVersion() != null) {
+                version = mavenBuild.getVersion();
             }
-        } catch (IOException ex) {
-            throw new CausewayException("Failed to read sources url: " + ex.getMessage(), ex);
+            String deployPath = renamer
+                    .getMavenDeployPath(mavenBuild.getGroupId(), mavenBuild.getArtifactId(), version);
+            Optional<BuiltArtifact> any = mavenBuild.getBuiltArtifacts()
+                    .stream()
+                    .filter(a -> a.getArtifactPath().equals(deployPath))
+                    .findAny();
+            if (!any.isPresent()) {
+                return renamer.repackMaven(
+                        sourcesUrl,
+                        sources,
+                        mavenBuild.getGroupId(),
+                        mavenBuild.getArtifactId(),
+                        version);
+            }
+        } else if (build.getClass().equals(NpmBuild.class)) {
+            NpmBuild npmBuild = (NpmBuild) build;
+            if (npmBuild.getVersion() != null) {
+                version = npmBuild.getVersion();
+            }
+            String deployPath = renamer.getNPMDeployPath(npmBuild.getName(), version);
+            Optional<BuiltArtifact> any = npmBuild.getBuiltArtifacts()
+                    .stream()
+                    .filter(a -> a.getArtifactPath().equals(deployPath))
+                    .findAny();
+            if (!any.isPresent()) {
+                return renamer.repackNPM(sourcesUrl, sources, npmBuild.getName(), version);
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported build type " + build.getClass());
         }
         return null;
     }
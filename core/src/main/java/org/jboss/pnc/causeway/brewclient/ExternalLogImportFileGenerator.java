@@ -18,14 +18,17 @@ package org.jboss.pnc.causeway.brewclient;
 import com.redhat.red.build.koji.model.ImportFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Supplier;
 
 import org.jboss.pnc.causeway.source.RenamedSources;
+import org.jboss.pnc.causeway.util.MDCUtils;
 
 import lombok.Data;
 
@@ -84,9 +87,12 @@ public class ExternalLogImportFileGenerator extends ImportFileGenerator {
         public Supplier<ImportFile> next() {
             if (logIt.hasNext()) {
                 Log next1 = logIt.next();
+                Map<String, String> headers = MDCUtils.headersFromContext();
                 return () -> {
                     try {
-                        return new ImportFile(next1.filePath, next1.getUrl().openStream(), next1.size);
+                        InputStream stream = storageClient == null ? next1.getUrl().openStream()
+                                : storageClient.get(next1.getUrl(), headers, true);
+                        return new ImportFile(next1.filePath, stream, next1.size);
                     } catch (IOException ex) {
                         throw new RuntimeException(ex);
                     }
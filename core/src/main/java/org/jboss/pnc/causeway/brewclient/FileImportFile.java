@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.brewclient;
+
+import com.redhat.red.build.koji.model.ImportFile;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Import file backed by a local file, e.g. spooled sources or an artifact on a local mount of the storage. The stream
+ * reads the file channel directly, without buffering it in memory or fetching it over HTTP.
+ */
+public class FileImportFile extends ImportFile {
+
+    /**
+     * @param onClose Action run when the stream is closed, may be null.
+     */
+    public FileImportFile(String filePath, FileChannel channel, long size, Runnable onClose) {
+        super(filePath, stream(channel, onClose), size);
+    }
+
+    /**
+     * Opens the file for reading.
+     */
+    public static FileImportFile open(String filePath, Path file, long size, Runnable onClose) throws IOException {
+        return new FileImportFile(filePath, FileChannel.open(file, StandardOpenOption.READ), size, onClose);
+    }
+
+    private static InputStream stream(FileChannel channel, Runnable onClose) {
+        return new FilterInputStream(Channels.newInputStream(channel)) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (onClose != null) {
+                        onClose.run();
+                    }
+                }
+            }
+        };
+    }
+}
@@ -15,40 +15,107 @@
  */
 package org.jboss.pnc.causeway.brewclient;
 
+import com.codahale.metrics.Timer;
 import com.redhat.red.build.koji.model.ImportFile;
 
 import lombok.Data;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
 import lombok.extern.slf4j.Slf4j;
 
 import org.jboss.pnc.causeway.source.RenamedSources;
+import org.jboss.pnc.causeway.util.JfrEvent;
 import org.jboss.pnc.causeway.util.MDCUtils;
 
 /**
  * @author Honza Brázdil &lt;jbrazdil@redhat.com&gt;
  */
 @Slf4j
-public abstract class ImportFileGenerator implements Iterable<Supplier<ImportFile>> {
+public abstract class ImportFileGenerator implements Iterable<Supplier<ImportFile>>, AutoCloseable {
     protected final Set<Artifact> artifacts = new HashSet<>();
     protected final RenamedSources sources;
     protected final Map<String, String> paths = new HashMap<>();
 
+    private ExecutorService prefetchExecutor;
+    private int prefetchConcurrency;
+    private long prefetchMaxBytes;
+    private final AtomicLong prefetchedBytes = new AtomicLong();
+    private final List<PrefetchedFile> pendingPrefetches = new ArrayList<>();
+    private Timer fetchTimer;
+    protected StorageClient storageClient;
+
     public ImportFileGenerator(RenamedSources sources) {
         this.sources = sources;
     }
 
+    /**
+     * Enables opening artifact streams before Koji asks for them, so that fetching from the artifact storage overlaps
+     * with the upload to Koji. At most {@code concurrency} streams are opened ahead. No further stream is opened ahead
+     * while the sizes of opened, not yet closed, streams sum to {@code maxBytes} or more.
+     *
+     * @param executor Executor opening the streams.
+     * @param concurrency Maximal number of streams opened ahead, 1 or less disables prefetching.
+     * @param maxBytes Budget of bytes in opened streams.
+     */
+    public void prefetch(ExecutorService executor, int concurrency, long maxBytes) {
+        if (concurrency > 1) {
+            this.prefetchExecutor = executor;
+            this.prefetchConcurrency = concurrency;
+            this.prefetchMaxBytes = maxBytes;
+        }
+    }
+
+    /**
+     * Sets timer recording how long it takes to get response for every fetched artifact.
+     */
+    public void setFetchTimer(Timer fetchTimer) {
+        this.fetchTimer = fetchTimer;
+    }
+
+    /**
+     * Sets pooled client used to fetch the files. When not set, every file is fetched over a new connection.
+     */
+    public void setStorageClient(StorageClient storageClient) {
+        this.storageClient = storageClient;
+    }
+
+    /**
+     * Closes streams that were opened ahead but never handed over.
+     */
+    @Override
+    public void close() {
+        List<PrefetchedFile> pending;
+        synchronized (pendingPrefetches) {
+            pending = new ArrayList<>(pendingPrefetches);
+            pendingPrefetches.clear();
+        }
+        pending.forEach(PrefetchedFile::cancel);
+    }
+
     /**
      * Adds artifact URL to the generator.
      *
@@ -63,6 +130,17 @@ public abstract class ImportFileGenerator implements Iterable<Supplier<ImportFil
         paths.put(filePath, id);
     }
 
+    /**
+     * Returns the total size in bytes of the files to import.
+     */
+    public long getTotalSize() {
+        long size = sources == null ? 0 : sources.getSize();
+        for (Artifact artifact : artifacts) {
+            size += artifact.getSize();
+        }
+        return size;
+    }
+
     /**
      * Returns external ID of artifact given it's deploy path.
      *
@@ -85,16 +163,28 @@ public abstract class ImportFileGenerator implements Iterable<Supplier<ImportFil
 
         private Iterator<Artifact> it;
         private boolean sourcesGiven;
+        private final Deque<PrefetchedFile> prefetched = new ArrayDeque<>();
 
         protected ImportFileIterator(Iterator<Artifact> it) {
             this.it = it;
             this.sourcesGiven = sources == null;
         }
 
-        private ImportFileSupplier getNext() {
-            Artifact artifact = it.next();
-            log.info("Reading file {} from {}", artifact.getFilePath(), artifact.getUrl());
-            return new ImportFileSupplier(artifact);
+        private Supplier<ImportFile> getNext() {
+            if (prefetchExecutor == null) {
+                Artifact artifact = it.next();
+                log.info("Reading file {} from {}", artifact.getFilePath(), artifact.getUrl());
+                return new ImportFileSupplier(artifact, storageClient, fetchTimer, null);
+            }
+            if (prefetched.isEmpty()) {
+                prefetched.add(new PrefetchedFile(it.next()));
+            }
+            PrefetchedFile next = prefetched.removeFirst();
+            while (it.hasNext() && prefetched.size() < prefetchConcurrency
+                    && prefetchedBytes.get() < prefetchMaxBytes) {
+                prefetched.add(new PrefetchedFile(it.next()));
+            }
+            return next;
         }
 
         @Override
@@ -102,7 +192,7 @@ public abstract class ImportFileGenerator implements Iterable<Supplier<ImportFil
             if (!sourcesGiven) {
                 return true;
             }
-            return it.hasNext();
+            return !prefetched.isEmpty() || it.hasNext();
         }
 
         @Override
@@ -111,6 +201,10 @@ public abstract class ImportFileGenerator implements Iterable<Supplier<ImportFil
                 sourcesGiven = true;
                 return () -> {
                     try {
+                        FileChannel channel = sources.readChannel();
+                        if (channel != null) {
+                            return new FileImportFile(sources.getName(), channel, sources.getSize(), sources::release);
+                        }
                         return new ImportFile(sources.getName(), sources.read(), sources.getSize());
                     } catch (IOException ex) {
                         throw new RuntimeException(ex);
@@ -121,36 +215,203 @@ public abstract class ImportFileGenerator implements Iterable<Supplier<ImportFil
         }
     }
 
+    /**
+     * Artifact whose stream is being opened in the background. Its size counts against the prefetch budget until the
+     * stream is closed or the fetch fails.
+     */
+    private class PrefetchedFile implements Supplier<ImportFile> {
+
+        private final Artifact artifact;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private final Future<ImportFile> future;
+        /** Set once cancelled; guarded by this. */
+        private boolean cancelled;
+        /** File opened by the fetch task; guarded by this. */
+        private ImportFile opened;
+
+        PrefetchedFile(Artifact artifact) {
+            this.artifact = artifact;
+            log.info("Prefetching file {} from {}", artifact.getFilePath(), artifact.getUrl());
+            prefetchedBytes.addAndGet(artifact.getSize());
+            synchronized (pendingPrefetches) {
+                pendingPrefetches.add(this);
+            }
+            ImportFileSupplier supplier = new ImportFileSupplier(artifact, storageClient, fetchTimer, this::release);
+            future = prefetchExecutor.submit(() -> open(supplier));
+        }
+
+        /**
+         * Opens the file in the fetch task. When the prefetch was cancelled meanwhile, nobody will take the file, so
+         * the task closes it itself.
+         */
+        private ImportFile open(ImportFileSupplier supplier) {
+            ImportFile file = supplier.get();
+            synchronized (this) {
+                if (!cancelled) {
+                    opened = file;
+                    return file;
+                }
+            }
+            close(file);
+            return null;
+        }
+
+        @Override
+        public ImportFile get() {
+            synchronized (pendingPrefetches) {
+                pendingPrefetches.remove(this);
+            }
+            try {
+                return future.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                cancel();
+                throw new RuntimeException("Interrupted while fetching " + artifact.getFilePath(), ex);
+            } catch (ExecutionException ex) {
+                release();
+                Throwable cause = ex.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+
+        void cancel() {
+            ImportFile file;
+            synchronized (this) {
+                cancelled = true;
+                file = opened;
+            }
+            future.cancel(true);
+            if (file != null) {
+                close(file);
+            }
+            release();
+        }
+
+        private void close(ImportFile file) {
+            try {
+                file.getStream().close();
+            } catch (IOException ex) {
+                log.debug("Failed to close prefetched file " + artifact.getFilePath(), ex);
+            }
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                prefetchedBytes.addAndGet(-artifact.getSize());
+            }
+        }
+    }
+
     protected static class ImportFileSupplier implements Supplier<ImportFile> {
 
         private final Artifact artifact;
+        private final StorageClient storageClient;
+        private final Timer fetchTimer;
+        private final Runnable onClose;
+        private final Map<String, String> headers;
 
         public ImportFileSupplier(Artifact artifact) {
+            this(artifact, null, null, null);
+        }
+
+        /**
+         * @param storageClient Pooled client used for the fetch, may be null.
+         * @param fetchTimer Timer recording time to response, may be null.
+         * @param onClose Action run when the returned stream is closed, may be null.
+         */
+        public ImportFileSupplier(Artifact artifact, StorageClient storageClient, Timer fetchTimer, Runnable onClose) {
             this.artifact = artifact;
+            this.storageClient = storageClient;
+            this.fetchTimer = fetchTimer;
+            this.onClose = onClose;
+            this.headers = MDCUtils.headersFromContext();
         }
 
+        /**
+         * Opens the artifact stream. The JFR event of the file spans from the request until the stream is closed.
+         * Artifacts available on a local mount of the storage are read from the file.
+         */
         @Override
         public ImportFile get() {
+            InputStream stream;
+            JfrEvent event = JfrEvent.begin(JfrEvent.Type.IMPORT_FILE)
+                    .operation(artifact.getFilePath())
+                    .bytes(artifact.getSize());
+            Runnable closeAction = () -> {
+                event.close();
+                if (onClose != null) {
+                    onClose.run();
+                }
+            };
+            ImportFile local = openLocal(closeAction);
+            if (local != null) {
+                return local;
+            }
+            Timer.Context timer = fetchTimer == null ? null : fetchTimer.time();
             try {
-                HttpURLConnection connection = (HttpURLConnection) artifact.getUrl().openConnection();
-                try {
-                    MDCUtils.headersFromContext().forEach(connection::addRequestProperty);
-                    connection.setRequestMethod("GET");
-                    int responseCode = connection.getResponseCode();
-                    if (responseCode != 200) {
-                        String responseMessage = connection.getResponseMessage();
-                        connection.disconnect();
-                        throw new RuntimeException(
-                                "Failed to obtain artifact (status " + responseCode + " " + responseMessage + ")");
+                stream = storageClient == null ? openConnection() : storageClient.get(artifact.getUrl(), headers, false);
+            } catch (IOException ex) {
+                event.close();
+                throw new RuntimeException(ex);
+            } catch (RuntimeException ex) {
+                event.close();
+                throw ex;
+            } finally {
+                if (timer != null) {
+                    timer.stop();
+                }
+            }
+            if (onClose != null || event.isEnabled()) {
+                stream = new FilterInputStream(stream) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            closeAction.run();
+                        }
                     }
-                    InputStream stream = connection.getInputStream();
-                    return new ImportFile(artifact.getFilePath(), stream, artifact.getSize());
-                } catch (RuntimeException ex) {
-                    connection.disconnect();
-                    throw ex;
+                };
+            }
+            return new ImportFile(artifact.getFilePath(), stream, artifact.getSize());
+        }
+
+        private ImportFile openLocal(Runnable closeAction) {
+            Path file = storageClient == null ? null : storageClient.getLocalFile(artifact.getUrl());
+            if (file == null) {
+                return null;
+            }
+            try {
+                if (Files.size(file) == artifact.getSize()) {
+                    log.debug("Reading file {} from local mount {}", artifact.getFilePath(), file);
+                    return FileImportFile.open(artifact.getFilePath(), file, artifact.getSize(), closeAction);
                 }
+                log.warn("Size of {} doesn't match artifact {}, downloading it.", file, artifact.getFilePath());
             } catch (IOException ex) {
-                throw new RuntimeException(ex);
+                log.warn("Failed to open " + file + ", downloading it.", ex);
+            }
+            return null;
+        }
+
+        private InputStream openConnection() throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) artifact.getUrl().openConnection();
+            try {
+                headers.forEach(connection::addRequestProperty);
+                connection.setRequestMethod("GET");
+                int responseCode = connection.getResponseCode();
+                if (responseCode != 200) {
+                    String responseMessage = connection.getResponseMessage();
+                    connection.disconnect();
+                    throw new RuntimeException(
+                            "Failed to obtain artifact (status " + responseCode + " " + responseMessage + ")");
+                }
+                return connection.getInputStream();
+            } catch (IOException | RuntimeException ex) {
+                connection.disconnect();
+                throw ex;
             }
         }
     }
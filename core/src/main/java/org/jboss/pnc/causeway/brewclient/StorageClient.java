@@ -0,0 +1,308 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.brewclient;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.apache.http.Header;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
+import org.jboss.pnc.causeway.config.CausewayConfig;
+import org.jboss.pnc.pncmetrics.MetricsConfiguration;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Pooled HTTP client for fetching artifacts and logs from the artifact and log storage. Connections are kept alive and
+ * reused between requests. Storage URLs that are mapped to local mounts by {@code storage.local.mounts} can be read
+ * from the file system instead.
+ */
+@Slf4j
+@ApplicationScoped
+public class StorageClient {
+
+    private static final String METRICS_POOL = "causeway.storage.pool";
+
+    /**
+     * Most bytes discarded when a stream that wasn't read to the end is closed. Bigger remainders abort the connection
+     * instead of draining the rest of the body to keep it alive.
+     */
+    private static final int DRAIN_LIMIT = 8192;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    private final CloseableHttpClient client;
+
+    /** Local directories by storage URL prefix, longest prefixes first. */
+    private final Map<String, Path> localMounts;
+
+    @Inject
+    public StorageClient(CausewayConfig config, MetricsConfiguration metricsConfiguration) {
+        MetricRegistry registry = metricsConfiguration.getMetricRegistry();
+        connectionManager = new TimedConnectionManager(registry.timer(METRICS_POOL + ".wait"));
+        connectionManager.setMaxTotal(config.getStorageConnections());
+        connectionManager.setDefaultMaxPerRoute(config.getStorageConnectionsPerHost());
+
+        int timeout = (int) TimeUnit.SECONDS.toMillis(config.getStorageTimeout());
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(timeout)
+                .setSocketTimeout(timeout)
+                .setConnectionRequestTimeout(timeout)
+                .build();
+        client = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .disableContentCompression()
+                .build();
+        localMounts = parseMounts(config.getStorageLocalMounts());
+
+        registerGauge(registry, "leased", PoolStats::getLeased);
+        registerGauge(registry, "available", PoolStats::getAvailable);
+        registerGauge(registry, "pending", PoolStats::getPending);
+        registerGauge(registry, "max", PoolStats::getMax);
+    }
+
+    private void registerGauge(MetricRegistry registry, String name, Function<PoolStats, Integer> stat) {
+        try {
+            Gauge<Integer> gauge = () -> stat.apply(connectionManager.getTotalStats());
+            registry.register(METRICS_POOL + "." + name, gauge);
+        } catch (IllegalArgumentException e) {
+            log.debug("Gauge {} already registered.", name);
+        }
+    }
+
+    /**
+     * Opens stream with the content of the given URL. The connection returns to the pool when the stream is closed.
+     * Closing the stream before its end aborts the connection rather than downloading the rest of the body.
+     *
+     * @param url URL of the file.
+     * @param headers Additional request headers.
+     * @param gzip Whether to ask for gzip transfer encoding. The returned stream is decompressed either way. Must not
+     *        be used for files that are served compressed as they are, e.g. tar.gz archives.
+     * @throws IOException when the request failed or the response status isn't 200.
+     */
+    public InputStream get(URL url, Map<String, String> headers, boolean gzip) throws IOException {
+        HttpGet request = new HttpGet(url.toString());
+        headers.forEach(request::addHeader);
+        if (gzip) {
+            request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        }
+        CloseableHttpResponse response = client.execute(request);
+        try {
+            int statusCode = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            if (statusCode != 200 || entity == null) {
+                EntityUtils.consumeQuietly(entity);
+                throw new IOException(
+                        "Failed to obtain " + url + " (status " + statusCode + " "
+                                + response.getStatusLine().getReasonPhrase() + ")");
+            }
+            InputStream stream = new FilterInputStream(entity.getContent()) {
+                private boolean eof;
+
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    eof |= b == -1;
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = super.read(b, off, len);
+                    eof |= n == -1;
+                    return n;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        if (!eof && !discardRest(in)) {
+                            request.abort();
+                        }
+                        super.close();
+                    } finally {
+                        response.close();
+                    }
+                }
+            };
+            Header encoding = entity.getContentEncoding();
+            if (gzip && encoding != null && "gzip".equalsIgnoreCase(encoding.getValue())) {
+                return new GZIPInputStream(stream);
+            }
+            return stream;
+        } catch (IOException | RuntimeException e) {
+            response.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads at most {@link #DRAIN_LIMIT} bytes from the stream and returns whether it reached its end.
+     */
+    private static boolean discardRest(InputStream stream) {
+        byte[] buffer = new byte[DRAIN_LIMIT];
+        int discarded = 0;
+        try {
+            while (discarded < DRAIN_LIMIT) {
+                int n = stream.read(buffer, 0, DRAIN_LIMIT - discarded);
+                if (n == -1) {
+                    return true;
+                }
+                discarded += n;
+            }
+            return stream.read() == -1;
+        } catch (IOException e) {
+            log.debug("Failed to discard rest of the response.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Returns the local file mounted under the given storage URL, or null when the URL isn't mapped to a local mount or
+     * the file isn't there.
+     */
+    public Path getLocalFile(URL url) {
+        return resolveLocal(localMounts, url);
+    }
+
+    static Path resolveLocal(Map<String, Path> mounts, URL url) {
+        if (mounts.isEmpty() || url.getQuery() != null) {
+            return null;
+        }
+        String urlString = url.toString();
+        for (Map.Entry<String, Path> mount : mounts.entrySet()) {
+            if (!urlString.startsWith(mount.getKey())) {
+                continue;
+            }
+            Path directory = mount.getValue();
+            try {
+                String relative = URLDecoder.decode(
+                        urlString.substring(mount.getKey().length()).replace("+", "%2B"),
+                        "UTF-8");
+                Path file = directory.resolve(relative.replaceFirst("^/+", "")).normalize();
+                if (file.startsWith(directory) && Files.isRegularFile(file)) {
+                    return file;
+                }
+            } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+                log.debug("Failed to map " + url + " to local mount " + directory + ".", e);
+            }
+            return null;
+        }
+        return null;
+    }
+
+    /**
+     * Parses comma separated {@code prefix=directory} pairs. Malformed pairs are skipped.
+     */
+    static Map<String, Path> parseMounts(String mounts) {
+        Map<String, Path> parsed = new TreeMap<>(
+                Comparator.comparingInt(String::length).reversed().thenComparing(Comparator.naturalOrder()));
+        if (mounts == null) {
+            return parsed;
+        }
+        for (String mount : mounts.split(",")) {
+            String pair = mount.trim();
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int separator = pair.lastIndexOf('=');
+            if (separator <= 0 || separator == pair.length() - 1) {
+                log.warn("Ignoring malformed local mount '{}', expected prefix=directory.", pair);
+                continue;
+            }
+            Path directory = Paths.get(pair.substring(separator + 1).trim()).toAbsolutePath().normalize();
+            parsed.put(pair.substring(0, separator).trim(), directory);
+        }
+        return parsed;
+    }
+
+    @PreDestroy
+    public void close() {
+        try {
+            client.close();
+        } catch (IOException e) {
+            log.warn("Failed to close storage HTTP client.", e);
+        }
+    }
+
+    /**
+     * Connection manager recording the time spent waiting for a connection from the pool.
+     */
+    private static class TimedConnectionManager extends PoolingHttpClientConnectionManager {
+        private final Timer leaseWait;
+
+        TimedConnectionManager(Timer leaseWait) {
+            this.leaseWait = leaseWait;
+        }
+
+        @Override
+        public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+            ConnectionRequest request = super.requestConnection(route, state);
+            return new ConnectionRequest() {
+                @Override
+                public HttpClientConnection get(long timeout, TimeUnit timeUnit)
+                        throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                    Timer.Context context = leaseWait.time();
+                    try {
+                        return request.get(timeout, timeUnit);
+                    } finally {
+                        context.stop();
+                    }
+                }
+
+                @Override
+                public boolean cancel() {
+                    return request.cancel();
+                }
+            };
+        }
+    }
+}
@@ -80,6 +80,40 @@ public class CausewayConfig {
 
     private static final Integer DEFAULT_PAGE_SIZE = 50;
 
+    private static final Integer DEFAULT_KOJI_SESSION_TTL_SECS = 3600;
+
+    private static final Integer DEFAULT_KOJI_TAG_CACHE_TTL_SECS = 300;
+
+    private static final Integer DEFAULT_KOJI_TAG_CACHE_NEGATIVE_TTL_SECS = 30;
+
+    private static final Integer DEFAULT_MILESTONE_IMPORT_PARALLELISM = 1;
+
+    private static final Integer DEFAULT_SOURCE_REPACK_THREADS = 1;
+
+    private static final Integer DEFAULT_SOURCES_CACHE_SIZE_MB = 10240;
+
+    private static final Integer DEFAULT_SOURCES_SPOOL_MEMORY_KB = 1024;
+
+    private static final Integer DEFAULT_SOURCES_SPOOL_BUDGET_MB = 0;
+
+    private static final Integer DEFAULT_SOURCES_SPOOL_ORPHAN_AGE_MINS = 1440;
+
+    private static final Integer DEFAULT_IMPORT_PREFETCH_CONCURRENCY = 1;
+
+    private static final Integer DEFAULT_IMPORT_PREFETCH_SIZE_MB = 256;
+
+    private static final Integer DEFAULT_IMPORT_WORKERS = 10;
+
+    private static final Integer DEFAULT_IMPORT_QUEUE_SIZE = 1000;
+
+    private static final Integer DEFAULT_CALLBACK_CONNECTIONS = 4;
+
+    private static final Integer DEFAULT_CALLBACK_QUEUE_SIZE = 1000;
+
+    private static final Integer DEFAULT_CALLBACK_RETRIES = 10;
+
+    private static final Integer DEFAULT_CALLBACK_RETRY_DELAY_SECS = 5;
+
     private boolean configured;
 
     private String kojiClientKeyCertificateFile;
@@ -114,8 +148,60 @@ public class CausewayConfig {
 
     private Integer kojiConnections;
 
+    private Integer kojiSessionTtl;
+
+    private Integer kojiTagCacheTtl;
+
+    private Integer kojiTagCacheNegativeTtl;
+
+    private Integer storageTimeout;
+
+    private Integer storageConnections;
+
+    private Integer storageConnectionsPerHost;
+
+    private String storageLocalMounts;
+
+    private Integer milestoneImportParallelism;
+
+    private Integer sourceRepackThreads;
+
+    private String sourcesCacheDir;
+
+    private Integer sourcesCacheSize;
+
+    private String sourcesSpoolDir;
+
+    private Integer sourcesSpoolMemory;
+
+    private Integer sourcesSpoolBudget;
+
+    private Integer sourcesSpoolOrphanAge;
+
+    private Integer importPrefetchConcurrency;
+
+    private Integer importPrefetchSize;
+
+    private Integer importWorkers;
+
+    private Integer importQueueSize;
+
+    private String importQueueDir;
+
+    private Integer callbackConnections;
+
+    private Integer callbackQueueSize;
+
+    private Integer callbackRetries;
+
+    private Integer callbackRetryDelay;
+
+    private String callbackDir;
+
     private Integer pnclTimeout;
 
+    private Integer pnclPageSize;
+
     private SiteConfig kojiSiteConfig;
 
     private SiteConfig pnclSiteConfig;
@@ -294,7 +380,7 @@ public class CausewayConfig {
 
                 builder.host(url.getHost())
                         .protocol(url.getProtocol())
-                        .pageSize(DEFAULT_PAGE_SIZE)
+                        .pageSize(getPnclPageSize())
                         .addDefaultMdcToHeadersMappings()
                         .port((url.getPort() != -1) ? url.getPort() : url.getDefaultPort());
             } catch (MalformedURLException e) {
@@ -353,6 +439,314 @@ public class CausewayConfig {
         return kojiConnections == null ? DEFAULT_CONNECTIONS : kojiConnections;
     }
 
+    @ConfigName("storage.timeout.secs")
+    public void setStorageTimeout(Integer storageTimeout) {
+        this.storageTimeout = storageTimeout;
+    }
+
+    /**
+     * Connect and read timeout of requests to artifact and log storage.
+     */
+    public Integer getStorageTimeout() {
+        return storageTimeout == null ? getHttpTimeout() : storageTimeout;
+    }
+
+    @ConfigName("storage.connections")
+    public void setStorageConnections(Integer storageConnections) {
+        this.storageConnections = storageConnections;
+    }
+
+    /**
+     * Maximal number of pooled connections to artifact and log storage.
+     */
+    public Integer getStorageConnections() {
+        return storageConnections == null ? 2 * DEFAULT_CONNECTIONS : storageConnections;
+    }
+
+    @ConfigName("storage.connections.per.host")
+    public void setStorageConnectionsPerHost(Integer storageConnectionsPerHost) {
+        this.storageConnectionsPerHost = storageConnectionsPerHost;
+    }
+
+    /**
+     * Maximal number of pooled connections to single storage host.
+     */
+    public Integer getStorageConnectionsPerHost() {
+        return storageConnectionsPerHost == null ? DEFAULT_CONNECTIONS : storageConnectionsPerHost;
+    }
+
+    @ConfigName("storage.local.mounts")
+    public void setStorageLocalMounts(String storageLocalMounts) {
+        this.storageLocalMounts = storageLocalMounts;
+    }
+
+    /**
+     * Comma separated mapping of storage URL prefixes to local directories where the same files are mounted, e.g.
+     * {@code http://storage.example.com/api/content/=/mnt/storage}. Files under mapped URLs are read from the mount
+     * instead of being downloaded.
+     */
+    public String getStorageLocalMounts() {
+        return storageLocalMounts;
+    }
+
+    @ConfigName("koji.session.ttl.secs")
+    public void setKojiSessionTtl(Integer kojiSessionTtl) {
+        this.kojiSessionTtl = kojiSessionTtl;
+    }
+
+    /**
+     * Maximal age of Koji session shared by calls within one import. Older session is replaced by new login.
+     */
+    public Integer getKojiSessionTtl() {
+        return kojiSessionTtl == null ? DEFAULT_KOJI_SESSION_TTL_SECS : kojiSessionTtl;
+    }
+
+    @ConfigName("koji.tag.cache.ttl.secs")
+    public void setKojiTagCacheTtl(Integer kojiTagCacheTtl) {
+        this.kojiTagCacheTtl = kojiTagCacheTtl;
+    }
+
+    /**
+     * How long the existence of Koji tags is remembered. With 0 the tags are checked on every import.
+     */
+    public Integer getKojiTagCacheTtl() {
+        return kojiTagCacheTtl == null ? DEFAULT_KOJI_TAG_CACHE_TTL_SECS : kojiTagCacheTtl;
+    }
+
+    @ConfigName("koji.tag.cache.negative.ttl.secs")
+    public void setKojiTagCacheNegativeTtl(Integer kojiTagCacheNegativeTtl) {
+        this.kojiTagCacheNegativeTtl = kojiTagCacheNegativeTtl;
+    }
+
+    /**
+     * How long the absence of Koji tags is remembered. Kept short so that newly created tags are noticed soon.
+     */
+    public Integer getKojiTagCacheNegativeTtl() {
+        return kojiTagCacheNegativeTtl == null ? DEFAULT_KOJI_TAG_CACHE_NEGATIVE_TTL_SECS : kojiTagCacheNegativeTtl;
+    }
+
+    @ConfigName("milestone.import.parallelism")
+    public void setMilestoneImportParallelism(Integer milestoneImportParallelism) {
+        this.milestoneImportParallelism = milestoneImportParallelism;
+    }
+
+    /**
+     * Number of builds of one milestone that are imported at the same time.
+     */
+    public Integer getMilestoneImportParallelism() {
+        return milestoneImportParallelism == null ? DEFAULT_MILESTONE_IMPORT_PARALLELISM : milestoneImportParallelism;
+    }
+
+    @ConfigName("source.repack.threads")
+    public void setSourceRepackThreads(Integer sourceRepackThreads) {
+        this.sourceRepackThreads = sourceRepackThreads;
+    }
+
+    /**
+     * Number of threads compressing the repacked sources archive. With one thread the archive is compressed
+     * sequentially while it is being read.
+     */
+    public Integer getSourceRepackThreads() {
+        return sourceRepackThreads == null ? DEFAULT_SOURCE_REPACK_THREADS : sourceRepackThreads;
+    }
+
+    @ConfigName("sources.cache.dir")
+    public void setSourcesCacheDir(String sourcesCacheDir) {
+        this.sourcesCacheDir = sourcesCacheDir;
+    }
+
+    /**
+     * Directory where repacked source archives are cached. When not set, the cache is disabled.
+     */
+    public String getSourcesCacheDir() {
+        return sourcesCacheDir;
+    }
+
+    @ConfigName("sources.cache.size.mb")
+    public void setSourcesCacheSize(Integer sourcesCacheSize) {
+        this.sourcesCacheSize = sourcesCacheSize;
+    }
+
+    /**
+     * Size in MiB the cache of repacked source archives is trimmed to.
+     */
+    public Integer getSourcesCacheSize() {
+        return sourcesCacheSize == null ? DEFAULT_SOURCES_CACHE_SIZE_MB : sourcesCacheSize;
+    }
+
+    @ConfigName("sources.spool.dir")
+    public void setSourcesSpoolDir(String sourcesSpoolDir) {
+        this.sourcesSpoolDir = sourcesSpoolDir;
+    }
+
+    /**
+     * Directory for repacked source archives waiting for upload. When not set, the default temporary directory is used.
+     */
+    public String getSourcesSpoolDir() {
+        return sourcesSpoolDir;
+    }
+
+    @ConfigName("sources.spool.memory.kb")
+    public void setSourcesSpoolMemory(Integer sourcesSpoolMemory) {
+        this.sourcesSpoolMemory = sourcesSpoolMemory;
+    }
+
+    /**
+     * Size in KiB up to which repacked source archives are kept in off-heap memory instead of the spool directory.
+     */
+    public Integer getSourcesSpoolMemory() {
+        return sourcesSpoolMemory == null ? DEFAULT_SOURCES_SPOOL_MEMORY_KB : sourcesSpoolMemory;
+    }
+
+    @ConfigName("sources.spool.budget.mb")
+    public void setSourcesSpoolBudget(Integer sourcesSpoolBudget) {
+        this.sourcesSpoolBudget = sourcesSpoolBudget;
+    }
+
+    /**
+     * Disk space in MiB the spooled source archives may take. Repacks wait while the budget is used up. Zero means no
+     * limit.
+     */
+    public Integer getSourcesSpoolBudget() {
+        return sourcesSpoolBudget == null ? DEFAULT_SOURCES_SPOOL_BUDGET_MB : sourcesSpoolBudget;
+    }
+
+    @ConfigName("sources.spool.orphan.age.mins")
+    public void setSourcesSpoolOrphanAge(Integer sourcesSpoolOrphanAge) {
+        this.sourcesSpoolOrphanAge = sourcesSpoolOrphanAge;
+    }
+
+    /**
+     * Age in minutes after which spooled source archives and build logs that no import uses are deleted by the
+     * periodic sweep. Zero disables the sweep.
+     */
+    public Integer getSourcesSpoolOrphanAge() {
+        return sourcesSpoolOrphanAge == null ? DEFAULT_SOURCES_SPOOL_ORPHAN_AGE_MINS : sourcesSpoolOrphanAge;
+    }
+
+    @ConfigName("import.prefetch.concurrency")
+    public void setImportPrefetchConcurrency(Integer importPrefetchConcurrency) {
+        this.importPrefetchConcurrency = importPrefetchConcurrency;
+    }
+
+    /**
+     * Number of artifact streams opened ahead of the Koji upload. With 1 each artifact is fetched only when Koji asks
+     * for it.
+     */
+    public Integer getImportPrefetchConcurrency() {
+        return importPrefetchConcurrency == null ? DEFAULT_IMPORT_PREFETCH_CONCURRENCY : importPrefetchConcurrency;
+    }
+
+    @ConfigName("import.prefetch.size.mb")
+    public void setImportPrefetchSize(Integer importPrefetchSize) {
+        this.importPrefetchSize = importPrefetchSize;
+    }
+
+    /**
+     * Size in MiB of artifacts that may be opened ahead of the Koji upload at one time.
+     */
+    public Integer getImportPrefetchSize() {
+        return importPrefetchSize == null ? DEFAULT_IMPORT_PREFETCH_SIZE_MB : importPrefetchSize;
+    }
+
+    @ConfigName("import.workers")
+    public void setImportWorkers(Integer importWorkers) {
+        this.importWorkers = importWorkers;
+    }
+
+    /**
+     * Number of queued import and untag jobs that are processed at the same time.
+     */
+    public Integer getImportWorkers() {
+        return importWorkers == null ? DEFAULT_IMPORT_WORKERS : importWorkers;
+    }
+
+    @ConfigName("import.queue.size")
+    public void setImportQueueSize(Integer importQueueSize) {
+        this.importQueueSize = importQueueSize;
+    }
+
+    /**
+     * Number of jobs that may wait in the import queue. Further requests are rejected until the queue drains.
+     */
+    public Integer getImportQueueSize() {
+        return importQueueSize == null ? DEFAULT_IMPORT_QUEUE_SIZE : importQueueSize;
+    }
+
+    @ConfigName("import.queue.dir")
+    public void setImportQueueDir(String importQueueDir) {
+        this.importQueueDir = importQueueDir;
+    }
+
+    /**
+     * Directory where queued jobs are persisted so that they are resumed after restart. When not set, the queue is
+     * kept only in memory.
+     */
+    public String getImportQueueDir() {
+        return importQueueDir;
+    }
+
+    @ConfigName("callback.connections")
+    public void setCallbackConnections(Integer callbackConnections) {
+        this.callbackConnections = callbackConnections;
+    }
+
+    /**
+     * Number of callbacks that are sent at the same time.
+     */
+    public Integer getCallbackConnections() {
+        return callbackConnections == null ? DEFAULT_CALLBACK_CONNECTIONS : callbackConnections;
+    }
+
+    @ConfigName("callback.queue.size")
+    public void setCallbackQueueSize(Integer callbackQueueSize) {
+        this.callbackQueueSize = callbackQueueSize;
+    }
+
+    /**
+     * Number of callbacks that may wait for delivery. When exceeded, callbacks are sent by the importing thread.
+     */
+    public Integer getCallbackQueueSize() {
+        return callbackQueueSize == null ? DEFAULT_CALLBACK_QUEUE_SIZE : callbackQueueSize;
+    }
+
+    @ConfigName("callback.retries")
+    public void setCallbackRetries(Integer callbackRetries) {
+        this.callbackRetries = callbackRetries;
+    }
+
+    /**
+     * Number of times delivery of a callback is retried before it is given up.
+     */
+    public Integer getCallbackRetries() {
+        return callbackRetries == null ? DEFAULT_CALLBACK_RETRIES : callbackRetries;
+    }
+
+    @ConfigName("callback.retry.delay.secs")
+    public void setCallbackRetryDelay(Integer callbackRetryDelay) {
+        this.callbackRetryDelay = callbackRetryDelay;
+    }
+
+    /**
+     * Delay before the first retry of a failed callback. The delay doubles with each further retry.
+     */
+    public Integer getCallbackRetryDelay() {
+        return callbackRetryDelay == null ? DEFAULT_CALLBACK_RETRY_DELAY_SECS : callbackRetryDelay;
+    }
+
+    @ConfigName("callback.dir")
+    public void setCallbackDir(String callbackDir) {
+        this.callbackDir = callbackDir;
+    }
+
+    /**
+     * Directory where undelivered callbacks are persisted so that they are delivered after restart. When not set,
+     * they are kept only in memory.
+     */
+    public String getCallbackDir() {
+        return callbackDir;
+    }
+
     public Integer getPnclTimeout() {
         return pnclTimeout == null ? getHttpTimeout() : pnclTimeout;
     }
@@ -362,6 +756,18 @@ public class CausewayConfig {
         this.pnclTimeout = pnclTimeout;
     }
 
+    @ConfigName("pncl.page.size")
+    public void setPnclPageSize(Integer pnclPageSize) {
+        this.pnclPageSize = pnclPageSize;
+    }
+
+    /**
+     * Number of items requested in one page from PNC. Larger pages mean fewer requests for builds with many artifacts.
+     */
+    public Integer getPnclPageSize() {
+        return pnclPageSize == null ? DEFAULT_PAGE_SIZE : pnclPageSize;
+    }
+
     public String getValidationErrors() {
         List<String> errors = new ArrayList<>();
         if (isEmpty(getKojiClientCertificatePassword())) {
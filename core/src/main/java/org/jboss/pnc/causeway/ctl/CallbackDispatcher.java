@@ -0,0 +1,344 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.ctl;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.jboss.pnc.api.dto.Request;
+import org.jboss.pnc.causeway.config.CausewayConfig;
+import org.jboss.pnc.causeway.util.ImportMetrics;
+import org.jboss.pnc.pncmetrics.MetricsConfiguration;
+import org.jboss.resteasy.client.jaxrs.ResteasyClient;
+import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
+import org.slf4j.MDC;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.DependsOn;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.inject.Inject;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import lombok.extern.slf4j.Slf4j;
+
+import static org.jboss.pnc.causeway.util.ImportMetrics.Phase.CALLBACK;
+
+/**
+ * Outbox of callbacks to PNC and BPM. Callbacks are sent in the background by {@code callback.connections} threads,
+ * so that the importing thread is freed as soon as the result is known. Failed deliveries are retried with
+ * exponential backoff. When {@code callback.dir} is set, each callback is stored there until it is delivered or given
+ * up and undelivered callbacks are sent again on startup.
+ */
+@Slf4j
+@Singleton
+@Startup
+@DependsOn("CausewayConfigurator")
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class CallbackDispatcher {
+
+    private static final String METRICS_CALLBACK = "causeway.callback";
+
+    private static final String CALLBACK_SUFFIX = ".json";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int MAX_BACKOFF_SHIFT = 10;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Inject
+    private CausewayConfig config;
+
+    @Inject
+    private MetricsConfiguration metricsConfiguration;
+
+    @Inject
+    private ImportMetrics importMetrics;
+
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    private ScheduledExecutorService scheduler;
+
+    private ResteasyClient client;
+
+    private Path directory;
+
+    private int capacity;
+
+    private int retries;
+
+    private long retryDelay;
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    public CallbackDispatcher() {
+    }
+
+    CallbackDispatcher(CausewayConfig config, ScheduledExecutorService scheduler) {
+        this.config = config;
+        this.scheduler = scheduler;
+        start();
+    }
+
+    @PostConstruct
+    void start() {
+        int connections = config.getCallbackConnections();
+        if (scheduler == null) {
+            scheduler = Executors.newScheduledThreadPool(
+                    connections,
+                    threadFactory == null ? Executors.defaultThreadFactory() : threadFactory);
+        }
+        if (importMetrics == null) {
+            importMetrics = new ImportMetrics(new MetricRegistry());
+        }
+        client = new ResteasyClientBuilder().connectionPoolSize(connections).build();
+        capacity = config.getCallbackQueueSize();
+        retries = config.getCallbackRetries();
+        retryDelay = TimeUnit.SECONDS.toMillis(config.getCallbackRetryDelay());
+        directory = config.getCallbackDir() == null ? null : Paths.get(config.getCallbackDir());
+        if (metricsConfiguration != null) {
+            try {
+                Gauge<Integer> gauge = pending::get;
+                metricsConfiguration.getMetricRegistry().register(METRICS_CALLBACK + ".pending", gauge);
+            } catch (IllegalArgumentException e) {
+                log.debug("Gauge pending already registered.");
+            }
+        }
+        resume();
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+        client.close();
+        if (pending.get() > 0 && directory == null) {
+            log.warn("Shutting down with {} undelivered callbacks.", pending.get());
+        }
+    }
+
+    /**
+     * Sends the entity to the callback target using POST, regardless of the method in the target.
+     */
+    public void post(Request target, Object entity) {
+        submit(target, "POST", entity);
+    }
+
+    /**
+     * Sends the entity to the callback target using the method in the target.
+     */
+    public void send(Request target, Object entity) {
+        submit(target, target.getMethod().toString(), entity);
+    }
+
+    public int getPending() {
+        return pending.get();
+    }
+
+    private void submit(Request target, String method, Object entity) {
+        PendingCallback callback = new PendingCallback();
+        callback.setTarget(target);
+        callback.setMethod(method);
+        callback.setMdc(MDC.getCopyOfContextMap());
+        try {
+            callback.setBody(mapper.writeValueAsString(entity));
+        } catch (JsonProcessingException ex) {
+            log.error("Failed to serialize callback to " + target.getUri() + ", it won't be sent.", ex);
+            return;
+        }
+
+        if (pending.incrementAndGet() > capacity) {
+            pending.decrementAndGet();
+            log.warn(
+                    "Callback queue is full ({} callbacks), sending callback to {} directly.",
+                    capacity,
+                    target.getUri());
+            try {
+                deliver(callback);
+            } catch (RuntimeException ex) {
+                log.error("Failed to send callback to " + target.getUri() + ".", ex);
+            }
+            return;
+        }
+        persist(callback);
+        schedule(callback, 0);
+    }
+
+    private void schedule(PendingCallback callback, long delayMillis) {
+        try {
+            scheduler.schedule(() -> attempt(callback), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            log.warn(
+                    "Failed to schedule callback to {}, {}.",
+                    callback.getTarget().getUri(),
+                    callback.getFile() == null ? "dropping it" : "it will be resent after restart");
+            pending.decrementAndGet();
+        }
+    }
+
+    private void attempt(PendingCallback callback) {
+        if (callback.getMdc() != null) {
+            MDC.setContextMap(callback.getMdc());
+        }
+        try {
+            boolean retry;
+            try {
+                int status = deliver(callback);
+                retry = status >= 500 || status == 408 || status == 429;
+                if (!retry && status >= 300) {
+                    log.error(
+                            "Callback to {} was rejected with status {}, it won't be retried.",
+                            callback.getTarget().getUri(),
+                            status);
+                }
+            } catch (RuntimeException ex) {
+                log.warn("Failed to send callback to {}: {}", callback.getTarget().getUri(), ex.getMessage());
+                retry = true;
+            }
+
+            if (retry && callback.getAttempt() < retries) {
+                long delay = retryDelay << Math.min(callback.getAttempt(), MAX_BACKOFF_SHIFT);
+                callback.setAttempt(callback.getAttempt() + 1);
+                log.info("Will retry callback to {} in {} ms.", callback.getTarget().getUri(), delay);
+                schedule(callback, delay);
+                return;
+            }
+            if (retry) {
+                log.error(
+                        "Giving up callback to {} after {} attempts.",
+                        callback.getTarget().getUri(),
+                        callback.getAttempt() + 1);
+            }
+            delete(callback.getFile());
+            pending.decrementAndGet();
+        } finally {
+            MDC.clear();
+        }
+    }
+
+    /**
+     * Sends the callback once.
+     *
+     * @return HTTP status of the response.
+     */
+    private int deliver(PendingCallback callback) {
+        Request target = callback.getTarget();
+        log.info("Sending callback to {} using http method: {}", target.getUri(), callback.getMethod());
+        Invocation.Builder request = client.target(target.getUri()).request(MediaType.APPLICATION_JSON);
+        target.getHeaders().forEach(h -> request.header(h.getName(), h.getValue()));
+        Entity<String> entity = Entity.entity(callback.getBody(), MediaType.APPLICATION_JSON_TYPE);
+        try (Timer.Context context = importMetrics.time(CALLBACK);
+                Response response = request.method(callback.getMethod(), entity)) {
+            log.debug("Callback response: {} - {}.", response.getStatusInfo(), response.readEntity(String.class));
+            return response.getStatus();
+        }
+    }
+
+    private void persist(PendingCallback callback) {
+        if (directory == null) {
+            return;
+        }
+        Path temp = null;
+        try {
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, "callback", TEMP_SUFFIX);
+            mapper.writeValue(temp.toFile(), callback);
+            Path file = directory.resolve(String.format("%019d", sequence.incrementAndGet()) + CALLBACK_SUFFIX);
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            callback.setFile(file);
+        } catch (IOException ex) {
+            log.error("Failed to persist callback, it won't be resent after restart.", ex);
+            delete(temp);
+        }
+    }
+
+    /**
+     * Schedules the callbacks left undelivered by previous run, in the order they were submitted.
+     */
+    private void resume() {
+        if (directory == null || !Files.isDirectory(directory)) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.sorted().collect(Collectors.toList());
+        } catch (IOException ex) {
+            log.error("Failed to list undelivered callbacks in " + directory + ".", ex);
+            return;
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                delete(file);
+            } else if (name.endsWith(CALLBACK_SUFFIX)) {
+                try {
+                    String number = name.substring(0, name.length() - CALLBACK_SUFFIX.length());
+                    long fileSequence = Long.parseLong(number);
+                    PendingCallback callback = mapper.readValue(file.toFile(), PendingCallback.class);
+                    callback.setFile(file);
+                    sequence.accumulateAndGet(fileSequence, Math::max);
+                    pending.incrementAndGet();
+                    schedule(callback, 0);
+                } catch (IOException | RuntimeException ex) {
+                    log.error("Failed to load undelivered callback " + file + ", discarding it.", ex);
+                    delete(file);
+                }
+            }
+        }
+        if (pending.get() > 0) {
+            log.info("Resending {} undelivered callbacks.", pending.get());
+        }
+    }
+
+    private static void delete(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            log.warn("Failed to delete " + file + ".", ex);
+        }
+    }
+}
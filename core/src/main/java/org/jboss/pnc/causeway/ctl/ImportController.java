@@ -5,6 +5,7 @@ import org.jboss.pnc.api.causeway.dto.untag.TaggedBuild;
 import org.jboss.pnc.api.dto.Request;
 
 /**
+ * Imports and untags builds synchronously. Requests from the REST API go through {@link ImportQueue}.
  *
  * @author Honza Brázdil &lt;jbrazdil@redhat.com&gt;
  */
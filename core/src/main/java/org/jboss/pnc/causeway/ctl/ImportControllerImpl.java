@@ -1,10 +1,8 @@
 package org.jboss.pnc.causeway.ctl;
 
-import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
-import com.codahale.metrics.UniformReservoir;
 import com.redhat.red.build.koji.model.json.KojiImport;
 import lombok.Data;
 
@@ -15,11 +13,17 @@ import org.jboss.pnc.api.causeway.dto.untag.TaggedBuild;
 import org.jboss.pnc.api.dto.Request;
 import org.jboss.pnc.causeway.CausewayException;
 import org.jboss.pnc.causeway.CausewayFailure;
+import org.jboss.pnc.causeway.brewclient.BatchResult;
 import org.jboss.pnc.causeway.brewclient.BrewClient;
+import org.jboss.pnc.causeway.brewclient.BrewSession;
 import org.jboss.pnc.causeway.brewclient.BuildTranslator;
 import org.jboss.pnc.causeway.brewclient.ImportFileGenerator;
 import org.jboss.pnc.causeway.config.CausewayConfig;
 import org.jboss.pnc.causeway.source.RenamedSources;
+import org.jboss.pnc.causeway.source.Spool;
+import org.jboss.pnc.causeway.util.ImportMetrics;
+import org.jboss.pnc.causeway.util.JfrEvent;
+import org.jboss.pnc.causeway.util.SingleFlight;
 import org.jboss.pnc.pncmetrics.MetricsConfiguration;
 import org.jboss.pnc.causeway.rest.BrewBuild;
 import org.jboss.pnc.causeway.rest.BrewNVR;
@@ -28,24 +32,23 @@ import org.jboss.pnc.causeway.rest.model.response.UntagResultRest;
 import org.jboss.pnc.causeway.rest.model.response.UntagResultRest.UntagResultRestBuilder;
 import org.jboss.pnc.dto.BuildPushResult;
 import org.jboss.pnc.enums.BuildPushStatus;
-import org.jboss.resteasy.client.jaxrs.ResteasyClient;
-import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
-import org.jboss.resteasy.client.jaxrs.ResteasyWebTarget;
 
-import javax.ejb.Asynchronous;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 import javax.inject.Inject;
-import javax.ws.rs.client.Entity;
-import javax.ws.rs.client.Invocation;
-import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.Response;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import lombok.extern.slf4j.Slf4j;
 
 import static org.jboss.pnc.causeway.ctl.PncImportControllerImpl.messageMissingTag;
+import static org.jboss.pnc.causeway.util.ImportMetrics.Phase.KOJI_METADATA;
+import static org.jboss.pnc.causeway.util.ImportMetrics.Phase.TAGGING;
+import static org.jboss.pnc.causeway.util.ImportMetrics.Phase.TRANSLATION;
+import static org.jboss.pnc.causeway.util.ImportMetrics.Phase.UPLOAD;
 import org.jboss.pnc.constants.MDCKeys;
 import org.slf4j.MDC;
 
@@ -73,24 +76,26 @@ public class ImportControllerImpl implements ImportController {
     private static final String BUILD_NOT_TAGGED = " but not previously tagged. Tagged now.";
     private static final String BUILD_ALREADY_IMPORTED = "Build was already imported with id ";
 
+    /** Imports in progress in this instance, shared by all controller instances. */
+    private static final SingleFlight<BrewNVR, BrewBuild> IMPORTS = new SingleFlight<>();
+
+    private static final int REVISION_BATCH = 10;
+
     @Inject
     private BrewClient brewClient;
     @Inject
     private BuildTranslator translator;
     @Inject
     private CausewayConfig config;
-    private ResteasyClient restClient;
-
     @Inject
-    private MetricsConfiguration metricsConfiguration;
+    private CallbackDispatcher callbackDispatcher;
+    @Inject
+    private ImportMetrics importMetrics;
 
     @Inject
-    public ImportControllerImpl() {
-        restClient = new ResteasyClientBuilder().connectionPoolSize(4).build();
-    }
+    private MetricsConfiguration metricsConfiguration;
 
     @Override
-    @Asynchronous
     public void importBuild(Build build, Request callback, String username, boolean reimport) {
         MDC.put(MDCKeys.BUILD_ID_KEY, String.valueOf(build.getExternalBuildID()));
         log.info("Importing external build {} to tag {}.", build.getExternalBuildID(), build.getTagPrefix());
@@ -105,8 +110,12 @@ public class ImportControllerImpl implements ImportController {
         Meter errors = registry.meter(METRICS_IMPORT_BASE + METRICS_ERRORS);
         BuildPushResult.Builder response = BuildPushResult.builder();
         response.buildId(String.valueOf(build.getExternalBuildID()));
-        try {
+        try (JfrEvent event = JfrEvent.begin(JfrEvent.Type.IMPORT).buildId(build.getExternalBuildID())) {
             BuildResult result = importBuild(build, build.getTagPrefix(), username, reimport);
+            if (event.isEnabled()) {
+                event.nvr(result.getNvr())
+                        .bytes(build.getBuiltArtifacts().stream().mapToLong(BuiltArtifact::getSize).sum());
+            }
             response.brewBuildId(result.getBrewID());
             response.brewBuildUrl(result.getBrewURL());
             response.status(BuildPushStatus.SUCCESS);
@@ -129,7 +138,6 @@ public class ImportControllerImpl implements ImportController {
     }
 
     @Override
-    @Asynchronous
     public void untagBuild(TaggedBuild build, Request callback) {
         log.info("Untaging build {} from tag {}.", build.getBrewBuildId(), build.getTagPrefix());
 
@@ -170,14 +178,25 @@ public class ImportControllerImpl implements ImportController {
         if (build.getBuiltArtifacts().isEmpty()) {
             throw new CausewayFailure("Build doesn't contain any artifacts");
         }
-        if (!brewClient.tagsExists(tagPrefix)) {
+        try (BrewSession session = brewClient.openSession()) {
+            return importBuildInSession(build, tagPrefix, username, reimport);
+        }
+    }
+
+    private BuildResult importBuildInSession(Build build, String tagPrefix, String username, boolean reimport)
+            throws CausewayException {
+        String buildType = ImportMetrics.buildType(build);
+        if (!importMetrics.time(KOJI_METADATA, buildType, () -> brewClient.tagsExists(tagPrefix))) {
             throw new CausewayFailure(messageMissingTag(tagPrefix, config.getKojiURL()));
         }
 
         BrewNVR nvr = getNVR(build);
         boolean buildImported = false;
 
-        BrewBuild brewBuild = brewClient.findBrewBuildOfNVR(nvr);
+        BrewBuild brewBuild;
+        try (Timer.Context metadata = importMetrics.time(KOJI_METADATA, buildType)) {
+            brewBuild = brewClient.findBrewBuildOfNVR(nvr);
+        }
         String message;
         if (brewBuild == null) {
             brewBuild = translateAndImport(nvr, build, username);
@@ -185,14 +204,13 @@ public class ImportControllerImpl implements ImportController {
             message = "Build imported with id " + brewBuild.getId() + ".";
         } else {
             if (reimport) {
-                int revision = 1;
-                while (brewBuild != null && brewClient.isBuildTagged(tagPrefix, brewBuild)) {
-                    nvr = getNVR(build, ++revision);
-                    brewBuild = brewClient.findBrewBuildOfNVR(nvr);
-                }
+                Revision revision = importMetrics
+                        .time(KOJI_METADATA, buildType, () -> findRevisionToImport(build, tagPrefix));
+                nvr = revision.getNvr();
+                brewBuild = revision.getBuild();
                 if (brewBuild == null) {
                     brewBuild = translateAndImport(nvr, build, username);
-                    message = "Build was previously imported. Reimported again with revision " + revision
+                    message = "Build was previously imported. Reimported again with revision " + revision.getNumber()
                             + " and with id " + brewBuild.getId() + ".";
                     buildImported = true;
                 } else {
@@ -200,8 +218,10 @@ public class ImportControllerImpl implements ImportController {
                 }
             } else {
                 message = BUILD_ALREADY_IMPORTED + brewBuild.getId();
-                if (!brewClient.isBuildTagged(tagPrefix, brewBuild)) {
-                    message += BUILD_NOT_TAGGED;
+                try (Timer.Context metadata = importMetrics.time(KOJI_METADATA, buildType)) {
+                    if (!brewClient.isBuildTagged(tagPrefix, brewBuild)) {
+                        message += BUILD_NOT_TAGGED;
+                    }
                 }
             }
         }
@@ -212,36 +232,76 @@ public class ImportControllerImpl implements ImportController {
             long logSize = build.getLogs().stream().mapToLong(Logfile::getSize).sum();
             int logNumber = build.getLogs().size();
 
-            updateHistogram(metricsConfiguration, METRICS_ARTIFACTS_SIZE_KEY, artifactSize);
-            updateHistogram(metricsConfiguration, METRICS_ARTIFACTS_NUMBER_KEY, artifactNumber);
-            updateHistogram(metricsConfiguration, METRICS_LOGS_SIZE_KEY, logSize);
-            updateHistogram(metricsConfiguration, METRICS_LOGS_NUMBER_KEY, logNumber);
+            importMetrics.update(METRICS_ARTIFACTS_SIZE_KEY, artifactSize);
+            importMetrics.update(METRICS_ARTIFACTS_NUMBER_KEY, artifactNumber);
+            importMetrics.update(METRICS_LOGS_SIZE_KEY, logSize);
+            importMetrics.update(METRICS_LOGS_NUMBER_KEY, logNumber);
         }
 
-        brewClient.tagBuild(tagPrefix, brewBuild);
+        try (Timer.Context tagging = importMetrics.time(TAGGING, buildType)) {
+            brewClient.tagBuild(tagPrefix, brewBuild);
+        }
 
-        return new BuildResult(brewBuild.getId(), brewClient.getBuildUrl(brewBuild.getId()), message);
+        return new BuildResult(
+                brewBuild.getId(),
+                brewBuild.getNVR(),
+                brewClient.getBuildUrl(brewBuild.getId()),
+                message);
     }
 
+    /**
+     * Finds the lowest revision of the build that either wasn't imported yet or was imported but isn't tagged. The
+     * revisions are looked up in batches of {@value #REVISION_BATCH} instead of one by one.
+     */
+    private Revision findRevisionToImport(Build build, String tagPrefix) throws CausewayException {
+        for (int first = 1;; first += REVISION_BATCH) {
+            List<BrewNVR> nvrs = new ArrayList<>();
+            for (int revision = first; revision < first + REVISION_BATCH; revision++) {
+                nvrs.add(getNVR(build, revision));
+            }
+            BatchResult<BrewNVR, BrewBuild> found = brewClient.findBrewBuildsOfNVRs(nvrs);
+            List<BrewBuild> existing = new ArrayList<>();
+            for (BrewNVR nvr : nvrs) {
+                BrewBuild brewBuild = found.get(nvr);
+                if (brewBuild == null) {
+                    break;
+                }
+                existing.add(brewBuild);
+            }
+            Set<BrewBuild> tagged = brewClient.findTaggedBuilds(tagPrefix, existing);
+            for (int i = 0; i < nvrs.size(); i++) {
+                if (i == existing.size()) {
+                    return new Revision(first + i, nvrs.get(i), null);
+                }
+                if (!tagged.contains(existing.get(i))) {
+                    return new Revision(first + i, nvrs.get(i), existing.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Translates and imports the build. When the same NVR is already being imported by another request, waits for that
+     * import and returns its result instead of uploading the build again.
+     */
     private BrewBuild translateAndImport(BrewNVR nvr, Build build, String username) throws CausewayException {
-        RenamedSources sources = translator.getSources(build);
-        KojiImport kojiImport = translator.translate(nvr, build, sources, username);
-        ImportFileGenerator importFiles = translator.getImportFiles(build, sources);
-        return brewClient.importBuild(nvr, kojiImport, importFiles);
+        if (IMPORTS.isInFlight(nvr)) {
+            log.info("Build {} is already being imported, waiting for the running import.", nvr.getNVR());
+        }
+        return IMPORTS.execute(nvr, () -> doTranslateAndImport(nvr, build, username));
     }
 
-    private void updateHistogram(MetricsConfiguration metricsConfiguration, String name, long value) {
-        Histogram histogram = null;
-        if (metricsConfiguration != null) {
-            MetricRegistry registry = metricsConfiguration.getMetricRegistry();
-            try {
-                histogram = registry.register(name, new Histogram(new UniformReservoir()));
-            } catch (IllegalArgumentException e) {
-                histogram = registry.histogram(name);
+    private BrewBuild doTranslateAndImport(BrewNVR nvr, Build build, String username) throws CausewayException {
+        String buildType = ImportMetrics.buildType(build);
+        try (Spool.Scope spoolScope = Spool.openScope()) {
+            RenamedSources sources = translator.getSources(build);
+            KojiImport kojiImport;
+            ImportFileGenerator importFiles;
+            try (Timer.Context translation = importMetrics.time(TRANSLATION, buildType)) {
+                kojiImport = translator.translate(nvr, build, sources, username);
+                importFiles = translator.getImportFiles(build, sources);
             }
-        }
-        if (histogram != null) {
-            histogram.update(value);
+            return importMetrics.time(UPLOAD, buildType, () -> brewClient.importBuild(nvr, kojiImport, importFiles));
         }
     }
 
@@ -270,20 +330,17 @@ public class ImportControllerImpl implements ImportController {
             log.info("Not sending callback.");
             return;
         }
-        log.info("Sending callback to {}.", callback.getUri());
-        ResteasyWebTarget target = restClient.target(callback.getUri());
-        Invocation.Builder request = target.request(MediaType.APPLICATION_JSON);
-        callback.getHeaders().forEach(h -> request.header(h.getName(), h.getValue()));
-        Response response = request.post(Entity.entity(responseEntity, MediaType.APPLICATION_JSON_TYPE));
-        log.debug("Callback response: {} - {}.", response.getStatusInfo(), response.readEntity(String.class));
+        callbackDispatcher.post(callback, responseEntity);
     }
 
     private void untagBuild(int brewBuildId, String tagPrefix) throws CausewayException {
-        BrewBuild build = brewClient.findBrewBuild(brewBuildId);
-        if (build == null) {
-            throw new CausewayFailure("Build with given id (" + brewBuildId + ") not found");
+        try (BrewSession session = brewClient.openSession()) {
+            BrewBuild build = brewClient.findBrewBuild(brewBuildId);
+            if (build == null) {
+                throw new CausewayFailure("Build with given id (" + brewBuildId + ") not found");
+            }
+            brewClient.untagBuild(tagPrefix, build);
         }
-        brewClient.untagBuild(tagPrefix, build);
     }
 
     /**
@@ -310,10 +367,20 @@ public class ImportControllerImpl implements ImportController {
         return sw.toString();
     }
 
+    @Data
+    private static class Revision {
+
+        private final int number;
+        private final BrewNVR nvr;
+        /** Existing untagged build of the revision, null when the revision wasn't imported. */
+        private final BrewBuild build;
+    }
+
     @Data
     public static class BuildResult {
 
         private final int brewID;
+        private final String nvr;
         private final String brewURL;
         private final String message;
     }
@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.ctl;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import org.jboss.pnc.api.causeway.dto.push.Build;
+import org.jboss.pnc.api.causeway.dto.untag.TaggedBuild;
+import org.jboss.pnc.api.dto.Request;
+import org.slf4j.MDC;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+import lombok.Data;
+
+/**
+ * Import or untag request waiting in the {@link ImportQueue}. Stored as JSON when the queue is persistent.
+ */
+@Data
+public class ImportJob {
+
+    public enum Type {
+        IMPORT, UNTAG
+    }
+
+    private Type type;
+
+    private Build build;
+
+    private TaggedBuild taggedBuild;
+
+    private Request callback;
+
+    private String username;
+
+    private boolean reimport;
+
+    private Map<String, String> mdc;
+
+    @JsonIgnore
+    private Path file;
+
+    public static ImportJob importBuild(Build build, Request callback, String username, boolean reimport) {
+        ImportJob job = new ImportJob();
+        job.setType(Type.IMPORT);
+        job.setBuild(build);
+        job.setCallback(callback);
+        job.setUsername(username);
+        job.setReimport(reimport);
+        job.setMdc(MDC.getCopyOfContextMap());
+        return job;
+    }
+
+    public static ImportJob untagBuild(TaggedBuild build, Request callback) {
+        ImportJob job = new ImportJob();
+        job.setType(Type.UNTAG);
+        job.setTaggedBuild(build);
+        job.setCallback(callback);
+        job.setMdc(MDC.getCopyOfContextMap());
+        return job;
+    }
+
+    /**
+     * Tag prefix the job works with. Jobs are scheduled fairly between tags.
+     */
+    @JsonIgnore
+    public String getTag() {
+        String tag = type == Type.UNTAG ? taggedBuild.getTagPrefix() : build.getTagPrefix();
+        return tag == null ? "" : tag;
+    }
+}
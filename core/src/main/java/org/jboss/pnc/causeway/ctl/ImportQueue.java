@@ -0,0 +1,402 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.ctl;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.jboss.pnc.api.causeway.dto.push.MavenBuild;
+import org.jboss.pnc.api.causeway.dto.push.MavenBuiltArtifact;
+import org.jboss.pnc.api.causeway.dto.push.NpmBuild;
+import org.jboss.pnc.api.causeway.dto.push.NpmBuiltArtifact;
+import org.jboss.pnc.causeway.config.CausewayConfig;
+import org.jboss.pnc.causeway.util.CompactDependenciesModule;
+import org.jboss.pnc.pncmetrics.MetricsConfiguration;
+import org.slf4j.MDC;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.DependsOn;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Queue of import and untag jobs in front of the {@link ImportController}. At most {@code import.workers} jobs run at
+ * the same time and the waiting jobs are taken from each tag in turn, so that a mass push to one tag doesn't hold up
+ * the others. Jobs that the executor rejects are dispatched again after a delay. When {@code import.queue.dir} is set,
+ * each job is stored there until it finishes and unfinished jobs are resumed on startup.
+ */
+@Slf4j
+@Singleton
+@Startup
+@DependsOn("CausewayConfigurator")
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ImportQueue {
+
+    private static final String METRICS_QUEUE = "causeway.import.queue";
+
+    private static final String JOB_SUFFIX = ".json";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** Delay before jobs that the executor rejected are dispatched again. */
+    private static final long RETRY_DELAY_SECS = 10;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Inject
+    private ImportController controller;
+
+    @Inject
+    private CausewayConfig config;
+
+    @Inject
+    private MetricsConfiguration metricsConfiguration;
+
+    @Resource
+    private ManagedExecutorService executorService;
+
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    private Executor executor;
+
+    private ScheduledExecutorService retryScheduler;
+
+    private Path directory;
+
+    private int workers;
+
+    private int capacity;
+
+    private final Map<String, Deque<ImportJob>> waiting = new HashMap<>();
+
+    private final Deque<String> tags = new ArrayDeque<>();
+
+    private int size;
+
+    private int running;
+
+    /** Submitted jobs that are being persisted and count towards the capacity. */
+    private int persisting;
+
+    private boolean retryPending;
+
+    private long sequence;
+
+    public ImportQueue() {
+        mapper.registerSubtypes(MavenBuild.class, NpmBuild.class, MavenBuiltArtifact.class, NpmBuiltArtifact.class);
+        mapper.registerModule(new CompactDependenciesModule());
+    }
+
+    ImportQueue(ImportController controller, CausewayConfig config, Executor executor) {
+        this(controller, config, executor, null);
+    }
+
+    ImportQueue(
+            ImportController controller,
+            CausewayConfig config,
+            Executor executor,
+            ScheduledExecutorService retryScheduler) {
+        this();
+        this.controller = controller;
+        this.config = config;
+        this.executor = executor;
+        this.retryScheduler = retryScheduler;
+        start();
+    }
+
+    @PostConstruct
+    void start() {
+        if (executor == null) {
+            executor = executorService;
+        }
+        if (retryScheduler == null) {
+            retryScheduler = Executors.newSingleThreadScheduledExecutor(
+                    threadFactory == null ? Executors.defaultThreadFactory() : threadFactory);
+        }
+        workers = config.getImportWorkers();
+        capacity = config.getImportQueueSize();
+        directory = config.getImportQueueDir() == null ? null : Paths.get(config.getImportQueueDir());
+        if (metricsConfiguration != null) {
+            MetricRegistry registry = metricsConfiguration.getMetricRegistry();
+            registerGauge(registry, "waiting", this::getWaiting);
+            registerGauge(registry, "running", this::getRunning);
+        }
+        resume();
+        dispatch();
+    }
+
+    @PreDestroy
+    void stop() {
+        retryScheduler.shutdownNow();
+    }
+
+    private void registerGauge(MetricRegistry registry, String name, Supplier<Integer> value) {
+        try {
+            Gauge<Integer> gauge = value::get;
+            registry.register(METRICS_QUEUE + "." + name, gauge);
+        } catch (IllegalArgumentException e) {
+            log.debug("Gauge {} already registered.", name);
+        }
+    }
+
+    /**
+     * Adds the job to the queue.
+     *
+     * @return false when the queue is full and the job was rejected.
+     */
+    public boolean submit(ImportJob job) {
+        long number;
+        synchronized (this) {
+            if (size + persisting >= capacity) {
+                log.warn(
+                        "Import queue is full ({} jobs), rejecting {} job for tag {}.",
+                        size + persisting,
+                        job.getType(),
+                        job.getTag());
+                return false;
+            }
+            persisting++;
+            number = ++sequence;
+        }
+        persist(job, number);
+        synchronized (this) {
+            persisting--;
+            enqueue(job, false);
+        }
+        dispatch();
+        return true;
+    }
+
+    public synchronized int getWaiting() {
+        return size;
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    private void enqueue(ImportJob job, boolean first) {
+        String tag = job.getTag();
+        Deque<ImportJob> jobs = waiting.computeIfAbsent(tag, t -> new ArrayDeque<>());
+        if (jobs.isEmpty()) {
+            if (first) {
+                tags.addFirst(tag);
+            } else {
+                tags.addLast(tag);
+            }
+        }
+        if (first) {
+            jobs.addFirst(job);
+        } else {
+            jobs.addLast(job);
+        }
+        size++;
+    }
+
+    /**
+     * Takes the oldest job of the next tag in turn.
+     */
+    private ImportJob poll() {
+        String tag = tags.removeFirst();
+        Deque<ImportJob> jobs = waiting.get(tag);
+        ImportJob job = jobs.removeFirst();
+        if (jobs.isEmpty()) {
+            waiting.remove(tag);
+        } else {
+            tags.addLast(tag);
+        }
+        size--;
+        return job;
+    }
+
+    private void dispatch() {
+        List<ImportJob> jobs = new ArrayList<>();
+        synchronized (this) {
+            while (running < workers && size > 0) {
+                jobs.add(poll());
+                running++;
+            }
+        }
+        for (int i = 0; i < jobs.size(); i++) {
+            ImportJob job = jobs.get(i);
+            try {
+                executor.execute(() -> run(job));
+            } catch (RejectedExecutionException ex) {
+                log.warn(
+                        "Failed to schedule {} job for tag {}, it will be retried in {} seconds.",
+                        job.getType(),
+                        job.getTag(),
+                        RETRY_DELAY_SECS);
+                synchronized (this) {
+                    for (int j = jobs.size() - 1; j >= i; j--) { // keeps the order of the jobs
+                        running--;
+                        enqueue(jobs.get(j), true);
+                    }
+                }
+                scheduleRetry();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Dispatches the waiting jobs again after a delay, unless a retry is already scheduled.
+     */
+    private void scheduleRetry() {
+        synchronized (this) {
+            if (retryPending) {
+                return;
+            }
+            retryPending = true;
+        }
+        try {
+            retryScheduler.schedule(() -> {
+                synchronized (this) {
+                    retryPending = false;
+                }
+                dispatch();
+            }, RETRY_DELAY_SECS, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException ex) {
+            log.warn("Failed to schedule retry of queued jobs, they will be dispatched when another job finishes.");
+            synchronized (this) {
+                retryPending = false;
+            }
+        }
+    }
+
+    private void run(ImportJob job) {
+        if (job.getMdc() != null) {
+            MDC.setContextMap(job.getMdc());
+        }
+        try {
+            switch (job.getType()) {
+                case IMPORT:
+                    controller.importBuild(job.getBuild(), job.getCallback(), job.getUsername(), job.isReimport());
+                    break;
+                case UNTAG:
+                    controller.untagBuild(job.getTaggedBuild(), job.getCallback());
+                    break;
+            }
+        } catch (RuntimeException ex) {
+            log.error("Queued " + job.getType() + " job for tag " + job.getTag() + " failed.", ex);
+        } finally {
+            MDC.clear();
+            delete(job.getFile());
+            synchronized (this) {
+                running--;
+            }
+            dispatch();
+        }
+    }
+
+    /**
+     * Stores the job under the given sequence number. Called without holding the queue lock.
+     */
+    private void persist(ImportJob job, long number) {
+        if (directory == null) {
+            return;
+        }
+        Path temp = null;
+        try {
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, "job", TEMP_SUFFIX);
+            mapper.writeValue(temp.toFile(), job);
+            Path file = directory.resolve(String.format("%019d", number) + JOB_SUFFIX);
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            job.setFile(file);
+        } catch (IOException ex) {
+            log.error("Failed to persist " + job.getType() + " job, it won't be resumed after restart.", ex);
+            delete(temp);
+        }
+    }
+
+    /**
+     * Loads the jobs left in the queue directory by previous run, in the order they were submitted.
+     */
+    private synchronized void resume() {
+        if (directory == null || !Files.isDirectory(directory)) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.sorted().collect(Collectors.toList());
+        } catch (IOException ex) {
+            log.error("Failed to list queued jobs in " + directory + ".", ex);
+            return;
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                delete(file);
+            } else if (name.endsWith(JOB_SUFFIX)) {
+                try {
+                    String number = name.substring(0, name.length() - JOB_SUFFIX.length());
+                    sequence = Math.max(sequence, Long.parseLong(number));
+                    ImportJob job = mapper.readValue(file.toFile(), ImportJob.class);
+                    job.setFile(file);
+                    enqueue(job, false);
+                } catch (IOException | RuntimeException ex) {
+                    log.error("Failed to load queued job " + file + ", discarding it.", ex);
+                    delete(file);
+                }
+            }
+        }
+        if (size > 0) {
+            log.info("Resuming {} queued jobs.", size);
+        }
+    }
+
+    private static void delete(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            log.warn("Failed to delete " + file + ".", ex);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.ctl;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import org.jboss.pnc.api.dto.Request;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+import lombok.Data;
+
+/**
+ * Callback waiting for delivery in the {@link CallbackDispatcher}. The body is serialized when the callback is
+ * created. Stored as JSON when the dispatcher is persistent.
+ */
+@Data
+public class PendingCallback {
+
+    private Request target;
+
+    private String method;
+
+    private String body;
+
+    private int attempt;
+
+    private Map<String, String> mdc;
+
+    @JsonIgnore
+    private Path file;
+}
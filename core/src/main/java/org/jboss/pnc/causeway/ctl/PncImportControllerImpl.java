@@ -20,11 +20,9 @@ import static org.jboss.pnc.causeway.ctl.ImportControllerImpl.METRICS_ARTIFACTS_
 import static org.jboss.pnc.causeway.ctl.ImportControllerImpl.METRICS_LOGS_NUMBER_KEY;
 import static org.jboss.pnc.causeway.ctl.ImportControllerImpl.METRICS_LOGS_SIZE_KEY;
 
-import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
-import com.codahale.metrics.UniformReservoir;
 import com.redhat.red.build.koji.model.json.KojiImport;
 
 import org.commonjava.atlas.maven.ident.ref.ProjectVersionRef;
@@ -32,16 +30,20 @@ import org.commonjava.atlas.npm.ident.ref.NpmPackageRef;
 import org.jboss.pnc.api.dto.Request;
 import org.jboss.pnc.causeway.CausewayException;
 import org.jboss.pnc.causeway.bpmclient.BPMClient;
+import org.jboss.pnc.causeway.brewclient.BatchResult;
 import org.jboss.pnc.causeway.brewclient.BrewClient;
 import org.jboss.pnc.causeway.brewclient.BrewClientImpl;
+import org.jboss.pnc.causeway.brewclient.BrewSession;
 import org.jboss.pnc.causeway.brewclient.BuildTranslator;
 import org.jboss.pnc.causeway.brewclient.ImportFileGenerator;
 import org.jboss.pnc.causeway.config.CausewayConfig;
 import org.jboss.pnc.causeway.source.RenamedSources;
 import org.jboss.pnc.causeway.source.SourceRenamer;
-import org.jboss.pnc.enums.BuildType;
+import org.jboss.pnc.causeway.source.Spool;
+import org.jboss.pnc.causeway.util.ImportMetrics;
 import org.jboss.pnc.pncmetrics.MetricsConfiguration;
 import org.jboss.pnc.causeway.pncclient.BuildArtifacts;
+import org.jboss.pnc.causeway.pncclient.BuildLog;
 import org.jboss.pnc.causeway.pncclient.PncClient;
 import org.jboss.pnc.causeway.rest.BrewBuild;
 import org.jboss.pnc.causeway.rest.BrewNVR;
@@ -52,22 +54,29 @@ import org.jboss.pnc.causeway.rest.pnc.ReleaseStatus;
 import org.jboss.pnc.dto.Build;
 import org.jboss.pnc.enums.ArtifactQuality;
 
+import javax.annotation.Resource;
 import javax.ejb.Asynchronous;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.inject.Inject;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -75,6 +84,11 @@ import org.jboss.pnc.causeway.CausewayFailure;
 
 import static org.jboss.pnc.constants.Attributes.BUILD_BREW_NAME;
 import static org.jboss.pnc.constants.Attributes.BUILD_BREW_VERSION;
+import static org.jboss.pnc.causeway.util.ImportMetrics.Phase.KOJI_METADATA;
+import static org.jboss.pnc.causeway.util.ImportMetrics.Phase.PNC_FETCH;
+import static org.jboss.pnc.causeway.util.ImportMetrics.Phase.TAGGING;
+import static org.jboss.pnc.causeway.util.ImportMetrics.Phase.TRANSLATION;
+import static org.jboss.pnc.causeway.util.ImportMetrics.Phase.UPLOAD;
 
 import org.jboss.pnc.constants.MDCKeys;
 import org.slf4j.MDC;
@@ -99,6 +113,11 @@ public class PncImportControllerImpl implements PncImportController {
 
     private final MetricsConfiguration metricsConfiguration;
 
+    private final ImportMetrics importMetrics;
+
+    @Resource
+    private ManagedExecutorService executorService;
+
     @Inject
     public PncImportControllerImpl(
             PncClient pnclClient,
@@ -107,7 +126,8 @@ public class PncImportControllerImpl implements PncImportController {
             BuildTranslator translator,
             CausewayConfig config,
             SourceRenamer renamer,
-            MetricsConfiguration metricConfiguration) {
+            MetricsConfiguration metricConfiguration,
+            ImportMetrics importMetrics) {
         this.pncClient = pnclClient;
         this.brewClient = brewClient;
         this.bpmClient = bpmClient;
@@ -115,6 +135,7 @@ public class PncImportControllerImpl implements PncImportController {
         this.config = config;
         this.renamer = renamer;
         this.metricsConfiguration = metricConfiguration;
+        this.importMetrics = importMetrics;
     }
 
     @Override
@@ -169,40 +190,219 @@ public class PncImportControllerImpl implements PncImportController {
 
     private List<BuildImportResultRest> importProductMilestone(int milestoneId, String username)
             throws CausewayException {
-        String tagPrefix = pncClient.getTagForMilestone(milestoneId);
-        if (!brewClient.tagsExists(tagPrefix)) {
-            throw new CausewayFailure(messageMissingTag(tagPrefix, config.getKojiURL()));
+        try (BrewSession session = brewClient.openSession()) {
+            return importProductMilestoneInSession(milestoneId, username);
+        }
+    }
+
+    private List<BuildImportResultRest> importProductMilestoneInSession(int milestoneId, String username)
+            throws CausewayException {
+        String tagPrefix;
+        try (Timer.Context fetch = importMetrics.time(PNC_FETCH)) {
+            tagPrefix = pncClient.getTagForMilestone(milestoneId);
+        }
+        try (Timer.Context metadata = importMetrics.time(KOJI_METADATA)) {
+            if (!brewClient.tagsExists(tagPrefix)) {
+                throw new CausewayFailure(messageMissingTag(tagPrefix, config.getKojiURL()));
+            }
         }
 
         Collection<Build> builds = findAndAssertBuilds(milestoneId);
 
-        List<BuildImportResultRest> results = new ArrayList<>();
-        for (Build build : builds) {
-            BuildImportResultRest importResult;
-            try (MDC.MDCCloseable mdcClose = MDC.putCloseable(MDCKeys.BUILD_ID_KEY, build.getId())) {
-                BuildArtifacts artifacts = pncClient.findBuildArtifacts(build.getId());
-                importResult = importBuild(build, username, artifacts);
-                if (importResult.getStatus() == BuildImportStatus.SUCCESSFUL && importResult.getBrewBuildId() != null) {
-                    brewClient.tagBuild(
-                            tagPrefix,
-                            new BrewBuild(importResult.getBrewBuildId(), getNVR(build, artifacts)));
-                }
-            } catch (CausewayException ex) {
-                log.error("Failed to import build " + build.getId() + ".", ex);
-                importResult = new BuildImportResultRest();
-                importResult.setBuildRecordId(build.getId());
-                importResult.setErrorMessage(ex.getMessage());
-                importResult.setStatus(BuildImportStatus.ERROR);
+        List<PreparedBuild> preparedBuilds = builds.stream().map(PreparedBuild::new).collect(Collectors.toList());
+        findExistingBuilds(preparedBuilds);
+
+        List<BuildImportResultRest> results;
+        int parallelism = config.getMilestoneImportParallelism();
+        if (executorService == null || parallelism <= 1 || builds.size() <= 1) {
+            results = new ArrayList<>();
+            for (PreparedBuild build : preparedBuilds) {
+                results.add(importBuild(build, username));
             }
-            results.add(importResult);
+        } else {
+            results = importBuildsInParallel(preparedBuilds, username, parallelism);
         }
 
+        tagBuilds(tagPrefix, preparedBuilds, results);
         return results;
     }
 
+    /**
+     * Looks up Brew builds of all builds whose NVR is given by their attributes in one batch. NVR of the other builds
+     * depends on their artifacts, so they are looked up when they are imported. Failure is remembered and reported in
+     * the build result.
+     */
+    private void findExistingBuilds(List<PreparedBuild> preparedBuilds) {
+        for (PreparedBuild prepared : preparedBuilds) {
+            Map<String, String> attributes = prepared.build.getAttributes();
+            if (attributes.containsKey(BUILD_BREW_NAME) && attributes.get(BUILD_BREW_VERSION) != null) {
+                try {
+                    prepared.nvr = getNVR(prepared.build, null);
+                } catch (CausewayException ex) {
+                    prepared.failure = ex;
+                }
+            }
+        }
+        List<BrewNVR> nvrs = preparedBuilds.stream()
+                .filter(b -> b.failure == null && b.nvr != null)
+                .map(b -> b.nvr)
+                .collect(Collectors.toList());
+        if (nvrs.isEmpty()) {
+            return;
+        }
+        try (Timer.Context metadata = importMetrics.time(KOJI_METADATA)) {
+            BatchResult<BrewNVR, BrewBuild> existing = brewClient.findBrewBuildsOfNVRs(nvrs);
+            for (PreparedBuild build : preparedBuilds) {
+                if (build.failure == null && build.nvr != null) {
+                    try {
+                        build.existing = existing.get(build.nvr);
+                    } catch (CausewayException ex) {
+                        build.failure = ex;
+                    }
+                }
+            }
+        } catch (CausewayException ex) {
+            preparedBuilds.stream().filter(b -> b.failure == null && b.nvr != null).forEach(b -> b.failure = ex);
+        }
+    }
+
+    /**
+     * Imports the builds using at most {@code parallelism} threads of the container executor. Results are returned in
+     * the order of the given builds and failure of one build doesn't affect the others. A build the executor rejects is
+     * imported in the calling thread.
+     */
+    private List<BuildImportResultRest> importBuildsInParallel(
+            List<PreparedBuild> builds,
+            String username,
+            int parallelism) throws CausewayException {
+        log.info("Importing {} builds using {} threads.", builds.size(), parallelism);
+        Semaphore slots = new Semaphore(parallelism);
+        Map<String, String> mdcContext = MDC.getCopyOfContextMap();
+
+        List<Future<BuildImportResultRest>> futures = new ArrayList<>();
+        try {
+            for (PreparedBuild build : builds) {
+                slots.acquire();
+                try {
+                    futures.add(executorService.submit(() -> {
+                        if (mdcContext != null) {
+                            MDC.setContextMap(mdcContext);
+                        }
+                        try (BrewSession session = brewClient.openSession()) {
+                            return importBuild(build, username);
+                        } finally {
+                            MDC.clear();
+                            slots.release();
+                        }
+                    }));
+                } catch (RejectedExecutionException ex) {
+                    slots.release();
+                    log.warn("Import of build {} rejected by executor, importing it inline.", build.build.getId());
+                    futures.add(CompletableFuture.completedFuture(importBuildInline(build, username)));
+                }
+            }
+
+            List<BuildImportResultRest> results = new ArrayList<>();
+            Iterator<PreparedBuild> buildIt = builds.iterator();
+            for (Future<BuildImportResultRest> future : futures) {
+                Build build = buildIt.next().build;
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException ex) {
+                    log.error("Failed to import build " + build.getId() + ".", ex.getCause());
+                    results.add(errorResult(build, ex.getCause()));
+                }
+            }
+            return results;
+        } catch (InterruptedException ex) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new CausewayException("Interrupted while importing builds of milestone.", ex);
+        }
+    }
+
+    /**
+     * Imports the build in the calling thread, reporting any failure in its result.
+     */
+    private BuildImportResultRest importBuildInline(PreparedBuild build, String username) {
+        try (BrewSession session = brewClient.openSession()) {
+            return importBuild(build, username);
+        } catch (RuntimeException ex) {
+            log.error("Failed to import build " + build.build.getId() + ".", ex);
+            return errorResult(build.build, ex);
+        }
+    }
+
+    /**
+     * Fetches artifacts of the build and imports it. The artifacts are dropped when the import ends; only the NVR is
+     * kept for the tagging.
+     */
+    private BuildImportResultRest importBuild(PreparedBuild prepared, String username) {
+        Build build = prepared.build;
+        try (MDC.MDCCloseable mdcClose = MDC.putCloseable(MDCKeys.BUILD_ID_KEY, build.getId())) {
+            if (prepared.failure != null) {
+                throw prepared.failure;
+            }
+            BuildArtifacts artifacts = null;
+            if (prepared.existing == null) {
+                try (Timer.Context fetch = importMetrics.time(PNC_FETCH, buildType(build))) {
+                    artifacts = pncClient.findBuildArtifacts(build.getId());
+                }
+                if (prepared.nvr == null) {
+                    prepared.nvr = getNVR(build, artifacts);
+                    try (Timer.Context metadata = importMetrics.time(KOJI_METADATA)) {
+                        prepared.existing = brewClient.findBrewBuildOfNVR(prepared.nvr);
+                    }
+                }
+            }
+            try (Spool.Scope spoolScope = Spool.openScope()) {
+                return importBuild(build, username, artifacts, prepared.nvr, prepared.existing);
+            }
+        } catch (CausewayException ex) {
+            log.error("Failed to import build " + build.getId() + ".", ex);
+            return errorResult(build, ex);
+        }
+    }
+
+    /**
+     * Tags all successfully imported builds in one batch. Builds that fail to be tagged are reported as errors.
+     */
+    private void tagBuilds(String tagPrefix, List<PreparedBuild> builds, List<BuildImportResultRest> results) {
+        Map<BrewBuild, List<BuildImportResultRest>> toTag = new LinkedHashMap<>();
+        for (int i = 0; i < results.size(); i++) {
+            BuildImportResultRest result = results.get(i);
+            if (result.getStatus() == BuildImportStatus.SUCCESSFUL && result.getBrewBuildId() != null) {
+                BrewBuild brewBuild = new BrewBuild(result.getBrewBuildId(), builds.get(i).nvr);
+                toTag.computeIfAbsent(brewBuild, b -> new ArrayList<>()).add(result);
+            }
+        }
+        if (toTag.isEmpty()) {
+            return;
+        }
+        try (Timer.Context tagging = importMetrics.time(TAGGING)) {
+            BatchResult<BrewBuild, Void> tagged = brewClient.tagBuilds(tagPrefix, toTag.keySet());
+            tagged.getFailures().forEach((build, ex) -> toTag.get(build).forEach(r -> setError(r, ex)));
+        } catch (CausewayException ex) {
+            log.error("Failed to tag builds.", ex);
+            toTag.values().forEach(rs -> rs.forEach(r -> setError(r, ex)));
+        }
+    }
+
+    private static void setError(BuildImportResultRest result, Throwable ex) {
+        result.setErrorMessage(ex.getMessage());
+        result.setStatus(BuildImportStatus.ERROR);
+    }
+
+    private static BuildImportResultRest errorResult(Build build, Throwable ex) {
+        BuildImportResultRest importResult = new BuildImportResultRest();
+        importResult.setBuildRecordId(build.getId());
+        setError(importResult, ex);
+        return importResult;
+    }
+
     private Collection<Build> findAndAssertBuilds(int milestoneId) throws CausewayException {
         Collection<Build> builds;
-        try {
+        try (Timer.Context fetch = importMetrics.time(PNC_FETCH)) {
             builds = pncClient.findBuildsOfProductMilestone(milestoneId);
         } catch (Exception e) {
             throw new CausewayException(messagePncReleaseNotFound(milestoneId, e), e);
@@ -213,11 +413,13 @@ public class PncImportControllerImpl implements PncImportController {
         return builds;
     }
 
-    private BuildImportResultRest importBuild(Build build, String username, BuildArtifacts artifacts)
-            throws CausewayException {
-        BrewNVR nvr = getNVR(build, artifacts);
+    private BuildImportResultRest importBuild(
+            Build build,
+            String username,
+            BuildArtifacts artifacts,
+            BrewNVR nvr,
+            BrewBuild brewBuild) throws CausewayException {
         log.info("Processing PNC build {} as {}.", build.getId(), nvr.getNVR());
-        BrewBuild brewBuild = brewClient.findBrewBuildOfNVR(nvr);
         if (brewBuild != null) {
             // FIXME clarify behavior - if the build already exists in brew log as successful import ?
             BuildImportResultRest ret = new BuildImportResultRest();
@@ -248,40 +450,42 @@ public class PncImportControllerImpl implements PncImportController {
             buildResult.setErrorMessage("Build doesn't contain any artifacts to import, skipping.");
             log.info("PNC build {} doesn't contain any artifacts to import, skipping.", build.getId());
         } else {
-            String buildLog = pncClient.getBuildLog(build.getId());
-
-            BuildType buildType = build.getBuildConfigRevision().getBuildType();
-            String sourcesDeployPath = getSourcesDeployPath(build, artifacts);
-
-            Optional<BuildArtifacts.PncArtifact> any = artifacts.buildArtifacts.stream()
-                    .filter(a -> a.deployPath.equals(sourcesDeployPath))
-                    .findAny();
-
-            RenamedSources sources = null;
-            if (!any.isPresent()) {
-                log.info("Sources at '{}' not present, generating sources file.", sourcesDeployPath);
-                try (InputStream sourcesStream = pncClient.getSources(build.getId())) {
-                    sources = translator.getSources(build, artifacts, sourcesStream);
-                } catch (IOException e) {
-                    throw new CausewayException("Failed to read sources archive: " + e.getMessage(), e);
-                }
-            }
-            KojiImport kojiImport = translator.translate(nvr, build, artifacts, sources, buildLog, username);
-            ImportFileGenerator importFiles = translator.getImportFiles(artifacts, sources, buildLog);
-            buildResult = brewClient.importBuild(nvr, build.getId(), kojiImport, importFiles);
-
-            long artifactSize = artifacts.buildArtifacts.stream().mapToLong(pncArtifact -> pncArtifact.size).sum();
-            int artifactNumber = artifacts.buildArtifacts.size();
-            int logLenght = buildLog.length();
+            String buildType = buildType(build);
+            BuildLog buildLog = importMetrics.time(PNC_FETCH, buildType, () -> pncClient.getBuildLog(build.getId()));
             try {
-                logLenght = buildLog.getBytes("UTF-8").length;
-            } catch (UnsupportedEncodingException e) {
-            }
+                String sourcesDeployPath = getSourcesDeployPath(build, artifacts);
+
+                Optional<BuildArtifacts.PncArtifact> any = artifacts.buildArtifacts.stream()
+                        .filter(a -> a.deployPath.equals(sourcesDeployPath))
+                        .findAny();
 
-            updateHistogram(metricsConfiguration, METRICS_ARTIFACTS_SIZE_KEY, artifactSize);
-            updateHistogram(metricsConfiguration, METRICS_ARTIFACTS_NUMBER_KEY, artifactNumber);
-            updateHistogram(metricsConfiguration, METRICS_LOGS_SIZE_KEY, logLenght);
-            updateHistogram(metricsConfiguration, METRICS_LOGS_NUMBER_KEY, 1);
+                RenamedSources sources = null;
+                if (!any.isPresent()) {
+                    log.info("Sources at '{}' not present, generating sources file.", sourcesDeployPath);
+                    sources = translator.getSources(build, artifacts, () -> pncClient.getSources(build.getId()));
+                }
+                KojiImport kojiImport;
+                ImportFileGenerator importFiles;
+                try (Timer.Context translation = importMetrics.time(TRANSLATION, buildType)) {
+                    kojiImport = translator.translate(nvr, build, artifacts, sources, buildLog, username);
+                    importFiles = translator.getImportFiles(artifacts, sources, buildLog);
+                }
+                buildResult = importMetrics.time(
+                        UPLOAD,
+                        buildType,
+                        () -> brewClient.importBuild(nvr, build.getId(), kojiImport, importFiles));
+
+                long artifactSize = artifacts.buildArtifacts.stream().mapToLong(pncArtifact -> pncArtifact.size).sum();
+                int artifactNumber = artifacts.buildArtifacts.size();
+                long logSize = buildLog.getSize();
+
+                importMetrics.update(METRICS_ARTIFACTS_SIZE_KEY, artifactSize);
+                importMetrics.update(METRICS_ARTIFACTS_NUMBER_KEY, artifactNumber);
+                importMetrics.update(METRICS_LOGS_SIZE_KEY, logSize);
+                importMetrics.update(METRICS_LOGS_NUMBER_KEY, 1);
+            } finally {
+                buildLog.delete();
+            }
         }
 
         for (BuildArtifacts.PncArtifact artifact : badArtifacts) {
@@ -301,21 +505,6 @@ public class PncImportControllerImpl implements PncImportController {
         return sourcesDeployPath;
     }
 
-    private void updateHistogram(MetricsConfiguration metricsConfiguration, String name, long value) {
-        Histogram histogram = null;
-        if (metricsConfiguration != null) {
-            MetricRegistry registry = metricsConfiguration.getMetricRegistry();
-            try {
-                histogram = registry.register(name, new Histogram(new UniformReservoir()));
-            } catch (IllegalArgumentException e) {
-                histogram = registry.histogram(name);
-            }
-        }
-        if (histogram != null) {
-            histogram.update(value);
-        }
-    }
-
     static String messagePncReleaseNotFound(long releaseId, Exception e) {
         return "Can not find PNC release " + releaseId + " - " + e.getMessage();
     }
@@ -344,8 +533,28 @@ public class PncImportControllerImpl implements PncImportController {
         return new BrewNVR(build.getAttributes().get(BUILD_BREW_NAME), version, "1");
     }
 
+    private static String buildType(Build build) {
+        if (build.getBuildConfigRevision() == null) {
+            return null;
+        }
+        return ImportMetrics.buildType(build.getBuildConfigRevision().getBuildType());
+    }
+
     private boolean isNotEmpty(Collection<?> collection) {
         return collection != null && !collection.isEmpty();
     }
 
+    /**
+     * PNC build with its NVR and existing Brew build once they are known, or the failure that prevents the import.
+     */
+    private static class PreparedBuild {
+        private final Build build;
+        private BrewNVR nvr;
+        private BrewBuild existing;
+        private CausewayException failure;
+
+        private PreparedBuild(Build build) {
+            this.build = build;
+        }
+    }
 }
@@ -23,12 +23,15 @@ import java.util.List;
 @Deprecated
 public final class BuildArtifacts {
 
+    /** Size of artifacts for which PNC doesn't know the size. */
+    public static final long UNKNOWN_SIZE = -1;
+
     public final List<PncArtifact> buildArtifacts;
-    public final List<PncArtifact> dependencies;
+    public final DependencyStore dependencies;
 
     public BuildArtifacts() {
         buildArtifacts = new ArrayList<>();
-        dependencies = new ArrayList<>();
+        dependencies = new DependencyStore();
     }
 
     public static class PncArtifact {
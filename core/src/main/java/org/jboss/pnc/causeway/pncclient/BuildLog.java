@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.pncclient;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Build log spooled to a temporary file. Size and MD5 checksum are computed while the log is being spooled, so the log
+ * content is never held in memory.
+ */
+@Slf4j
+@Deprecated
+public class BuildLog {
+    public static final String FILE_PREFIX = "buildlog-";
+    public static final String FILE_SUFFIX = ".log";
+
+    private final Path file;
+    @Getter
+    private final long size;
+    @Getter
+    private final String md5;
+    private boolean read = false;
+
+    private BuildLog(Path file, long size, String md5) {
+        this.file = file;
+        this.size = size;
+        this.md5 = md5;
+    }
+
+    /**
+     * Copies the log from the input stream to temporary file. The input stream is not closed.
+     */
+    public static BuildLog spool(InputStream input) throws IOException {
+        MessageDigest md5Digest;
+        try {
+            md5Digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("The JVM must support MD5 digest", e);
+        }
+
+        Path tempFile = Files.createTempFile(FILE_PREFIX, FILE_SUFFIX);
+        try {
+            long size = Files
+                    .copy(new DigestInputStream(input, md5Digest), tempFile, StandardCopyOption.REPLACE_EXISTING);
+            BigInteger bi = new BigInteger(1, md5Digest.digest());
+            return new BuildLog(tempFile, size, String.format("%032x", bi));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the spooled log for reading. The log can be read only once, the temporary file is deleted when the stream
+     * is closed.
+     */
+    public InputStream read() throws IOException {
+        if (read) {
+            throw new IllegalStateException("File already read.");
+        }
+        read = true;
+        return Files.newInputStream(file, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * Deletes the temporary file, whether the log was read or not.
+     */
+    public void delete() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete build log " + file + ".", e);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.pncclient;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Compact columnar store of build dependencies. Builds can have tens of thousands of dependencies, so they are not
+ * kept as an object per dependency. Directory prefixes of the deploy paths are shared between dependencies, file names
+ * are stored as UTF-8 in a single byte array and MD5 checksums are stored as 16 binary bytes. Dependencies are read
+ * by index and their values are materialized only when requested. Like a set, the store ignores a dependency that
+ * is equal to a stored one in path, checksum and size; an open addressing table of indexes finds them.
+ */
+public final class DependencyStore {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final int MD5_LENGTH = 16;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final List<String> prefixes = new ArrayList<>();
+
+    private final Map<String, Integer> prefixIds = new HashMap<>();
+
+    /** Checksums that aren't lowercase hex encoded MD5s, kept as they are. */
+    private final Map<Integer, String> irregularMd5s = new HashMap<>();
+
+    private int size;
+
+    private int[] prefixIndexes = new int[INITIAL_CAPACITY];
+
+    /** Start of the file name in {@link #names}. The name ends where the next one starts. */
+    private int[] nameOffsets = new int[INITIAL_CAPACITY + 1];
+
+    private byte[] names = new byte[INITIAL_CAPACITY * 32];
+
+    private byte[] md5s = new byte[INITIAL_CAPACITY * MD5_LENGTH];
+
+    private long[] sizes = new long[INITIAL_CAPACITY];
+
+    /** Open addressing table of dependency indexes plus one, zero marks a free slot. */
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+
+    /**
+     * @return false when the dependency is already stored.
+     */
+    public boolean add(BuildArtifacts.PncArtifact artifact) {
+        return add(artifact.deployPath, artifact.checksum, artifact.size);
+    }
+
+    /**
+     * @return false when the dependency is already stored.
+     */
+    public boolean add(String deployPath, String md5, long fileSize) {
+        ensureCapacity(size + 1);
+
+        int slash = deployPath.lastIndexOf('/') + 1;
+        String prefix = deployPath.substring(0, slash);
+        byte[] name = deployPath.substring(slash).getBytes(StandardCharsets.UTF_8);
+        boolean regular = decodeMd5(md5, md5s, size * MD5_LENGTH);
+        String irregularMd5 = regular ? null : md5;
+
+        Integer prefixId = prefixIds.get(prefix);
+        if (prefixId != null && find(prefixId, name, md5s, size * MD5_LENGTH, !regular, irregularMd5, fileSize) >= 0) {
+            return false;
+        }
+        if (prefixId == null) {
+            prefixId = prefixes.size();
+            prefixes.add(prefix);
+            prefixIds.put(prefix, prefixId);
+        }
+        prefixIndexes[size] = prefixId;
+
+        int offset = nameOffsets[size];
+        if (offset + name.length > names.length) {
+            names = Arrays.copyOf(names, Math.max(offset + name.length, names.length + (names.length >> 1)));
+        }
+        System.arraycopy(name, 0, names, offset, name.length);
+        nameOffsets[size + 1] = offset + name.length;
+
+        if (!regular) {
+            irregularMd5s.put(size, md5);
+        }
+        sizes[size] = fileSize;
+        size++;
+        insert(size - 1);
+        return true;
+    }
+
+    /**
+     * Returns index of the stored dependency, or -1 when it isn't stored.
+     */
+    public int indexOf(String deployPath, String md5, long fileSize) {
+        int slash = deployPath.lastIndexOf('/') + 1;
+        Integer prefixId = prefixIds.get(deployPath.substring(0, slash));
+        if (prefixId == null) {
+            return -1;
+        }
+        byte[] name = deployPath.substring(slash).getBytes(StandardCharsets.UTF_8);
+        byte[] md5Bytes = new byte[MD5_LENGTH];
+        boolean regular = decodeMd5(md5, md5Bytes, 0);
+        return find(prefixId, name, md5Bytes, 0, !regular, regular ? null : md5, fileSize);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public String getDeployPath(int index) {
+        checkIndex(index);
+        int offset = nameOffsets[index];
+        String name = new String(names, offset, nameOffsets[index + 1] - offset, StandardCharsets.UTF_8);
+        return prefixes.get(prefixIndexes[index]).concat(name);
+    }
+
+    public String getMd5(int index) {
+        checkIndex(index);
+        if (irregularMd5s.containsKey(index)) {
+            return irregularMd5s.get(index);
+        }
+        char[] hex = new char[MD5_LENGTH * 2];
+        int offset = index * MD5_LENGTH;
+        for (int i = 0; i < MD5_LENGTH; i++) {
+            int b = md5s[offset + i] & 0xff;
+            hex[2 * i] = HEX[b >>> 4];
+            hex[2 * i + 1] = HEX[b & 0x0f];
+        }
+        return new String(hex);
+    }
+
+    public long getSize(int index) {
+        checkIndex(index);
+        return sizes[index];
+    }
+
+    private int find(
+            int prefixId,
+            byte[] name,
+            byte[] md5Bytes,
+            int md5Offset,
+            boolean irregular,
+            String irregularMd5,
+            long fileSize) {
+        int hash = hash(prefixId, name, 0, name.length, md5Bytes, md5Offset, irregular, irregularMd5, fileSize);
+        int mask = table.length - 1;
+        for (int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int index = table[slot] - 1;
+            if (prefixIndexes[index] == prefixId && sizes[index] == fileSize
+                    && nameEquals(index, name)
+                    && md5Equals(index, md5Bytes, md5Offset, irregular, irregularMd5)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private boolean nameEquals(int index, byte[] name) {
+        int offset = nameOffsets[index];
+        if (nameOffsets[index + 1] - offset != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (names[offset + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean md5Equals(int index, byte[] md5Bytes, int md5Offset, boolean irregular, String irregularMd5) {
+        if (irregularMd5s.containsKey(index)) {
+            return irregular && Objects.equals(irregularMd5s.get(index), irregularMd5);
+        }
+        if (irregular) {
+            return false;
+        }
+        int offset = index * MD5_LENGTH;
+        for (int i = 0; i < MD5_LENGTH; i++) {
+            if (md5s[offset + i] != md5Bytes[md5Offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void insert(int index) {
+        if (size * 2 > table.length) {
+            table = new int[table.length * 2];
+            for (int i = 0; i < size; i++) {
+                put(i);
+            }
+        } else {
+            put(index);
+        }
+    }
+
+    private void put(int index) {
+        int offset = nameOffsets[index];
+        boolean irregular = irregularMd5s.containsKey(index);
+        int hash = hash(
+                prefixIndexes[index],
+                names,
+                offset,
+                nameOffsets[index + 1] - offset,
+                md5s,
+                index * MD5_LENGTH,
+                irregular,
+                irregularMd5s.get(index),
+                sizes[index]);
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = index + 1;
+    }
+
+    private static int hash(
+            int prefixId,
+            byte[] name,
+            int nameOffset,
+            int nameLength,
+            byte[] md5Bytes,
+            int md5Offset,
+            boolean irregular,
+            String irregularMd5,
+            long fileSize) {
+        int hash = prefixId;
+        for (int i = 0; i < nameLength; i++) {
+            hash = 31 * hash + name[nameOffset + i];
+        }
+        if (irregular) {
+            hash = 31 * hash + Objects.hashCode(irregularMd5);
+        } else {
+            for (int i = 0; i < MD5_LENGTH; i++) {
+                hash = 31 * hash + md5Bytes[md5Offset + i];
+            }
+        }
+        hash = 31 * hash + Long.hashCode(fileSize);
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean decodeMd5(String md5, byte[] target, int offset) {
+        if (md5 == null || md5.length() != MD5_LENGTH * 2) {
+            return false;
+        }
+        for (int i = 0; i < MD5_LENGTH; i++) {
+            int high = hexValue(md5.charAt(2 * i));
+            int low = hexValue(md5.charAt(2 * i + 1));
+            if (high < 0 || low < 0) {
+                return false;
+            }
+            target[offset + i] = (byte) (high << 4 | low);
+        }
+        return true;
+    }
+
+    /**
+     * Value of lowercase hex digit, or -1. Uppercase digits are not accepted, so that the checksum reads back the same.
+     */
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= sizes.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, sizes.length + (sizes.length >> 1));
+        prefixIndexes = Arrays.copyOf(prefixIndexes, newCapacity);
+        nameOffsets = Arrays.copyOf(nameOffsets, newCapacity + 1);
+        md5s = Arrays.copyOf(md5s, newCapacity * MD5_LENGTH);
+        sizes = Arrays.copyOf(sizes, newCapacity);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
@@ -34,7 +34,7 @@ public interface PncClient {
 
     public String getTagForMilestone(int milestoneId) throws CausewayException;
 
-    public String getBuildLog(String buildId) throws CausewayException;
+    public BuildLog getBuildLog(String buildId) throws CausewayException;
 
     public InputStream getSources(String id) throws CausewayException;
 }
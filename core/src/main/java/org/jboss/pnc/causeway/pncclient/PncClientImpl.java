@@ -31,16 +31,28 @@ import org.jboss.pnc.dto.ProductMilestone;
 import org.jboss.pnc.enums.BuildStatus;
 import org.jboss.pnc.rest.api.parameters.BuildsFilterParameters;
 
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedThreadFactory;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.ws.rs.core.Response;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+
 import static org.jboss.pnc.rest.configuration.SwaggerConstants.NOT_FOUND_CODE;
 
 /**
@@ -54,10 +66,38 @@ public class PncClientImpl implements PncClient {
     private final ProductMilestoneClient milestoneClient;
     private final BuildClient buildClient;
 
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    /**
+     * Executor of the dependency fetches. It is separate from the container executor, because the callers may run on
+     * the container executor themselves and wait for the fetch, which could starve it.
+     */
+    private ExecutorService dependencyExecutor;
+
     @Inject
     public PncClientImpl(CausewayConfig config) {
-        this.milestoneClient = new ProductMilestoneClient(config.getPncClientConfig());
-        this.buildClient = new BuildClient(config.getPncClientConfig());
+        this(new ProductMilestoneClient(config.getPncClientConfig()), new BuildClient(config.getPncClientConfig()));
+    }
+
+    PncClientImpl(ProductMilestoneClient milestoneClient, BuildClient buildClient) {
+        this.milestoneClient = milestoneClient;
+        this.buildClient = buildClient;
+    }
+
+    @PreDestroy
+    synchronized void shutdown() {
+        if (dependencyExecutor != null) {
+            dependencyExecutor.shutdownNow();
+        }
+    }
+
+    private synchronized ExecutorService getDependencyExecutor() {
+        if (dependencyExecutor == null) {
+            dependencyExecutor = Executors
+                    .newCachedThreadPool(threadFactory == null ? Executors.defaultThreadFactory() : threadFactory);
+        }
+        return dependencyExecutor;
     }
 
     @Override
@@ -104,15 +144,18 @@ public class PncClientImpl implements PncClient {
     }
 
     @Override
-    public String getBuildLog(String buildId) throws CausewayException {
+    public BuildLog getBuildLog(String buildId) throws CausewayException {
         Optional<InputStream> log;
         try {
             log = buildClient.getBuildLogs(String.valueOf(buildId));
             InputStream logInput = log.orElseThrow(
                     () -> new CausewayException(
                             "Build log for Build " + buildId + " is empty - response " + NOT_FOUND_CODE));
-            Scanner s = new Scanner(logInput).useDelimiter("\\A");
-            return s.hasNext() ? s.next() : "";
+            try (InputStream is = logInput) {
+                return BuildLog.spool(is);
+            }
+        } catch (IOException e) {
+            throw new CausewayException("Can not read build log of build " + buildId + ": " + e.getMessage(), e);
         } catch (RemoteResourceException e) {
             throw new CausewayException(
                     "Can not read build log of build " + buildId + " because PNC responded with an error - response "
@@ -146,55 +189,115 @@ public class PncClientImpl implements PncClient {
         }
     }
 
+    /**
+     * Fetches the built and the dependency artifacts of the build. The two collections are fetched concurrently, the
+     * dependencies on a dedicated executor.
+     */
     @Override
     public BuildArtifacts findBuildArtifacts(String buildId) throws CausewayException {
-        Collection<PncArtifact> builtArtifacts = getArtifacts(buildId, buildClient::getBuiltArtifacts);
-        Collection<PncArtifact> dependantArtifact = getArtifacts(buildId, buildClient::getDependencyArtifacts);
-
         BuildArtifacts build = new BuildArtifacts();
+        Future<Void> dependencies = null;
+        Map<String, String> mdcContext = MDC.getCopyOfContextMap();
+        try {
+            dependencies = getDependencyExecutor().submit(() -> {
+                if (mdcContext != null) {
+                    MDC.setContextMap(mdcContext);
+                }
+                try {
+                    addArtifacts(buildId, buildClient::getDependencyArtifacts, a -> addDependency(build, a));
+                    return null;
+                } finally {
+                    MDC.clear();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            log.debug("Executor rejected the task, fetching dependency artifacts sequentially.", ex);
+        }
 
-        build.buildArtifacts.addAll(builtArtifacts);
-        build.dependencies.addAll(dependantArtifact);
+        try {
+            addArtifacts(buildId, buildClient::getBuiltArtifacts, a -> build.buildArtifacts.add(toPncArtifact(a)));
+        } catch (CausewayException | RuntimeException ex) {
+            if (dependencies != null) {
+                dependencies.cancel(true);
+            }
+            throw ex;
+        }
 
+        if (dependencies == null) {
+            addArtifacts(buildId, buildClient::getDependencyArtifacts, a -> addDependency(build, a));
+        } else {
+            awaitArtifacts(buildId, dependencies);
+        }
         return build;
     }
 
-    private PncArtifact toPncArtifact(Artifact artifact) {
+    private static void awaitArtifacts(String buildId, Future<Void> artifacts) throws CausewayException {
+        try {
+            artifacts.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof CausewayException) {
+                throw (CausewayException) cause;
+            }
+            throw new CausewayException(
+                    "Can't get info for build with id " + buildId + " - " + cause.getMessage(),
+                    cause);
+        } catch (InterruptedException ex) {
+            artifacts.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CausewayException("Interrupted while getting artifacts of build " + buildId, ex);
+        }
+    }
 
-        String deployPath = artifact.getDeployPath();
-        if (deployPath.startsWith("/"))
-            deployPath = deployPath.substring(1);
+    private PncArtifact toPncArtifact(Artifact artifact) {
         return new PncArtifact(
                 artifact.getId(),
                 artifact.getIdentifier(),
-                deployPath,
+                deployPath(artifact),
                 artifact.getMd5(),
                 artifact.getDeployUrl(),
-                artifact.getSize() == null ? 1 : artifact.getSize(),
+                size(artifact),
                 artifact.getArtifactQuality());
     }
 
-    private Collection<PncArtifact> getArtifacts(
+    /**
+     * Dependencies are stored only with the values needed for the import, without an object per dependency.
+     */
+    private static void addDependency(BuildArtifacts build, Artifact artifact) {
+        build.dependencies.add(deployPath(artifact), artifact.getMd5(), size(artifact));
+    }
+
+    private static String deployPath(Artifact artifact) {
+        String deployPath = artifact.getDeployPath();
+        if (deployPath.startsWith("/"))
+            deployPath = deployPath.substring(1);
+        return deployPath;
+    }
+
+    private static long size(Artifact artifact) {
+        return artifact.getSize() == null ? BuildArtifacts.UNKNOWN_SIZE : artifact.getSize();
+    }
+
+    private void addArtifacts(
             String buildId,
-            IntFunctionWithRemoteException<RemoteCollection<Artifact>> query) throws CausewayException {
-        Collection<PncArtifact> pncArtifacts = new HashSet<>();
+            IntFunctionWithRemoteException<RemoteCollection<Artifact>> query,
+            Consumer<Artifact> consumer) throws CausewayException {
         try {
             RemoteCollection<Artifact> artifacts = query.get(buildId);
             for (Artifact artifact : artifacts) {
-                pncArtifacts.add(toPncArtifact(artifact));
+                consumer.accept(artifact);
             }
         } catch (RemoteResourceException e) {
             throw new CausewayException(
                     "Can't get info for build with id " + buildId + " - response " + e.getStatus(),
                     e);
         }
-        return pncArtifacts;
     }
 
     /**
      * Special IntFunction that throws {@code org.jboss.pnc.client.RemoteResourceException}
      *
-     * It was created so that method {@code getArtifacts} could catch and handle the exception, otherwise it would have
+     * It was created so that method {@code addArtifacts} could catch and handle the exception, otherwise it would have
      * to be handled in higher level method.
      *
      * @param <T> Return type of the Function
@@ -0,0 +1,172 @@
+package org.jboss.pnc.causeway.source;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip output stream that compresses blocks of the input in parallel, the same way pigz does. Each block is compressed
+ * to raw deflate data, using the last 32 KiB of the previous block as a preset dictionary, and is flushed to a byte
+ * boundary. The compressed blocks therefore concatenate into a single valid deflate stream. The CRC of the
+ * uncompressed data is computed on the writing thread. At most {@code maxInFlight} blocks are compressed at the same
+ * time. Once that limit is reached, writing blocks until the oldest block is compressed and written out.
+ */
+class ParallelGzipOutputStream extends OutputStream {
+
+    static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+    private final OutputStream out;
+    private final ExecutorService executor;
+    private final int blockSize;
+    private final int maxInFlight;
+    private final Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+    private long totalIn = 0;
+    private byte[] block;
+    private int blockLength = 0;
+    private byte[] dictionary = null;
+    private boolean closed = false;
+
+    ParallelGzipOutputStream(OutputStream out, ExecutorService executor, int threads) throws IOException {
+        this(out, executor, DEFAULT_BLOCK_SIZE, threads * 2);
+    }
+
+    ParallelGzipOutputStream(OutputStream out, ExecutorService executor, int blockSize, int maxInFlight)
+            throws IOException {
+        if (blockSize < DICTIONARY_SIZE) {
+            throw new IllegalArgumentException("Block size must be at least " + DICTIONARY_SIZE + " bytes.");
+        }
+        this.out = out;
+        this.executor = executor;
+        this.blockSize = blockSize;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.block = new byte[blockSize];
+        out.write(HEADER);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+        crc.update(b, off, len);
+        totalIn += len;
+        while (len > 0) {
+            int n = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+            if (blockLength == blockSize) {
+                submitBlock(false);
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            submitBlock(true);
+            while (!inFlight.isEmpty()) {
+                writeCompressed(inFlight.removeFirst());
+            }
+            writeIntLE((int) crc.getValue());
+            writeIntLE((int) totalIn);
+            out.flush();
+        } finally {
+            for (Future<byte[]> future : inFlight) {
+                future.cancel(true);
+            }
+            inFlight.clear();
+            out.close();
+        }
+    }
+
+    private void submitBlock(boolean last) throws IOException {
+        final byte[] data = block;
+        final int length = blockLength;
+        final byte[] dict = dictionary;
+        if (!last) {
+            dictionary = Arrays.copyOfRange(data, length - DICTIONARY_SIZE, length);
+            block = new byte[blockSize];
+            blockLength = 0;
+        }
+        if (inFlight.size() >= maxInFlight) {
+            writeCompressed(inFlight.removeFirst());
+        }
+        inFlight.addLast(executor.submit(() -> compress(data, length, dict, last)));
+    }
+
+    private void writeCompressed(Future<byte[]> future) throws IOException {
+        try {
+            out.write(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for compressed block.");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compress block: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private void writeIntLE(int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+        out.write((value >> 16) & 0xff);
+        out.write((value >> 24) & 0xff);
+    }
+
+    private static byte[] compress(byte[] data, int length, byte[] dictionary, boolean last) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(data, 0, length);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+            byte[] buffer = new byte[16 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(buffer);
+                    compressed.write(buffer, 0, n);
+                }
+            } else {
+                int n;
+                do {
+                    n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    compressed.write(buffer, 0, n);
+                } while (n == buffer.length);
+            }
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
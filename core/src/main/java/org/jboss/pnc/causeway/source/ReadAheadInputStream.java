@@ -0,0 +1,113 @@
+package org.jboss.pnc.causeway.source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Input stream that reads the underlying stream ahead in a background task. The chunks it reads are handed to the
+ * consumer through a bounded queue, so downloading the data overlaps with processing it.
+ */
+class ReadAheadInputStream extends InputStream {
+
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    private static final byte[] EOF = new byte[0];
+
+    private final InputStream in;
+    private final BlockingQueue<byte[]> queue;
+    private final Future<?> reader;
+    private volatile Throwable failure;
+    private byte[] current = null;
+    private int position = 0;
+    private boolean eof = false;
+
+    ReadAheadInputStream(InputStream in, ExecutorService executor) {
+        this(in, executor, DEFAULT_CHUNK_SIZE, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    ReadAheadInputStream(InputStream in, ExecutorService executor, int chunkSize, int queueCapacity) {
+        this.in = in;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.reader = executor.submit(() -> readAll(chunkSize));
+    }
+
+    private Void readAll(int chunkSize) throws InterruptedException {
+        try {
+            int n;
+            do {
+                byte[] chunk = new byte[chunkSize];
+                n = IOUtils.read(in, chunk);
+                if (n > 0) {
+                    queue.put(n == chunkSize ? chunk : Arrays.copyOf(chunk, n));
+                }
+            } while (n == chunkSize);
+        } catch (InterruptedException e) {
+            failure = e;
+            // Make room for EOF, the chunks are useless without the rest of the data.
+            queue.clear();
+        } catch (Throwable e) {
+            failure = e;
+        } finally {
+            queue.put(EOF);
+        }
+        return null;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return n == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (current == null || position == current.length) {
+            if (eof || !nextChunk()) {
+                return -1;
+            }
+        }
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    private boolean nextChunk() throws IOException {
+        try {
+            current = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for data.");
+        }
+        position = 0;
+        if (current == EOF) {
+            eof = true;
+            if (failure != null) {
+                throw new IOException("Failed to read data: " + failure.getMessage(), failure);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.cancel(true);
+        queue.clear();
+        in.close();
+    }
+}
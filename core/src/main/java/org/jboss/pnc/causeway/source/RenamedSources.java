@@ -7,39 +7,97 @@ import org.commonjava.atlas.npm.ident.ref.NpmPackageRef;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 
 import static org.jboss.pnc.causeway.source.SourceRenamer.ARTIFACT_CLASSIFIER;
 import static org.jboss.pnc.causeway.source.SourceRenamer.ARTIFACT_TYPE;
 
 public class RenamedSources {
-    private final Path file;
+    private final Spool.Content content;
     @Getter
-    private final int size;
+    private final long size;
     @Getter
     private final String name;
     @Getter
     private final String md5;
     private boolean read = false;
+    private final boolean deleteOnRead;
     @Getter
     private final ArtifactType artifactType;
 
     public RenamedSources(Path file, String name, String md5, ArtifactType artifactType) throws IOException {
-        this.file = file;
+        this(file, name, md5, artifactType, true);
+    }
+
+    /**
+     * @param deleteOnRead When true, the file can be read only once and is deleted when the stream is closed. When
+     *        false, the file is left in place, e.g. for files owned by {@link SourcesCache}.
+     */
+    RenamedSources(Path file, String name, String md5, ArtifactType artifactType, boolean deleteOnRead)
+            throws IOException {
+        this(Spool.Content.ofFile(file), name, md5, artifactType, deleteOnRead);
+    }
+
+    /**
+     * @param content Spooled archive, which is released when read, unless deleteOnRead is false.
+     */
+    RenamedSources(Spool.Content content, String name, String md5, ArtifactType artifactType, boolean deleteOnRead) {
+        this.content = content;
         this.name = name;
         this.md5 = md5;
-        this.size = (int) Files.size(file);
+        this.size = content.size();
         this.artifactType = artifactType;
+        this.deleteOnRead = deleteOnRead;
+    }
+
+    /**
+     * Writes the archive to the given file without consuming it.
+     */
+    void copyTo(Path target) throws IOException {
+        content.copyTo(target);
     }
 
     public InputStream read() throws IOException {
+        if (!deleteOnRead) {
+            return content.open();
+        }
+        markRead();
+        return content.openAndRelease();
+    }
+
+    /**
+     * Opens the archive as a file channel, or returns null when the archive is kept in memory. Like {@link #read()},
+     * the channel can be opened only once unless the archive is owned by the cache; {@link #release()} has to be
+     * called when the channel is closed.
+     */
+    public FileChannel readChannel() throws IOException {
+        FileChannel channel = content.openChannel();
+        if (channel != null && deleteOnRead) {
+            try {
+                markRead();
+            } catch (IllegalStateException e) {
+                channel.close();
+                throw e;
+            }
+        }
+        return channel;
+    }
+
+    /**
+     * Releases the archive after it was read by {@link #readChannel()}, unless it's owned by the cache.
+     */
+    public void release() {
+        if (deleteOnRead) {
+            content.release();
+        }
+    }
+
+    private void markRead() {
         if (read) {
             throw new IllegalStateException("File already read.");
         }
         read = true;
-        return Files.newInputStream(file, StandardOpenOption.DELETE_ON_CLOSE);
     }
 
     public static class ArtifactType {
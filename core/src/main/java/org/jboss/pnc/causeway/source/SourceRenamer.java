@@ -1,26 +1,45 @@
 package org.jboss.pnc.causeway.source;
 
 import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigInteger;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedThreadFactory;
 import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
 
+import com.codahale.metrics.MetricRegistry;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.apache.commons.compress.compressors.CompressorException;
 import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.NullOutputStream;
 import org.jboss.pnc.causeway.CausewayException;
+import org.jboss.pnc.causeway.config.CausewayConfig;
+import org.jboss.pnc.causeway.util.ImportMetrics;
+import org.jboss.pnc.causeway.util.JfrEvent;
+
+import static org.jboss.pnc.causeway.util.ImportMetrics.Phase.SOURCES_DOWNLOAD;
+import static org.jboss.pnc.causeway.util.ImportMetrics.Phase.SOURCES_REPACK;
 
 @ApplicationScoped
 public class SourceRenamer {
@@ -28,8 +47,65 @@ public class SourceRenamer {
     public static final String ARTIFACT_CLASSIFIER = "project-sources";
     public static final String ARTIFACT_TYPE = "tar.gz";
     public static final String ARCHIVE_SUFFIX = "-" + ARTIFACT_CLASSIFIER + "." + ARTIFACT_TYPE;
+    private static final int PEEK_LIMIT = 64 * 1024;
+    private static final int[] GZIP_MAGIC = { 0x1f, 0x8b };
     private CompressorStreamFactory compressor = new CompressorStreamFactory();
 
+    private final int repackThreads;
+
+    private final SourcesCache cache;
+
+    private final ImportMetrics metrics;
+
+    private final Spool spool;
+
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    private ExecutorService compressionExecutor;
+
+    private ExecutorService readAheadExecutor;
+
+    public SourceRenamer() {
+        this(1, new SourcesCache());
+    }
+
+    @Inject
+    public SourceRenamer(CausewayConfig config, SourcesCache cache, ImportMetrics metrics, Spool spool) {
+        this(config.getSourceRepackThreads(), cache, metrics, spool);
+    }
+
+    /**
+     * @param repackThreads Number of threads compressing the repacked archive. When greater than one, the input is
+     *        read ahead in the background and the output is compressed in parallel blocks.
+     * @param cache Cache of repacked archives.
+     */
+    public SourceRenamer(int repackThreads, SourcesCache cache) {
+        this(repackThreads, cache, new ImportMetrics(new MetricRegistry()));
+    }
+
+    /**
+     * @param repackThreads Number of threads compressing the repacked archive.
+     * @param cache Cache of repacked archives.
+     * @param metrics Metrics recording the time spent downloading and repacking the sources.
+     */
+    public SourceRenamer(int repackThreads, SourcesCache cache, ImportMetrics metrics) {
+        this(repackThreads, cache, metrics, new Spool());
+    }
+
+    /**
+     * @param repackThreads Number of threads compressing the repacked archive.
+     * @param cache Cache of repacked archives.
+     * @param metrics Metrics recording the time spent downloading and repacking the sources.
+     * @param spool Storage of the repacked archives until they are uploaded.
+     */
+    public SourceRenamer(int repackThreads, SourcesCache cache, ImportMetrics metrics, Spool spool) {
+        this.repackThreads = repackThreads;
+        this.cache = cache;
+        this.metrics = metrics;
+        this.spool = spool;
+    }
+
     /**
      * Repackage the sources archive and rename the root directory inside to match the following format:
      * {@code <artifactId>-<version>-project-sources.tar.gz}.
@@ -41,6 +117,24 @@ public class SourceRenamer {
         return repack(input, name, path, new RenamedSources.ArtifactType(groupId, artifactId, version));
     }
 
+    /**
+     * Same as {@link #repackMaven(InputStream, String, String, String)}, but reuses the repacked archive from the cache
+     * when sources with the same id were already repacked. The original sources are opened only on cache miss.
+     *
+     * @param sourcesId Identifier of the original sources, e.g. their URL.
+     */
+    public RenamedSources repackMaven(
+            String sourcesId,
+            SourcesProvider input,
+            String groupId,
+            String artifactId,
+            String version) throws CausewayException {
+        String name = getMavenName(artifactId, version);
+        Path path = getMavenPath(groupId, artifactId, version);
+        RenamedSources.ArtifactType artifactType = new RenamedSources.ArtifactType(groupId, artifactId, version);
+        return repackCached(sourcesId, input, name, path, artifactType, ImportMetrics.MAVEN);
+    }
+
     private Path getMavenPath(String groupId, String artifactId, String version) {
         String gid = groupId.replace(".", "/");
         return Paths.get(gid).resolve(artifactId).resolve(version);
@@ -67,6 +161,20 @@ public class SourceRenamer {
         return repack(input, name, path, new RenamedSources.ArtifactType(packageName, version));
     }
 
+    /**
+     * Same as {@link #repackNPM(InputStream, String, String)}, but reuses the repacked archive from the cache when
+     * sources with the same id were already repacked. The original sources are opened only on cache miss.
+     *
+     * @param sourcesId Identifier of the original sources, e.g. their URL.
+     */
+    public RenamedSources repackNPM(String sourcesId, SourcesProvider input, String packageName, String version)
+            throws CausewayException {
+        String name = getNPMName(packageName, version);
+        Path path = getNPMPath(packageName);
+        RenamedSources.ArtifactType artifactType = new RenamedSources.ArtifactType(packageName, version);
+        return repackCached(sourcesId, input, name, path, artifactType, ImportMetrics.NPM);
+    }
+
     private Path getNPMPath(String packageName) {
         return Paths.get(packageName).resolve("-");
     }
@@ -82,33 +190,160 @@ public class SourceRenamer {
                 .toString();
     }
 
-    private RenamedSources repack(InputStream input, String name, Path path, RenamedSources.ArtifactType artifacType)
-            throws CausewayException {
-        try {
-            Path tempFile = Files.createTempFile("renamer-", ".tar.gz");
+    private RenamedSources repackCached(
+            String sourcesId,
+            SourcesProvider provider,
+            String name,
+            Path path,
+            RenamedSources.ArtifactType artifactType,
+            String buildType) throws CausewayException {
+        String archivePath = path.resolve(name + ARCHIVE_SUFFIX).toString();
+        RenamedSources cached = cache.get(sourcesId, archivePath, artifactType);
+        if (cached != null) {
+            return cached;
+        }
 
-            MessageDigest md5Digest = MessageDigest.getInstance("MD5");
-            DigestOutputStream outputStream = new DigestOutputStream(Files.newOutputStream(tempFile), md5Digest);
-            rewrite(input, outputStream, name);
+        RenamedSources sources;
+        long start = System.nanoTime();
+        try (TimedInputStream input = new TimedInputStream(provider.open(), System.nanoTime() - start)) {
+            try {
+                sources = repack(input, name, path, artifactType);
+            } finally {
+                // the download streams into the repack, so the time spent waiting for the data is told apart
+                long download = input.getNanos();
+                metrics.update(SOURCES_DOWNLOAD, buildType, download, TimeUnit.NANOSECONDS);
+                metrics.update(SOURCES_REPACK, buildType, System.nanoTime() - start - download, TimeUnit.NANOSECONDS);
+            }
+        } catch (IOException e) {
+            throw new CausewayException("Failed to read sources: " + e.getMessage(), e);
+        }
+        cache.put(sourcesId, sources);
+        return sources;
+    }
 
-            BigInteger bi = new BigInteger(1, md5Digest.digest());
-            String md5Hash = String.format("%032x", bi);
+    private RenamedSources repack(InputStream input, String name, Path path, RenamedSources.ArtifactType artifacType)
+            throws CausewayException {
+        try (JfrEvent event = JfrEvent.begin(JfrEvent.Type.SOURCES_REPACK).operation(name)) {
+            InputStream buffered = new BufferedInputStream(readAhead(input));
+            MessageDigest md5Digest = md5();
+            Spool.Content content;
+            if (hasRootEntry(buffered, name)) {
+                Spool.Output output = spool.create();
+                boolean matches;
+                try {
+                    matches = passThrough(buffered, new DigestOutputStream(output, md5Digest), name);
+                } catch (IOException | RuntimeException e) {
+                    output.discard();
+                    throw e;
+                }
+                content = output.getContent();
+                if (!matches) { // the spooled original has to be rewritten after all
+                    Spool.Content original = content;
+                    md5Digest.reset();
+                    try (InputStream in = new BufferedInputStream(original.open())) {
+                        content = rewriteToSpool(in, md5Digest, name);
+                    } finally {
+                        original.release();
+                    }
+                }
+            } else {
+                content = rewriteToSpool(buffered, md5Digest, name);
+            }
+            event.bytes(content.size());
 
             String archiveName = name + ARCHIVE_SUFFIX;
 
-            return new RenamedSources(tempFile, path.resolve(archiveName).toString(), md5Hash, artifacType);
+            return new RenamedSources(
+                    content,
+                    path.resolve(archiveName).toString(),
+                    toHex(md5Digest),
+                    artifacType,
+                    true);
         } catch (IOException | CompressorException e) {
             throw new CausewayException("Error while repacking archive with changed root directory name", e);
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException("The JVM must support MD5 digest", e);
         }
     }
 
+    /**
+     * Checks whether the archive is gzipped and its first entry is already the root directory with the given name. At
+     * most {@link #PEEK_LIMIT} bytes are read and the stream is reset afterwards.
+     */
+    private static boolean hasRootEntry(InputStream input, String name) throws IOException {
+        input.mark(PEEK_LIMIT);
+        try {
+            if (input.read() != GZIP_MAGIC[0] || input.read() != GZIP_MAGIC[1]) {
+                return false;
+            }
+            input.reset();
+            BoundedInputStream bounded = new BoundedInputStream(input, PEEK_LIMIT);
+            bounded.setPropagateClose(false);
+            try (TarArchiveInputStream in = new TarArchiveInputStream(gzipInput(bounded, false))) {
+                TarArchiveEntry first = in.getNextTarEntry();
+                return first != null && first.isDirectory() && Paths.get(first.getName()).equals(Paths.get(name));
+            }
+        } catch (IOException ex) { // corrupted or the header doesn't fit the limit, leave it to the rewrite
+            return false;
+        } finally {
+            input.reset();
+        }
+    }
+
+    /**
+     * Copies the original archive, which already has the right root directory, without recompressing it. The entries
+     * are still checked; when some entry isn't under the root directory, the rest of the archive is copied as well and
+     * false is returned, so that the archive is rewritten.
+     *
+     * @return Whether the copied archive can be used as it is.
+     */
+    private boolean passThrough(InputStream input, OutputStream target, String name) throws IOException {
+        Path rootName = Paths.get(name);
+        boolean matches = true;
+        try (OutputStream output = target;
+                InputStream tee = new TeeInputStream(input, output);
+                TarArchiveInputStream in = new TarArchiveInputStream(gzipInput(tee, true))) {
+            boolean rootFound = false;
+            for (TarArchiveEntry entry = in.getNextTarEntry(); entry != null; entry = in.getNextTarEntry()) {
+                Path originalName = Paths.get(entry.getName());
+                boolean root = originalName.equals(rootName);
+                if (!getTopmost(originalName).equals(rootName) || (root && rootFound)) {
+                    matches = false;
+                    break;
+                }
+                rootFound |= root;
+            }
+            // copy the rest, e.g. the end of archive blocks or the remaining entries when rewrite is needed
+            IOUtils.copy(tee, NullOutputStream.NULL_OUTPUT_STREAM);
+        }
+        return matches;
+    }
+
+    /**
+     * The gzip stream marks and resets its input when it can. The input is buffered separately, so that the stream
+     * neither moves the caller's mark nor reads the copied bytes twice.
+     */
+    private static InputStream gzipInput(InputStream input, boolean concatenated) throws IOException {
+        return new GzipCompressorInputStream(new BufferedInputStream(input), concatenated);
+    }
+
+    /**
+     * Rewrites the archive to the spool.
+     */
+    private Spool.Content rewriteToSpool(InputStream input, MessageDigest md5Digest, String name)
+            throws CompressorException, IOException {
+        Spool.Output output = spool.create();
+        try {
+            rewrite(input, new DigestOutputStream(output, md5Digest), name);
+        } catch (CompressorException | IOException | RuntimeException e) {
+            output.discard();
+            throw e;
+        }
+        return output.getContent();
+    }
+
     private void rewrite(InputStream input, OutputStream output, String name) throws CompressorException, IOException {
         Path newDirectoryName = Paths.get(name);
-        try (TarArchiveInputStream in = new TarArchiveInputStream(
-                compressor.createCompressorInputStream(new BufferedInputStream(input)));
-                TarArchiveOutputStream out = new TarArchiveOutputStream(new GzipCompressorOutputStream(output))) {
+        try (TarArchiveInputStream in = new TarArchiveInputStream(compressor.createCompressorInputStream(input));
+                TarArchiveOutputStream out = new TarArchiveOutputStream(compress(output))) {
             out.setLongFileMode(TarArchiveOutputStream.LONGFILE_GNU);
 
             boolean rootFound = false;
@@ -133,6 +368,65 @@ public class SourceRenamer {
         }
     }
 
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("The JVM must support MD5 digest", e);
+        }
+    }
+
+    private static String toHex(MessageDigest digest) {
+        return String.format("%032x", new BigInteger(1, digest.digest()));
+    }
+
+    private InputStream readAhead(InputStream input) {
+        if (repackThreads <= 1) {
+            return input;
+        }
+        return new ReadAheadInputStream(input, getReadAheadExecutor());
+    }
+
+    private OutputStream compress(OutputStream output) throws IOException {
+        if (repackThreads <= 1) {
+            return new GzipCompressorOutputStream(output);
+        }
+        return new ParallelGzipOutputStream(output, getCompressionExecutor(), repackThreads);
+    }
+
+    private synchronized ExecutorService getCompressionExecutor() {
+        if (compressionExecutor == null) {
+            compressionExecutor = Executors.newFixedThreadPool(repackThreads, getThreadFactory());
+        }
+        return compressionExecutor;
+    }
+
+    /**
+     * Read-ahead tasks block while their queue is full, so they must not share the pool with compression tasks.
+     */
+    private synchronized ExecutorService getReadAheadExecutor() {
+        if (readAheadExecutor == null) {
+            readAheadExecutor = Executors.newCachedThreadPool(getThreadFactory());
+        }
+        return readAheadExecutor;
+    }
+
+    private ThreadFactory getThreadFactory() {
+        return threadFactory == null ? Executors.defaultThreadFactory() : threadFactory;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (compressionExecutor != null) {
+            compressionExecutor.shutdownNow();
+            compressionExecutor = null;
+        }
+        if (readAheadExecutor != null) {
+            readAheadExecutor.shutdownNow();
+            readAheadExecutor = null;
+        }
+    }
+
     private Path getTopmost(Path path) {
         while (path.getParent() != null) {
             path = path.getParent();
@@ -140,4 +434,50 @@ public class SourceRenamer {
         return path;
     }
 
+
+    /**
+     * Input stream recording the time spent opening and reading it.
+     */
+    private static class TimedInputStream extends FilterInputStream {
+        private volatile long nanos;
+
+        TimedInputStream(InputStream in, long openNanos) {
+            super(in);
+            this.nanos = openNanos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read();
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read(b, off, len);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.skip(n);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        long getNanos() {
+            return nanos;
+        }
+    }
 }
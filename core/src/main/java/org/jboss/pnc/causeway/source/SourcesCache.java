@@ -0,0 +1,205 @@
+package org.jboss.pnc.causeway.source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jboss.pnc.causeway.config.CausewayConfig;
+
+/**
+ * On-disk cache of repacked source archives. Entries are keyed by the identifier of the original sources and by the
+ * name of the repacked archive, and store the archive with its MD5 checksum. The least recently used entries are
+ * evicted when the cache grows over its size. Entries used within the last hour are never evicted, because they may
+ * still be uploaded.
+ */
+@Slf4j
+@ApplicationScoped
+public class SourcesCache {
+
+    private static final String ARCHIVE_SUFFIX = ".tar.gz";
+
+    private static final String METADATA_SUFFIX = ".properties";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final long IN_USE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final Path directory;
+
+    private final long maxSize;
+
+    public SourcesCache() {
+        this(null, 0);
+    }
+
+    @Inject
+    public SourcesCache(CausewayConfig config) {
+        this(
+                config.getSourcesCacheDir() == null ? null : Paths.get(config.getSourcesCacheDir()),
+                config.getSourcesCacheSize() * 1024L * 1024L);
+    }
+
+    /**
+     * @param directory Directory with cached archives, or null to disable the cache.
+     * @param maxSize Size in bytes the cache is trimmed to.
+     */
+    public SourcesCache(Path directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Returns cached repacked sources or null when there are none. The returned sources can be read repeatedly and
+     * reading them doesn't remove them from the cache.
+     */
+    public synchronized RenamedSources get(String sourcesId, String name, RenamedSources.ArtifactType artifactType) {
+        if (!isEnabled()) {
+            return null;
+        }
+        String key = key(sourcesId, name);
+        Path archive = directory.resolve(key + ARCHIVE_SUFFIX);
+        Path metadata = directory.resolve(key + METADATA_SUFFIX);
+        if (!Files.exists(archive) || !Files.exists(metadata)) {
+            return null;
+        }
+        try {
+            Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(metadata)) {
+                properties.load(in);
+            }
+            if (!name.equals(properties.getProperty("name"))
+                    || Files.size(archive) != Long.parseLong(properties.getProperty("size"))) {
+                log.warn("Cached sources {} are inconsistent, discarding them.", name);
+                remove(key);
+                return null;
+            }
+            Files.setLastModifiedTime(archive, FileTime.fromMillis(System.currentTimeMillis()));
+            log.info("Using cached sources {}.", name);
+            return new RenamedSources(archive, name, properties.getProperty("md5"), artifactType, false);
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Failed to read cached sources " + name + ", discarding them.", e);
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Stores copy of the repacked sources in the cache. Failure to store the sources is only logged.
+     */
+    public void put(String sourcesId, RenamedSources sources) {
+        if (!isEnabled()) {
+            return;
+        }
+        String key = key(sourcesId, sources.getName());
+        Path tempArchive = null;
+        Path tempMetadata = null;
+        try {
+            Files.createDirectories(directory);
+            tempArchive = Files.createTempFile(directory, key, TEMP_SUFFIX);
+            tempMetadata = Files.createTempFile(directory, key, TEMP_SUFFIX);
+            sources.copyTo(tempArchive);
+
+            Properties properties = new Properties();
+            properties.setProperty("name", sources.getName());
+            properties.setProperty("md5", sources.getMd5());
+            properties.setProperty("size", String.valueOf(Files.size(tempArchive)));
+            try (OutputStream out = Files.newOutputStream(tempMetadata)) {
+                properties.store(out, null);
+            }
+
+            synchronized (this) {
+                Files.move(tempMetadata, directory.resolve(key + METADATA_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+                Files.move(tempArchive, directory.resolve(key + ARCHIVE_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+                evict();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to store sources " + sources.getName() + " in cache.", e);
+            deleteQuietly(tempArchive);
+            deleteQuietly(tempMetadata);
+        }
+    }
+
+    private void evict() throws IOException {
+        List<Path> archives = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + ARCHIVE_SUFFIX)) {
+            stream.forEach(archives::add);
+        }
+        long totalSize = 0;
+        for (Path archive : archives) {
+            totalSize += Files.size(archive);
+        }
+        if (totalSize <= maxSize) {
+            return;
+        }
+
+        archives.sort(Comparator.comparing(SourcesCache::lastModified));
+        long inUseThreshold = System.currentTimeMillis() - IN_USE_MILLIS;
+        for (Path archive : archives) {
+            if (totalSize <= maxSize || lastModified(archive) > inUseThreshold) {
+                break;
+            }
+            long size = Files.size(archive);
+            String fileName = archive.getFileName().toString();
+            remove(fileName.substring(0, fileName.length() - ARCHIVE_SUFFIX.length()));
+            totalSize -= size;
+        }
+    }
+
+    private void remove(String key) {
+        deleteQuietly(directory.resolve(key + ARCHIVE_SUFFIX));
+        deleteQuietly(directory.resolve(key + METADATA_SUFFIX));
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Failed to delete " + path + ".", e);
+        }
+    }
+
+    private static String key(String sourcesId, String name) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(sourcesId.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            digest.update(name.getBytes(StandardCharsets.UTF_8));
+            return String.format("%064x", new BigInteger(1, digest.digest()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("The JVM must support SHA-256 digest", e);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package org.jboss.pnc.causeway.source;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.jboss.pnc.causeway.CausewayException;
+
+/**
+ * Lazily opens the original sources archive, so that it is not downloaded when repacked sources are already cached.
+ */
+@FunctionalInterface
+public interface SourcesProvider {
+
+    InputStream open() throws IOException, CausewayException;
+}
@@ -0,0 +1,671 @@
+package org.jboss.pnc.causeway.source;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.jboss.pnc.causeway.config.CausewayConfig;
+import org.jboss.pnc.causeway.pncclient.BuildLog;
+import org.jboss.pnc.pncmetrics.MetricsConfiguration;
+
+/**
+ * Temporary storage of repacked source archives until they are uploaded. Archives up to the memory threshold are kept
+ * in direct buffers, larger ones are written to the spool directory. The disk space taken by the spooled files is
+ * limited by a budget; writers that would exceed it wait until other spooled files are released. When all writers
+ * wait, one of them is let through anyway, so that the budget should leave room for one more archive.
+ * <p>
+ * Archives spooled within a {@link Scope} are released when the scope is closed, so that an import that fails before
+ * the upload doesn't leave them behind. Files left by a crashed node, including spooled build logs, are removed by
+ * {@link #sweep(long)}.
+ */
+@Slf4j
+@ApplicationScoped
+public class Spool {
+
+    private static final String METRICS_SPOOL = "causeway.sources.spool";
+
+    private static final String PREFIX = "renamer-";
+
+    private static final String SUFFIX = ".tar.gz";
+
+    /** Disk space is reserved in chunks of this size while the file is written. */
+    private static final long CHUNK = 8 * 1024 * 1024;
+
+    private static final int MIN_BUFFER = 64 * 1024;
+
+    /** Direct buffers are indexed by int, larger archives always go to a file. */
+    private static final int MAX_BUFFER = Integer.MAX_VALUE - 8;
+
+    private static final ThreadLocal<Scope> SCOPE = new ThreadLocal<>();
+
+    private final Path directory;
+
+    private final long memoryThreshold;
+
+    private final long diskBudget;
+
+    /** Names of the spooled files that weren't released yet. */
+    private final Set<Path> liveFiles = ConcurrentHashMap.newKeySet();
+
+    private final Counter reclaimedFiles;
+
+    private final Counter reclaimedBytes;
+
+    private long diskUsed;
+
+    private long memoryUsed;
+
+    private int writers;
+
+    private int waiting;
+
+    /**
+     * Spool in the default temporary directory, without memory buffers or disk budget.
+     */
+    public Spool() {
+        this(null, 0, 0);
+    }
+
+    @Inject
+    public Spool(CausewayConfig config, MetricsConfiguration metricsConfiguration) {
+        this(
+                config.getSourcesSpoolDir() == null ? null : Paths.get(config.getSourcesSpoolDir()),
+                config.getSourcesSpoolMemory() * 1024L,
+                config.getSourcesSpoolBudget() * 1024L * 1024L,
+                metricsConfiguration.getMetricRegistry());
+        MetricRegistry registry = metricsConfiguration.getMetricRegistry();
+        registerGauge(registry, "disk", this::getDiskUsed);
+        registerGauge(registry, "memory", this::getMemoryUsed);
+        registerGauge(registry, "waiting", () -> (long) getWaiting());
+        registerGauge(registry, "budget", () -> diskBudget);
+    }
+
+    /**
+     * @param directory Directory for the spooled files, or null for the default temporary directory.
+     * @param memoryThreshold Size in bytes up to which archives are kept in memory.
+     * @param diskBudget Disk space in bytes the spooled files may take, or zero for no limit.
+     */
+    public Spool(Path directory, long memoryThreshold, long diskBudget) {
+        this(directory, memoryThreshold, diskBudget, new MetricRegistry());
+    }
+
+    private Spool(Path directory, long memoryThreshold, long diskBudget, MetricRegistry registry) {
+        this.directory = directory;
+        this.memoryThreshold = Math.min(memoryThreshold, MAX_BUFFER);
+        this.diskBudget = diskBudget;
+        this.reclaimedFiles = registry.counter(METRICS_SPOOL + ".reclaimed.count");
+        this.reclaimedBytes = registry.counter(METRICS_SPOOL + ".reclaimed.bytes");
+    }
+
+    private static void registerGauge(MetricRegistry registry, String name, Gauge<Long> gauge) {
+        try {
+            registry.register(METRICS_SPOOL + "." + name, gauge);
+        } catch (IllegalArgumentException e) {
+            log.debug("Gauge {} already registered.", name);
+        }
+    }
+
+    /**
+     * Disk space in bytes reserved by the spooled files.
+     */
+    public synchronized long getDiskUsed() {
+        return diskUsed;
+    }
+
+    /**
+     * Direct memory in bytes taken by the spooled archives.
+     */
+    public synchronized long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    /**
+     * Number of writers waiting for disk space.
+     */
+    public synchronized int getWaiting() {
+        return waiting;
+    }
+
+    /**
+     * Number of leaked or orphaned archives released by closed scopes or by the sweep.
+     */
+    public long getReclaimedCount() {
+        return reclaimedFiles.getCount();
+    }
+
+    /**
+     * Size in bytes of the leaked or orphaned archives released by closed scopes or by the sweep.
+     */
+    public long getReclaimedBytes() {
+        return reclaimedBytes.getCount();
+    }
+
+    /**
+     * Opens scope on the current thread. Archives spooled by the thread until the scope is closed are released on
+     * close, unless they were released already. Scopes may be nested.
+     */
+    public static Scope openScope() {
+        Scope scope = new Scope(SCOPE.get());
+        SCOPE.set(scope);
+        return scope;
+    }
+
+    /**
+     * Deletes spooled files and build logs older than the given age that aren't used by any live archive, e.g. files
+     * left behind by a node that was killed during an import.
+     *
+     * @return Number of deleted files.
+     */
+    public int sweep(long maxAgeMillis) {
+        Path tempDir = Paths.get(System.getProperty("java.io.tmpdir"));
+        long threshold = System.currentTimeMillis() - maxAgeMillis;
+        int deleted = sweep(directory == null ? tempDir : directory, PREFIX + "*" + SUFFIX, threshold);
+        deleted += sweep(tempDir, BuildLog.FILE_PREFIX + "*" + BuildLog.FILE_SUFFIX, threshold);
+        return deleted;
+    }
+
+    private int sweep(Path dir, String glob, long threshold) {
+        if (!Files.isDirectory(dir)) {
+            return 0;
+        }
+        int deleted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, glob)) {
+            for (Path file : files) {
+                if (liveFiles.contains(file.getFileName())) {
+                    continue;
+                }
+                try {
+                    long size = Files.size(file);
+                    if (Files.getLastModifiedTime(file).toMillis() <= threshold && Files.deleteIfExists(file)) {
+                        reclaimed(size);
+                        deleted++;
+                    }
+                } catch (IOException e) {
+                    log.warn("Failed to delete orphaned spool file " + file + ".", e);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to sweep spool directory " + dir + ".", e);
+        }
+        if (deleted > 0) {
+            log.info("Deleted {} orphaned {} files from {}.", deleted, glob, dir);
+        }
+        return deleted;
+    }
+
+    private void reclaimed(long bytes) {
+        reclaimedFiles.inc();
+        reclaimedBytes.inc(bytes);
+    }
+
+    /**
+     * Opens new spooled archive. When the returned stream is closed, the content is obtained by
+     * {@link Output#getContent()}; when writing fails, the output must be discarded.
+     */
+    public Output create() {
+        synchronized (this) {
+            writers++;
+        }
+        return new Output();
+    }
+
+    private synchronized void reserve(long bytes) throws InterruptedIOException {
+        waiting++;
+        try {
+            while (diskBudget > 0 && diskUsed + bytes > diskBudget && waiting < writers) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for spool space.");
+        } finally {
+            waiting--;
+        }
+        diskUsed += bytes;
+    }
+
+    private synchronized void releaseDisk(long bytes) {
+        diskUsed -= bytes;
+        notifyAll();
+    }
+
+    private synchronized void updateMemory(long bytes) {
+        memoryUsed += bytes;
+    }
+
+    private synchronized void writerDone() {
+        writers--;
+        notifyAll();
+    }
+
+    private void releaseFile(Path file, long reserved) {
+        deleteQuietly(file);
+        liveFiles.remove(file.getFileName());
+        releaseDisk(reserved);
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete " + file + ".", e);
+        }
+    }
+
+    /**
+     * Stream writing a spooled archive. Data are buffered in memory until they exceed the memory threshold, then they
+     * are moved to a file.
+     */
+    public class Output extends OutputStream {
+
+        private ByteBuffer buffer;
+
+        private Path file;
+
+        private OutputStream fileOutput;
+
+        private long size;
+
+        private long reserved;
+
+        private boolean closed;
+
+        private Output() {
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed.");
+            }
+            if (len == 0) {
+                return;
+            }
+            if (file == null && size + len <= memoryThreshold) {
+                ensureBuffer(size + len);
+                buffer.put(b, off, len);
+            } else {
+                if (file == null) {
+                    spill();
+                }
+                while (reserved < size + len) {
+                    reserve(CHUNK);
+                    reserved += CHUNK;
+                }
+                fileOutput.write(b, off, len);
+            }
+            size += len;
+        }
+
+        private void ensureBuffer(long capacity) {
+            if (buffer != null && buffer.capacity() >= capacity) {
+                return;
+            }
+            int newCapacity = buffer == null ? MIN_BUFFER : buffer.capacity() * 2;
+            newCapacity = (int) Math.min(Math.max(newCapacity, capacity), memoryThreshold);
+            ByteBuffer newBuffer = ByteBuffer.allocateDirect(newCapacity);
+            if (buffer != null) {
+                buffer.flip();
+                newBuffer.put(buffer);
+            }
+            updateMemory(newCapacity - (buffer == null ? 0 : buffer.capacity()));
+            buffer = newBuffer;
+        }
+
+        private void spill() throws IOException {
+            file = directory == null ? Files.createTempFile(PREFIX, SUFFIX)
+                    : Files.createTempFile(Files.createDirectories(directory), PREFIX, SUFFIX);
+            liveFiles.add(file.getFileName());
+            fileOutput = new BufferedOutputStream(Files.newOutputStream(file));
+            if (buffer != null) {
+                while (reserved < size) {
+                    reserve(CHUNK);
+                    reserved += CHUNK;
+                }
+                buffer.flip();
+                WritableByteChannel channel = Channels.newChannel(fileOutput);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                freeBuffer();
+            }
+        }
+
+        private void freeBuffer() {
+            if (buffer != null) {
+                updateMemory(-buffer.capacity());
+                buffer = null;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (fileOutput != null) {
+                fileOutput.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (fileOutput != null) {
+                    fileOutput.close();
+                }
+            } finally {
+                writerDone();
+            }
+        }
+
+        /**
+         * Returns the written content. The unused part of the reserved disk space is returned to the budget.
+         */
+        public Content getContent() throws IOException {
+            if (!closed) {
+                throw new IllegalStateException("Spooled archive is still being written.");
+            }
+            if (file == null) {
+                ByteBuffer content = buffer == null ? ByteBuffer.allocateDirect(0) : buffer;
+                content.flip();
+                buffer = null;
+                return register(new MemoryContent(Spool.this, content));
+            }
+            releaseDisk(reserved - size);
+            reserved = size;
+            return register(new FileContent(Spool.this, file, size, reserved));
+        }
+
+        private Content register(Content content) {
+            Scope scope = SCOPE.get();
+            if (scope != null) {
+                scope.contents.add(content);
+            }
+            return content;
+        }
+
+        /**
+         * Drops the written data.
+         */
+        public void discard() {
+            try {
+                close();
+            } catch (IOException e) {
+                log.warn("Failed to close spooled archive.", e);
+            }
+            freeBuffer();
+            if (file != null) {
+                releaseFile(file, reserved);
+                reserved = 0;
+                file = null;
+            }
+        }
+    }
+
+    /**
+     * Archives spooled by one thread, usually during one import. See {@link #openScope()}.
+     */
+    public static final class Scope implements AutoCloseable {
+
+        private final Scope parent;
+
+        private final List<Content> contents = new ArrayList<>();
+
+        private Scope(Scope parent) {
+            this.parent = parent;
+        }
+
+        @Override
+        public void close() {
+            if (parent == null) {
+                SCOPE.remove();
+            } else {
+                SCOPE.set(parent);
+            }
+            contents.forEach(Content::reclaim);
+            contents.clear();
+        }
+    }
+
+    /**
+     * Spooled archive. It can be read repeatedly until it is released.
+     */
+    public abstract static class Content {
+
+        /** Spool the content is accounted in, or null. */
+        final Spool spool;
+
+        Content(Spool spool) {
+            this.spool = spool;
+        }
+
+        /**
+         * Content of an existing file, which is not accounted in any spool.
+         */
+        static Content ofFile(Path file) throws IOException {
+            return new FileContent(null, file, Files.size(file), 0);
+        }
+
+        public abstract long size();
+
+        /**
+         * Opens the content for reading.
+         */
+        public abstract InputStream open() throws IOException;
+
+        /**
+         * Opens the content for reading for the last time. The content is released when the stream is closed.
+         */
+        public InputStream openAndRelease() throws IOException {
+            return new FilterInputStream(open()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        release();
+                    }
+                }
+            };
+        }
+
+        /**
+         * Opens the file with the content for reading, or returns null when the content is kept in memory.
+         */
+        public FileChannel openChannel() throws IOException {
+            return null;
+        }
+
+        /**
+         * Writes the content to the given file, replacing it.
+         */
+        public abstract void copyTo(Path target) throws IOException;
+
+        /**
+         * Frees the memory or deletes the file and returns the disk space to the budget.
+         */
+        public abstract void release();
+
+        abstract boolean isReleased();
+
+        /**
+         * Releases the content if it wasn't released yet and counts it as reclaimed.
+         */
+        synchronized void reclaim() {
+            if (!isReleased()) {
+                long size = size();
+                release();
+                if (spool != null) {
+                    spool.reclaimed(size);
+                }
+            }
+        }
+    }
+
+    private static class FileContent extends Content {
+
+        private final Path file;
+
+        private final long size;
+
+        private long reserved;
+
+        private boolean released;
+
+        FileContent(Spool spool, Path file, long size, long reserved) {
+            super(spool);
+            this.file = file;
+            this.size = size;
+            this.reserved = reserved;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            return Files.newInputStream(file);
+        }
+
+        @Override
+        public FileChannel openChannel() throws IOException {
+            return FileChannel.open(file, StandardOpenOption.READ);
+        }
+
+        @Override
+        public void copyTo(Path target) throws IOException {
+            Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        @Override
+        public synchronized void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            if (spool == null) {
+                deleteQuietly(file);
+            } else {
+                spool.releaseFile(file, reserved);
+            }
+            reserved = 0;
+        }
+
+        @Override
+        synchronized boolean isReleased() {
+            return released;
+        }
+    }
+
+    private static class MemoryContent extends Content {
+
+        private ByteBuffer buffer;
+
+        private final long size;
+
+        MemoryContent(Spool spool, ByteBuffer buffer) {
+            super(spool);
+            this.buffer = buffer;
+            this.size = buffer.remaining();
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public synchronized InputStream open() throws IOException {
+            if (buffer == null) {
+                throw new IOException("Spooled archive was already released.");
+            }
+            ByteBuffer data = buffer.duplicate();
+            return new InputStream() {
+                @Override
+                public int read() {
+                    return data.hasRemaining() ? data.get() & 0xff : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (len == 0) {
+                        return 0;
+                    }
+                    if (!data.hasRemaining()) {
+                        return -1;
+                    }
+                    int n = Math.min(len, data.remaining());
+                    data.get(b, off, n);
+                    return n;
+                }
+
+                @Override
+                public int available() {
+                    return data.remaining();
+                }
+            };
+        }
+
+        @Override
+        public synchronized void copyTo(Path target) throws IOException {
+            if (buffer == null) {
+                throw new IOException("Spooled archive was already released.");
+            }
+            ByteBuffer data = buffer.duplicate();
+            try (FileChannel channel = FileChannel.open(
+                    target,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+        }
+
+        @Override
+        public synchronized void release() {
+            if (buffer != null) {
+                spool.updateMemory(-buffer.capacity());
+                buffer = null;
+            }
+        }
+
+        @Override
+        synchronized boolean isReleased() {
+            return buffer == null;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.jboss.pnc.causeway.source;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.DependsOn;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.inject.Inject;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jboss.pnc.causeway.config.CausewayConfig;
+
+/**
+ * Periodically deletes spooled source archives and build logs older than {@code sources.spool.orphan.age.mins} that
+ * no import uses.
+ * The first sweep runs on startup, so that files left by the previous run are removed right away.
+ */
+@Slf4j
+@Singleton
+@Startup
+@DependsOn("CausewayConfigurator")
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class SpoolSweeper {
+
+    private static final long MIN_PERIOD = TimeUnit.MINUTES.toMillis(1);
+
+    @Inject
+    private CausewayConfig config;
+
+    @Inject
+    private Spool spool;
+
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    void start() {
+        long maxAge = TimeUnit.MINUTES.toMillis(config.getSourcesSpoolOrphanAge());
+        if (maxAge <= 0) {
+            log.info("Sweeping of orphaned spool files is disabled.");
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                threadFactory == null ? Executors.defaultThreadFactory() : threadFactory);
+        long period = Math.max(maxAge / 4, MIN_PERIOD);
+        scheduler.scheduleWithFixedDelay(() -> sweep(maxAge), 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void sweep(long maxAge) {
+        try {
+            spool.sweep(maxAge);
+        } catch (RuntimeException e) { // an exception would cancel the following sweeps
+            log.error("Failed to sweep spool files.", e);
+        }
+    }
+}
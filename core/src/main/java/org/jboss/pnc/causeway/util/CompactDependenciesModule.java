@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.deser.Deserializers;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.jsontype.TypeDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.type.CollectionType;
+
+import org.jboss.pnc.api.causeway.dto.push.Dependency;
+import org.jboss.pnc.causeway.pncclient.DependencyStore;
+
+import java.io.IOException;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Jackson module that reads the dependencies of push API builds into a {@link DependencyStore}. The dependencies are
+ * parsed one by one from the token stream, without an object per dependency, and are exposed as a read-only set that
+ * creates the {@link Dependency} objects only while being iterated.
+ */
+public class CompactDependenciesModule extends SimpleModule {
+
+    public CompactDependenciesModule() {
+        super(CompactDependenciesModule.class.getSimpleName());
+    }
+
+    @Override
+    public void setupModule(SetupContext context) {
+        super.setupModule(context);
+        context.addDeserializers(new Deserializers.Base() {
+            @Override
+            public JsonDeserializer<?> findCollectionDeserializer(
+                    CollectionType type,
+                    DeserializationConfig config,
+                    BeanDescription beanDesc,
+                    TypeDeserializer elementTypeDeserializer,
+                    JsonDeserializer<?> elementDeserializer) {
+                if (type.getContentType().hasRawClass(Dependency.class)
+                        && type.getRawClass().isAssignableFrom(DependencySet.class)) {
+                    return new DependenciesDeserializer();
+                }
+                return null;
+            }
+        });
+    }
+
+    private static class DependenciesDeserializer extends StdDeserializer<Set<Dependency>> {
+
+        DependenciesDeserializer() {
+            super(Set.class);
+        }
+
+        @Override
+        public Set<Dependency> deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            if (!p.isExpectedStartArrayToken()) {
+                return ctxt.reportInputMismatch(this, "Expected array of dependencies, got %s", p.getCurrentToken());
+            }
+            DependencyStore store = new DependencyStore();
+            for (JsonToken token = p.nextToken(); token != JsonToken.END_ARRAY; token = p.nextToken()) {
+                if (token != JsonToken.START_OBJECT) {
+                    return ctxt.reportInputMismatch(this, "Expected dependency object, got %s", token);
+                }
+                String filename = null;
+                String md5 = null;
+                long size = 0;
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = p.getCurrentName();
+                    p.nextToken();
+                    switch (field) {
+                        case "filename":
+                            filename = p.getValueAsString();
+                            break;
+                        case "md5":
+                            md5 = p.getValueAsString();
+                            break;
+                        case "size":
+                            size = p.getValueAsLong();
+                            break;
+                        default:
+                            ctxt.handleUnknownProperty(p, this, Dependency.class, field);
+                    }
+                }
+                if (filename == null || md5 == null) {
+                    return ctxt.reportInputMismatch(this, "Dependency is missing filename or md5");
+                }
+                store.add(filename, md5, size);
+            }
+            return new DependencySet(store);
+        }
+    }
+
+    /**
+     * Read-only view of stored dependencies. Duplicates in the payload are dropped by the store.
+     */
+    private static class DependencySet extends AbstractSet<Dependency> {
+
+        private final DependencyStore store;
+
+        DependencySet(DependencyStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public Iterator<Dependency> iterator() {
+            return new Iterator<Dependency>() {
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    return next < store.size();
+                }
+
+                @Override
+                public Dependency next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    int i = next++;
+                    return Dependency.builder()
+                            .filename(store.getDeployPath(i))
+                            .md5(store.getMd5(i))
+                            .size(store.getSize(i))
+                            .build();
+                }
+            };
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Dependency)) {
+                return false;
+            }
+            Dependency dependency = (Dependency) o;
+            return dependency.getFilename() != null && dependency.getSize() != null
+                    && store.indexOf(dependency.getFilename(), dependency.getMd5(), dependency.getSize()) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return store.size();
+        }
+    }
+}
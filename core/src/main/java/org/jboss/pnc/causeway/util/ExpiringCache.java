@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.util;
+
+import com.codahale.metrics.Counter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bounded cache whose entries expire after a time that depends on the cached value, so that e.g. negative results can
+ * be kept for a shorter time than positive ones. Concurrent loads of one key are coalesced by {@link SingleFlight}.
+ * The least recently used entries are evicted when the cache is full.
+ */
+public class ExpiringCache<K, V> {
+
+    private final Map<K, Entry<V>> entries;
+
+    private final ToLongFunction<V> ttl;
+
+    private final SingleFlight<K, V> loads = new SingleFlight<>();
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    /**
+     * @param maxSize Maximal number of cached entries.
+     * @param ttl Time in milliseconds the given value stays cached. Values with zero TTL are not cached.
+     * @param hits Counter of lookups answered from the cache.
+     * @param misses Counter of lookups that had to load the value.
+     */
+    public ExpiringCache(int maxSize, ToLongFunction<V> ttl, Counter hits, Counter misses) {
+        this.ttl = ttl;
+        this.hits = hits;
+        this.misses = misses;
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value, or loads and caches it when it is missing or expired.
+     */
+    public <E extends Exception> V get(K key, SingleFlight.Call<V, E> loader) throws E {
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && entry.expires - System.nanoTime() > 0) {
+                hits.inc();
+                return entry.value;
+            }
+        }
+        misses.inc();
+        return loads.execute(key, () -> {
+            V value = loader.call();
+            long millis = ttl.applyAsLong(value);
+            if (millis > 0) {
+                synchronized (entries) {
+                    entries.put(key, new Entry<>(value, System.nanoTime() + millis * 1_000_000L));
+                }
+            }
+            return value;
+        });
+    }
+
+    public void invalidate(K key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expires;
+
+        private Entry(V value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+}
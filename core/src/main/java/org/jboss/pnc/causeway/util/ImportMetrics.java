@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.util;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import org.jboss.pnc.api.causeway.dto.push.Build;
+import org.jboss.pnc.api.causeway.dto.push.MavenBuild;
+import org.jboss.pnc.api.causeway.dto.push.NpmBuild;
+import org.jboss.pnc.enums.BuildType;
+import org.jboss.pnc.pncmetrics.MetricsConfiguration;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers of the individual phases of build imports, named {@code causeway.import.phase.<phase>} for phases not
+ * related to a single build and {@code causeway.import.phase.<phase>.<build type>} otherwise. The timers of known
+ * build types are registered up front; all timers and histograms use the registry's default exponentially decaying
+ * reservoir, so they reflect recent imports.
+ */
+@ApplicationScoped
+public class ImportMetrics {
+
+    private static final String METRICS_PHASE = "causeway.import.phase";
+
+    public static final String MAVEN = "maven";
+
+    public static final String NPM = "npm";
+
+    public enum Phase {
+        KOJI_METADATA("koji-metadata"),
+        PNC_FETCH("pnc-fetch"),
+        SOURCES_DOWNLOAD("sources-download"),
+        SOURCES_REPACK("sources-repack"),
+        TRANSLATION("translation"),
+        UPLOAD("upload"),
+        TAGGING("tagging"),
+        CALLBACK("callback");
+
+        private final String metricName;
+
+        Phase(String metricName) {
+            this.metricName = metricName;
+        }
+    }
+
+    private final MetricRegistry registry;
+
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    @Inject
+    public ImportMetrics(MetricsConfiguration metricsConfiguration) {
+        this(metricsConfiguration.getMetricRegistry());
+    }
+
+    public ImportMetrics(MetricRegistry registry) {
+        this.registry = registry;
+        for (Phase phase : Phase.values()) {
+            timer(phase, null);
+            timer(phase, MAVEN);
+            timer(phase, NPM);
+            for (BuildType buildType : BuildType.values()) {
+                timer(phase, buildType(buildType));
+            }
+        }
+    }
+
+    /**
+     * Starts timing of a phase not related to a single build. Stop it by closing the returned context.
+     */
+    public Timer.Context time(Phase phase) {
+        return timer(phase, null).time();
+    }
+
+    /**
+     * Starts timing of a phase of a build of the given type. Stop it by closing the returned context.
+     */
+    public Timer.Context time(Phase phase, String buildType) {
+        return timer(phase, buildType).time();
+    }
+
+    /**
+     * Runs the call and records its duration, whether it succeeds or fails.
+     */
+    public <T, E extends Exception> T time(Phase phase, String buildType, SingleFlight.Call<T, E> call) throws E {
+        try (Timer.Context context = time(phase, buildType)) {
+            return call.call();
+        }
+    }
+
+    /**
+     * Records duration of a phase of a build of the given type that was measured separately.
+     */
+    public void update(Phase phase, String buildType, long duration, TimeUnit unit) {
+        timer(phase, buildType).update(duration, unit);
+    }
+
+    /**
+     * Records the value in the histogram with the given name.
+     */
+    public void update(String histogramName, long value) {
+        histograms.computeIfAbsent(histogramName, registry::histogram).update(value);
+    }
+
+    private Timer timer(Phase phase, String buildType) {
+        String name = buildType == null ? METRICS_PHASE + "." + phase.metricName
+                : METRICS_PHASE + "." + phase.metricName + "." + buildType;
+        return timers.computeIfAbsent(name, registry::timer);
+    }
+
+    public static String buildType(Build build) {
+        if (build instanceof MavenBuild) {
+            return MAVEN;
+        } else if (build instanceof NpmBuild) {
+            return NPM;
+        }
+        return build.getClass().getSimpleName().toLowerCase(Locale.ROOT);
+    }
+
+    public static String buildType(BuildType buildType) {
+        if (buildType == null) {
+            return null;
+        }
+        switch (buildType) {
+            case MVN:
+                return MAVEN;
+            case NPM:
+                return NPM;
+            default:
+                return buildType.name().toLowerCase(Locale.ROOT);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Java Flight Recorder event of an import phase, carrying the build id, NVR, number of bytes and operation name; the
+ * duration is recorded by JFR. The event types are defined at runtime through the {@code jdk.jfr} API looked up by
+ * reflection, so that the code builds and runs on JVMs without JFR. When JFR is not available or the event type is not
+ * enabled in any recording, the returned event does nothing.
+ *
+ * <pre>
+ * try (JfrEvent event = JfrEvent.begin(JfrEvent.Type.KOJI_CALL).operation("getBuildInfo")) {
+ *     ...
+ * }
+ * </pre>
+ */
+@Slf4j
+public final class JfrEvent implements AutoCloseable {
+
+    public enum Type {
+        IMPORT("Build Import"), SOURCES_REPACK("Sources Repack"), KOJI_CALL("Koji Call"), IMPORT_FILE("Import File");
+
+        private final String label;
+
+        Type(String label) {
+            this.label = label;
+        }
+
+        private String eventName() {
+            return "org.jboss.pnc.causeway." + label.replace(" ", "");
+        }
+    }
+
+    private static final JfrEvent DISABLED = new JfrEvent(null);
+
+    private static final int BUILD_ID = 0;
+    private static final int NVR = 1;
+    private static final int BYTES = 2;
+    private static final int OPERATION = 3;
+
+    private static final Map<Type, Object> FACTORIES = new EnumMap<>(Type.class);
+    private static final Map<Type, Object> EVENT_TYPES = new EnumMap<>(Type.class);
+
+    private static Method newEvent;
+    private static Method isEnabled;
+    private static Method begin;
+    private static Method end;
+    private static Method commit;
+    private static Method set;
+
+    static {
+        try {
+            defineEventTypes();
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError ex) {
+            FACTORIES.clear();
+            EVENT_TYPES.clear();
+            log.debug("Java Flight Recorder API is not available, import events won't be recorded.", ex);
+        }
+    }
+
+    private final Object event;
+
+    private boolean closed;
+
+    private JfrEvent(Object event) {
+        this.event = event;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void defineEventTypes() throws ReflectiveOperationException {
+        Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+        Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+        Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+        Class<?> eventClass = Class.forName("jdk.jfr.Event");
+        Class<? extends Annotation> name = (Class<? extends Annotation>) Class.forName("jdk.jfr.Name");
+        Class<? extends Annotation> label = (Class<? extends Annotation>) Class.forName("jdk.jfr.Label");
+        Class<? extends Annotation> category = (Class<? extends Annotation>) Class.forName("jdk.jfr.Category");
+        Class<? extends Annotation> dataAmount = (Class<? extends Annotation>) Class.forName("jdk.jfr.DataAmount");
+
+        Constructor<?> annotation = annotationElement.getConstructor(Class.class, Object.class);
+        Constructor<?> field = valueDescriptor.getConstructor(Class.class, String.class, List.class);
+        Method create = eventFactory.getMethod("create", List.class, List.class);
+
+        List<Object> fields = Arrays.asList(
+                field.newInstance(String.class, "buildId", labels(annotation, label, "Build Id")),
+                field.newInstance(String.class, "nvr", labels(annotation, label, "NVR")),
+                field.newInstance(
+                        long.class,
+                        "bytes",
+                        Arrays.asList(
+                                annotation.newInstance(label, "Bytes"),
+                                annotation.newInstance(dataAmount, "BYTES"))),
+                field.newInstance(String.class, "operation", labels(annotation, label, "Operation")));
+        for (Type type : Type.values()) {
+            List<Object> annotations = Arrays.asList(
+                    annotation.newInstance(name, type.eventName()),
+                    annotation.newInstance(label, type.label),
+                    annotation.newInstance(category, new String[] { "Causeway" }));
+            Object factory = create.invoke(null, annotations, fields);
+            FACTORIES.put(type, factory);
+            EVENT_TYPES.put(type, eventFactory.getMethod("getEventType").invoke(factory));
+        }
+
+        newEvent = eventFactory.getMethod("newEvent");
+        isEnabled = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+        begin = eventClass.getMethod("begin");
+        end = eventClass.getMethod("end");
+        commit = eventClass.getMethod("commit");
+        set = eventClass.getMethod("set", int.class, Object.class);
+    }
+
+    private static List<Object> labels(Constructor<?> annotation, Class<? extends Annotation> label, String value)
+            throws ReflectiveOperationException {
+        return Collections.singletonList(annotation.newInstance(label, value));
+    }
+
+    /**
+     * Starts the event of the given type. The event is committed when closed.
+     */
+    public static JfrEvent begin(Type type) {
+        Object factory = FACTORIES.get(type);
+        if (factory == null) {
+            return DISABLED;
+        }
+        try {
+            if (!(Boolean) isEnabled.invoke(EVENT_TYPES.get(type))) {
+                return DISABLED;
+            }
+            Object event = newEvent.invoke(factory);
+            begin.invoke(event);
+            return new JfrEvent(event);
+        } catch (ReflectiveOperationException ex) {
+            log.debug("Failed to create JFR event.", ex);
+            return DISABLED;
+        }
+    }
+
+    /**
+     * Whether the event is recorded. Can be used to skip preparation of the event values.
+     */
+    public boolean isEnabled() {
+        return event != null;
+    }
+
+    public JfrEvent buildId(Object buildId) {
+        return set(BUILD_ID, buildId == null ? null : buildId.toString());
+    }
+
+    public JfrEvent nvr(String nvr) {
+        return set(NVR, nvr);
+    }
+
+    public JfrEvent bytes(long bytes) {
+        return set(BYTES, bytes);
+    }
+
+    public JfrEvent operation(String operation) {
+        return set(OPERATION, operation);
+    }
+
+    private JfrEvent set(int index, Object value) {
+        if (event != null) {
+            try {
+                set.invoke(event, index, value);
+            } catch (ReflectiveOperationException ex) {
+                log.debug("Failed to set JFR event value.", ex);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Ends and commits the event. Only the first call has effect.
+     */
+    @Override
+    public void close() {
+        if (event == null) {
+            return;
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            end.invoke(event);
+            commit.invoke(event);
+        } catch (ReflectiveOperationException ex) {
+            log.debug("Failed to commit JFR event.", ex);
+        }
+    }
+}
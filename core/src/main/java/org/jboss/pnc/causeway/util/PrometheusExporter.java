@@ -0,0 +1,202 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.util;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+import org.jboss.pnc.pncmetrics.MetricsConfiguration;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Renders the metric registry and JVM memory, GC and thread statistics in the Prometheus text exposition format.
+ * Counters and gauges are exported as gauges, meters as counters and histograms and timers as summaries, with timer
+ * values in seconds. The rendered text is reused for {@value #CACHE_MILLIS} ms, so that frequent scrapes don't take
+ * reservoir snapshots over and over.
+ */
+@ApplicationScoped
+public class PrometheusExporter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    static final long CACHE_MILLIS = 5000;
+
+    private static final double[] QUANTILES = { 0.5, 0.75, 0.95, 0.98, 0.99, 0.999 };
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final MetricRegistry registry;
+
+    private final LongSupplier clock;
+
+    private String rendered;
+
+    private long renderedAt;
+
+    @Inject
+    public PrometheusExporter(MetricsConfiguration metricsConfiguration) {
+        this(metricsConfiguration.getMetricRegistry(), System::currentTimeMillis);
+    }
+
+    PrometheusExporter(MetricRegistry registry, LongSupplier clock) {
+        this.registry = registry;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the metrics in the text exposition format, rendering them again only when the cached text is stale.
+     */
+    public synchronized String scrape() {
+        long now = clock.getAsLong();
+        if (rendered == null || now - renderedAt >= CACHE_MILLIS) {
+            rendered = render();
+            renderedAt = now;
+        }
+        return rendered;
+    }
+
+    private String render() {
+        StringBuilder out = new StringBuilder(16 * 1024);
+        for (Map.Entry<String, Gauge> entry : registry.getGauges().entrySet()) {
+            Object value = entry.getValue().getValue();
+            if (value instanceof Number) {
+                writeGauge(out, name(entry.getKey()), ((Number) value).doubleValue());
+            } else if (value instanceof Boolean) {
+                writeGauge(out, name(entry.getKey()), (Boolean) value ? 1 : 0);
+            }
+        }
+        for (Map.Entry<String, Counter> entry : registry.getCounters().entrySet()) {
+            writeGauge(out, name(entry.getKey()), entry.getValue().getCount());
+        }
+        for (Map.Entry<String, Meter> entry : registry.getMeters().entrySet()) {
+            String name = name(entry.getKey()) + "_total";
+            writeType(out, name, "counter");
+            writeSample(out, name, "", entry.getValue().getCount());
+        }
+        for (Map.Entry<String, Histogram> entry : registry.getHistograms().entrySet()) {
+            Histogram histogram = entry.getValue();
+            writeSummary(out, name(entry.getKey()), histogram.getSnapshot(), histogram.getCount(), 1);
+        }
+        for (Map.Entry<String, Timer> entry : registry.getTimers().entrySet()) {
+            Timer timer = entry.getValue();
+            writeSummary(out, name(entry.getKey()), timer.getSnapshot(), timer.getCount(), NANOS_PER_SECOND);
+        }
+        writeJvm(out);
+        return out.toString();
+    }
+
+    private static void writeJvm(StringBuilder out) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        writeType(out, "jvm_memory_bytes_used", "gauge");
+        writeSample(out, "jvm_memory_bytes_used", label("area", "heap"), memory.getHeapMemoryUsage().getUsed());
+        writeSample(out, "jvm_memory_bytes_used", label("area", "nonheap"), memory.getNonHeapMemoryUsage().getUsed());
+        writeType(out, "jvm_memory_bytes_committed", "gauge");
+        writeSample(
+                out,
+                "jvm_memory_bytes_committed",
+                label("area", "heap"),
+                memory.getHeapMemoryUsage().getCommitted());
+        writeSample(
+                out,
+                "jvm_memory_bytes_committed",
+                label("area", "nonheap"),
+                memory.getNonHeapMemoryUsage().getCommitted());
+        writeType(out, "jvm_memory_bytes_max", "gauge");
+        writeSample(out, "jvm_memory_bytes_max", label("area", "heap"), memory.getHeapMemoryUsage().getMax());
+
+        writeType(out, "jvm_memory_pool_bytes_used", "gauge");
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = pool.getUsage();
+            if (usage != null) {
+                writeSample(out, "jvm_memory_pool_bytes_used", label("pool", pool.getName()), usage.getUsed());
+            }
+        }
+
+        writeType(out, "jvm_gc_collection_seconds", "summary");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            String gcLabel = label("gc", gc.getName());
+            writeSample(out, "jvm_gc_collection_seconds_count", gcLabel, gc.getCollectionCount());
+            writeSample(out, "jvm_gc_collection_seconds_sum", gcLabel, gc.getCollectionTime() / 1000.0);
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        writeGauge(out, "jvm_threads_current", threads.getThreadCount());
+        writeGauge(out, "jvm_threads_daemon", threads.getDaemonThreadCount());
+        writeGauge(out, "jvm_threads_peak", threads.getPeakThreadCount());
+    }
+
+    private static void writeSummary(StringBuilder out, String name, Snapshot snapshot, long count, double divisor) {
+        writeType(out, name, "summary");
+        for (double quantile : QUANTILES) {
+            String quantileLabel = label("quantile", Double.toString(quantile));
+            writeSample(out, name, quantileLabel, snapshot.getValue(quantile) / divisor);
+        }
+        writeSample(out, name + "_count", "", count);
+    }
+
+    private static void writeGauge(StringBuilder out, String name, double value) {
+        writeType(out, name, "gauge");
+        writeSample(out, name, "", value);
+    }
+
+    private static void writeType(StringBuilder out, String name, String type) {
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void writeSample(StringBuilder out, String name, String labels, double value) {
+        out.append(name).append(labels).append(' ').append(format(value)).append('\n');
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        } else if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static String label(String name, String value) {
+        String escaped = value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        return "{" + name + "=\"" + escaped + "\"}";
+    }
+
+    /**
+     * Converts dotted metric name to a valid Prometheus metric name.
+     */
+    static String name(String metricName) {
+        String name = metricName.replaceAll("[^a-zA-Z0-9_:]", "_");
+        return Character.isDigit(name.charAt(0)) ? "_" + name : name;
+    }
+}
@@ -0,0 +1,269 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.brewclient;
+
+import com.codahale.metrics.MetricRegistry;
+import com.redhat.red.build.koji.KojiClient;
+import com.redhat.red.build.koji.KojiClientException;
+import com.redhat.red.build.koji.model.json.KojiJsonConstants;
+import com.redhat.red.build.koji.model.xmlrpc.KojiBuildInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiNVR;
+import com.redhat.red.build.koji.model.xmlrpc.KojiSessionInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiTagInfo;
+
+import org.jboss.pnc.causeway.CausewayException;
+import org.jboss.pnc.causeway.config.CausewayConfig;
+import org.jboss.pnc.causeway.rest.BrewBuild;
+import org.jboss.pnc.causeway.rest.BrewNVR;
+import org.jboss.pnc.pncmetrics.MetricsConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BrewClientImplTest {
+
+    private static final BrewNVR NVR = new BrewNVR("org.foo:bar", "1.0.0", "1");
+    private static final String TAG_PREFIX = "pnc-foo-0.1";
+
+    private final KojiClient koji = mock(KojiClient.class);
+    private final KojiSessionInfo session = mock(KojiSessionInfo.class);
+    private final MetricRegistry registry = new MetricRegistry();
+    private BrewClientImpl brewClient;
+
+    @Before
+    public void before() throws Exception {
+        CausewayConfig config = new CausewayConfig();
+        config.configurationDone();
+        MetricsConfiguration metricsConfiguration = mock(MetricsConfiguration.class);
+        when(metricsConfiguration.getMetricRegistry()).thenReturn(registry);
+        when(koji.login()).thenReturn(session);
+        when(koji.getTag(anyString(), same(session))).thenReturn(mock(KojiTagInfo.class));
+        brewClient = new BrewClientImpl(koji, mock(StorageClient.class), config, metricsConfiguration);
+    }
+
+    @Test
+    public void shouldLoginOnEveryCallWithoutSession() throws Exception {
+        brewClient.findBrewBuildOfNVR(NVR);
+        brewClient.tagsExists(TAG_PREFIX);
+
+        verify(koji, times(2)).login();
+        verify(koji, times(2)).logout(same(session));
+    }
+
+    @Test
+    public void shouldReuseSessionWithinScope() throws Exception {
+        try (BrewSession scope = brewClient.openSession()) {
+            assertNull(brewClient.findBrewBuildOfNVR(NVR));
+            assertTrue(brewClient.tagsExists(TAG_PREFIX));
+            try (BrewSession nested = brewClient.openSession()) {
+                brewClient.findBrewBuildOfNVR(NVR);
+            }
+            verify(koji, never()).logout(any(KojiSessionInfo.class));
+        }
+
+        verify(koji, times(1)).login();
+        verify(koji, times(1)).logout(same(session));
+        verify(koji, times(2)).getBuildInfo(any(KojiNVR.class), same(session));
+        assertEquals(3, registry.counter("causeway.koji.logins.saved").getCount());
+    }
+
+    @Test
+    public void shouldCacheTagExistence() throws Exception {
+        String missingTag = "pnc-missing";
+        when(koji.getTag(startsWith(missingTag), same(session))).thenReturn(null);
+
+        assertTrue(brewClient.tagsExists(TAG_PREFIX));
+        assertTrue(brewClient.tagsExists(TAG_PREFIX));
+        assertFalse(brewClient.tagsExists(missingTag));
+        assertFalse(brewClient.tagsExists(missingTag));
+
+        verify(koji, times(1)).getTag(eq(TAG_PREFIX), same(session));
+        verify(koji, times(1)).getTag(eq(missingTag), same(session));
+        assertEquals(2, registry.counter("causeway.koji.tags.cache.hits").getCount());
+        assertEquals(2, registry.counter("causeway.koji.tags.cache.misses").getCount());
+    }
+
+    @Test
+    public void shouldNotCacheWithZeroTtl() throws Exception {
+        CausewayConfig config = new CausewayConfig();
+        config.setKojiTagCacheTtl(0);
+        config.configurationDone();
+        MetricsConfiguration metricsConfiguration = mock(MetricsConfiguration.class);
+        when(metricsConfiguration.getMetricRegistry()).thenReturn(registry);
+        brewClient = new BrewClientImpl(koji, mock(StorageClient.class), config, metricsConfiguration);
+
+        assertTrue(brewClient.tagsExists(TAG_PREFIX));
+        assertTrue(brewClient.tagsExists(TAG_PREFIX));
+
+        verify(koji, times(2)).getTag(eq(TAG_PREFIX), same(session));
+    }
+
+    @Test
+    public void shouldFindBuildsOfNVRsInOneCall() throws Exception {
+        BrewNVR missing = new BrewNVR("org.foo:baz", "1.0.0", "1");
+        KojiBuildInfo buildInfo = new KojiBuildInfo();
+        buildInfo.setId(11);
+        Map<String, Object> extra = Collections.singletonMap(KojiJsonConstants.BUILD_SYSTEM, BuildTranslatorImpl.PNC);
+        buildInfo.setExtra(extra);
+        when(koji.getBuildInfo(anyListOf(Object.class), same(session))).thenReturn(Arrays.asList(buildInfo, null));
+
+        BatchResult<BrewNVR, BrewBuild> result = brewClient.findBrewBuildsOfNVRs(Arrays.asList(NVR, missing));
+
+        assertEquals(Integer.valueOf(11), result.get(NVR).getId());
+        assertNull(result.get(missing));
+        verify(koji, times(1)).getBuildInfo(eq(Arrays.asList(NVR.getNVR(), missing.getNVR())), same(session));
+    }
+
+    @Test
+    public void shouldFindTaggedBuildsInOneCall() throws Exception {
+        BrewBuild build1 = new BrewBuild(11, NVR);
+        BrewBuild build2 = new BrewBuild(12, new BrewNVR(NVR.getName(), "1.0.1", "1"));
+        Map<String, Object> buildTag = Collections.singletonMap("name", TAG_PREFIX + BrewClientImpl.BUILD_TAG_SUFIX);
+        Map<String, Object> otherTag = Collections.singletonMap("name", "pnc-other-candidate");
+        when(koji.multiCall(eq("listTags"), anyListOf(Object.class), eq(Object.class), same(session)))
+                .thenReturn(
+                        Arrays.<Object>asList(Arrays.asList(otherTag, buildTag), Collections.singletonList(otherTag)));
+
+        Set<BrewBuild> tagged = brewClient.findTaggedBuilds(TAG_PREFIX, Arrays.asList(build1, build2));
+
+        assertEquals(Collections.singleton(build1), tagged);
+        verify(koji, times(1)).multiCall(eq("listTags"), eq(Arrays.asList(11, 12)), eq(Object.class), same(session));
+        verify(koji, never()).listTags(anyInt(), any(KojiSessionInfo.class));
+    }
+
+    @Test
+    public void shouldFailWhenListingTagsOfBuildFaults() throws Exception {
+        BrewBuild build1 = new BrewBuild(11, NVR);
+        BrewBuild build2 = new BrewBuild(12, new BrewNVR(NVR.getName(), "1.0.1", "1"));
+        Map<String, Object> fault = new HashMap<>();
+        fault.put("faultCode", 1000);
+        fault.put("faultString", "no such build");
+        when(koji.multiCall(eq("listTags"), anyListOf(Object.class), eq(Object.class), same(session)))
+                .thenReturn(Arrays.<Object>asList(Collections.emptyList(), fault));
+
+        try {
+            brewClient.findTaggedBuilds(TAG_PREFIX, Arrays.asList(build1, build2));
+            fail("Faulted listTags call should fail the lookup.");
+        } catch (CausewayException ex) {
+            assertTrue(ex.getMessage().contains(build2.getNVR()));
+            assertTrue(ex.getMessage().contains("no such build"));
+        }
+    }
+
+    @Test
+    public void shouldFailWhenListingTagsOfBuildReturnsNothing() throws Exception {
+        BrewBuild build1 = new BrewBuild(11, NVR);
+        when(koji.multiCall(eq("listTags"), anyListOf(Object.class), eq(Object.class), same(session)))
+                .thenReturn(Collections.singletonList(null));
+
+        try {
+            brewClient.findTaggedBuilds(TAG_PREFIX, Collections.singletonList(build1));
+            fail("Missing listTags result should fail the lookup.");
+        } catch (CausewayException ex) {
+            assertTrue(ex.getMessage().contains(build1.getNVR()));
+        }
+    }
+
+    @Test
+    public void shouldTagBuildsInMulticalls() throws Exception {
+        BrewBuild build1 = new BrewBuild(11, NVR);
+        BrewBuild build2 = new BrewBuild(12, new BrewNVR(NVR.getName(), "1.0.1", "1"));
+        String buildTag = TAG_PREFIX + BrewClientImpl.BUILD_TAG_SUFIX;
+        when(koji.multiCall(eq("packageListAdd"), anyListOf(Object.class), eq(Object.class), same(session)))
+                .thenReturn(Collections.singletonList(null));
+        when(koji.multiCall(eq("tagBuild"), anyListOf(Object.class), eq(Object.class), same(session)))
+                .thenReturn(Arrays.asList(null, null));
+
+        BatchResult<BrewBuild, Void> result = brewClient.tagBuilds(TAG_PREFIX, Arrays.asList(build1, build2));
+
+        assertTrue(result.getFailures().isEmpty());
+        verify(koji, times(1)).multiCall(
+                eq("packageListAdd"),
+                eq(Collections.singletonList(Arrays.asList(TAG_PREFIX, NVR.getKojiName()))),
+                eq(Object.class),
+                same(session));
+        verify(koji, times(1)).multiCall(
+                eq("tagBuild"),
+                eq(Arrays.asList(Arrays.asList(buildTag, build1.getNVR()), Arrays.asList(buildTag, build2.getNVR()))),
+                eq(Object.class),
+                same(session));
+        verify(koji, never()).addPackageToTag(anyString(), anyString(), any(KojiSessionInfo.class));
+        verify(koji, never()).tagBuild(anyString(), anyString(), any(KojiSessionInfo.class));
+        verify(koji, times(1)).login();
+    }
+
+    @Test
+    public void shouldFailOnlyFaultedItemsOfMulticall() throws Exception {
+        BrewBuild build1 = new BrewBuild(11, NVR);
+        BrewBuild build2 = new BrewBuild(12, new BrewNVR(NVR.getName(), "1.0.1", "1"));
+        Map<String, Object> fault = new HashMap<>();
+        fault.put("faultCode", 1000);
+        fault.put("faultString", "build already tagged");
+        when(koji.multiCall(eq("packageListAdd"), anyListOf(Object.class), eq(Object.class), same(session)))
+                .thenReturn(Collections.singletonList(null));
+        when(koji.multiCall(eq("tagBuild"), anyListOf(Object.class), eq(Object.class), same(session)))
+                .thenReturn(Arrays.<Object>asList(null, fault));
+
+        BatchResult<BrewBuild, Void> result = brewClient.tagBuilds(TAG_PREFIX, Arrays.asList(build1, build2));
+
+        assertEquals(Collections.singleton(build2), result.getFailures().keySet());
+        assertTrue(result.getFailures().get(build2).getMessage().contains("build already tagged"));
+        verify(koji, never()).tagBuild(anyString(), anyString(), any(KojiSessionInfo.class));
+    }
+
+    @Test
+    public void shouldAttributeFailuresWhenMulticallFails() throws Exception {
+        BrewBuild build1 = new BrewBuild(11, NVR);
+        BrewBuild build2 = new BrewBuild(12, new BrewNVR(NVR.getName(), "1.0.1", "1"));
+        String buildTag = TAG_PREFIX + BrewClientImpl.BUILD_TAG_SUFIX;
+        when(koji.multiCall(eq("packageListAdd"), anyListOf(Object.class), eq(Object.class), same(session)))
+                .thenReturn(Collections.singletonList(null));
+        when(koji.multiCall(eq("tagBuild"), anyListOf(Object.class), eq(Object.class), same(session)))
+                .thenThrow(new KojiClientException("multicall failed"));
+        doThrow(new KojiClientException("tag failed")).when(koji)
+                .tagBuild(eq(buildTag), eq(build2.getNVR()), same(session));
+
+        BatchResult<BrewBuild, Void> result = brewClient.tagBuilds(TAG_PREFIX, Arrays.asList(build1, build2));
+
+        assertEquals(Collections.singleton(build2), result.getFailures().keySet());
+        verify(koji, times(1)).tagBuild(eq(buildTag), eq(build1.getNVR()), same(session));
+        verify(koji, never()).addPackageToTag(anyString(), anyString(), any(KojiSessionInfo.class));
+    }
+}
@@ -1,25 +1,37 @@
 package org.jboss.pnc.causeway.brewclient;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
+import org.jboss.pnc.causeway.config.CausewayConfig;
+import org.jboss.pnc.causeway.pncclient.BuildLog;
+import org.apache.commons.io.FileUtils;
 import org.jboss.pnc.causeway.source.RenamedSources;
+import org.jboss.pnc.pncmetrics.MetricsConfiguration;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -28,6 +40,8 @@ import static com.github.tomakehurst.wiremock.client.WireMock.get;
 import static com.github.tomakehurst.wiremock.client.WireMock.head;
 import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import com.redhat.red.build.koji.model.ImportFile;
 
@@ -86,12 +100,134 @@ public class ImportFileGeneratorTest {
         return new RenamedSources(tempFile, SOURCES_PATH, "01234", null);
     }
 
+    private BuildLog prepareBuildLog() throws IOException {
+        return BuildLog.spool(new ByteArrayInputStream(BUILD_LOG.getBytes(StandardCharsets.UTF_8)));
+    }
+
     @Test
-    public void testStringLogImportFileGenerator() throws MalformedURLException, IOException {
-        final StringLogImportFileGenerator ifg = new StringLogImportFileGenerator(BUILD_LOG, prepareSourcesFile());
+    public void testBuildLogImportFileGenerator() throws MalformedURLException, IOException {
+        final BuildLogImportFileGenerator ifg = new BuildLogImportFileGenerator(prepareBuildLog(), prepareSourcesFile());
         doTestImportFileGenerator(ifg);
     }
 
+    @Test
+    public void testPrefetchingImportFileGenerator() throws MalformedURLException, IOException {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        Timer fetchTimer = new Timer();
+        try (ExternalLogImportFileGenerator ifg = new ExternalLogImportFileGenerator(prepareSourcesFile())) {
+            ifg.addLog(HOST + LOG_LOCATION, LOG_PATH, 6);
+            ifg.prefetch(executor, 4, 1024);
+            ifg.setFetchTimer(fetchTimer);
+            doTestImportFileGenerator(ifg);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(2, fetchTimer.getCount());
+    }
+
+    @Test
+    public void testPooledImportFileGenerator() throws MalformedURLException, IOException {
+        CausewayConfig config = new CausewayConfig();
+        config.configurationDone();
+        MetricsConfiguration metricsConfiguration = mock(MetricsConfiguration.class);
+        when(metricsConfiguration.getMetricRegistry()).thenReturn(new MetricRegistry());
+        StorageClient storageClient = new StorageClient(config, metricsConfiguration);
+        try {
+            ExternalLogImportFileGenerator ifg = new ExternalLogImportFileGenerator(prepareSourcesFile());
+            ifg.addLog(HOST + LOG_LOCATION, LOG_PATH, 6);
+            ifg.setStorageClient(storageClient);
+            doTestImportFileGenerator(ifg);
+
+            ExternalLogImportFileGenerator failing = new ExternalLogImportFileGenerator(prepareSourcesFile());
+            failing.setStorageClient(storageClient);
+            doTestImportFileGeneratorFail(failing);
+        } finally {
+            storageClient.close();
+        }
+    }
+
+    @Test
+    public void testCancelledPrefetchReleasesConnection() throws Exception {
+        stubFor(
+                get(urlEqualTo(FIRST_LOCATION)).willReturn(
+                        aResponse().withStatus(200)
+                                .withHeader("Content-Type", "text/plain")
+                                .withHeader("Content-Length", "14")
+                                .withBody(FIRST_ARTIFACT)
+                                .withFixedDelay(500)));
+        CausewayConfig config = new CausewayConfig();
+        config.configurationDone();
+        MetricRegistry registry = new MetricRegistry();
+        MetricsConfiguration metricsConfiguration = mock(MetricsConfiguration.class);
+        when(metricsConfiguration.getMetricRegistry()).thenReturn(registry);
+        StorageClient storageClient = new StorageClient(config, metricsConfiguration);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            ExternalLogImportFileGenerator ifg = new ExternalLogImportFileGenerator(prepareSourcesFile());
+            ifg.setStorageClient(storageClient);
+            ifg.addUrl("1", HOST + FIRST_LOCATION, FIRST_PATH, FIRST_ARTIFACT.length());
+            ifg.prefetch(executor, 4, 1024);
+            Iterator<Supplier<ImportFile>> it = ifg.iterator();
+            it.next();
+            it.next();
+            ifg.close();
+
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            assertEquals(0, registry.getGauges().get("causeway.storage.pool.leased").getValue());
+        } finally {
+            executor.shutdownNow();
+            storageClient.close();
+        }
+    }
+
+    @Test
+    public void testLocalMountImportFileGenerator() throws MalformedURLException, IOException {
+        Path mount = Files.createTempDirectory("storage");
+        String localArtifact = "Local artifact";
+        Files.createDirectories(mount.resolve(FIRST_PATH).getParent());
+        Files.write(mount.resolve(FIRST_PATH), localArtifact.getBytes(StandardCharsets.UTF_8));
+        CausewayConfig config = new CausewayConfig();
+        config.setStorageLocalMounts(HOST + "/other-api/=/nonexistent, " + HOST + "/api/=" + mount);
+        config.configurationDone();
+        MetricsConfiguration metricsConfiguration = mock(MetricsConfiguration.class);
+        when(metricsConfiguration.getMetricRegistry()).thenReturn(new MetricRegistry());
+        StorageClient storageClient = new StorageClient(config, metricsConfiguration);
+        try {
+            ExternalLogImportFileGenerator ifg = new ExternalLogImportFileGenerator(prepareSourcesFile());
+            ifg.setStorageClient(storageClient);
+            ifg.addUrl("1", HOST + FIRST_LOCATION, FIRST_PATH, FIRST_ARTIFACT.length());
+            ifg.addUrl("2", HOST + SECOND_LOCATION, SECOND_PATH, SECOND_ARTIFACT.length());
+
+            int count = 0;
+            for (Supplier<ImportFile> supp : ifg) {
+                ImportFile file = supp.get();
+                switch (file.getFilePath()) {
+                    case FIRST_PATH:
+                        assertTrue(file instanceof FileImportFile);
+                        assertEquals(localArtifact, toString(file.getStream()));
+                        break;
+                    case SECOND_PATH:
+                        assertFalse(file instanceof FileImportFile);
+                        assertEquals(SECOND_ARTIFACT, toString(file.getStream()));
+                        break;
+                    case SOURCES_PATH:
+                        assertTrue(file instanceof FileImportFile);
+                        assertEquals(25, file.getSize());
+                        assertEquals(SOURCES, toString(file.getStream()).trim());
+                        break;
+                    default:
+                        fail("Unexpected file path: " + file.getFilePath());
+                }
+                count++;
+            }
+            assertEquals(3, count);
+        } finally {
+            storageClient.close();
+            FileUtils.deleteDirectory(mount.toFile());
+        }
+    }
+
     @Test
     public void testExternalLongImportFileGenerator() throws MalformedURLException, IOException {
         final ExternalLogImportFileGenerator ifg = new ExternalLogImportFileGenerator(prepareSourcesFile());
@@ -136,8 +272,8 @@ public class ImportFileGeneratorTest {
     }
 
     @Test
-    public void testStringLogImportFileGeneratorFail() throws MalformedURLException, IOException {
-        final StringLogImportFileGenerator ifg = new StringLogImportFileGenerator(BUILD_LOG, prepareSourcesFile());
+    public void testBuildLogImportFileGeneratorFail() throws MalformedURLException, IOException {
+        final BuildLogImportFileGenerator ifg = new BuildLogImportFileGenerator(prepareBuildLog(), prepareSourcesFile());
         doTestImportFileGeneratorFail(ifg);
     }
 
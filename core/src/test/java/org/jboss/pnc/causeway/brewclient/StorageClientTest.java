@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.brewclient;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.jboss.pnc.causeway.config.CausewayConfig;
+import org.jboss.pnc.pncmetrics.MetricsConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StorageClientTest {
+
+    private static final long BODY_SIZE = 256L * 1024 * 1024;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private ServerSocket server;
+    private StorageClient storageClient;
+
+    @Before
+    public void before() throws Exception {
+        server = new ServerSocket(0);
+        CausewayConfig config = new CausewayConfig();
+        config.configurationDone();
+        MetricsConfiguration metricsConfiguration = mock(MetricsConfiguration.class);
+        when(metricsConfiguration.getMetricRegistry()).thenReturn(new MetricRegistry());
+        storageClient = new StorageClient(config, metricsConfiguration);
+    }
+
+    @After
+    public void after() throws Exception {
+        storageClient.close();
+        server.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldNotDrainHalfReadStream() throws Exception {
+        Future<Long> written = executor.submit(this::serveLargeBody);
+        URL url = new URL("http://localhost:" + server.getLocalPort() + "/large.bin");
+
+        InputStream stream = storageClient.get(url, Collections.emptyMap(), false);
+        byte[] buffer = new byte[4096];
+        int read = 0;
+        while (read < buffer.length) {
+            read += stream.read(buffer, read, buffer.length - read);
+        }
+        stream.close();
+
+        assertTrue("Rest of the body was drained.", written.get(30, TimeUnit.SECONDS) < BODY_SIZE);
+    }
+
+    @Test
+    public void shouldReadWholeStream() throws Exception {
+        String body = "Whole body";
+        executor.submit(() -> serve(body));
+        URL url = new URL("http://localhost:" + server.getLocalPort() + "/small.txt");
+
+        try (InputStream stream = storageClient.get(url, Collections.emptyMap(), false)) {
+            byte[] content = new byte[body.length()];
+            int read = 0;
+            while (read < content.length) {
+                read += stream.read(content, read, content.length - read);
+            }
+            assertEquals(body, new String(content, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Serves one response with a large body and returns how many bytes of it were sent before the client went away.
+     */
+    private long serveLargeBody() throws IOException {
+        try (Socket socket = server.accept()) {
+            readRequest(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            writeHeaders(out, BODY_SIZE);
+            byte[] chunk = new byte[64 * 1024];
+            long written = 0;
+            try {
+                while (written < BODY_SIZE) {
+                    out.write(chunk);
+                    written += chunk.length;
+                }
+                out.flush();
+            } catch (IOException e) {
+                // client closed the connection
+            }
+            return written;
+        }
+    }
+
+    private Void serve(String body) throws IOException {
+        try (Socket socket = server.accept()) {
+            readRequest(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            byte[] content = body.getBytes(StandardCharsets.UTF_8);
+            writeHeaders(out, content.length);
+            out.write(content);
+            out.flush();
+            socket.getInputStream().read(); // wait for the client to close the connection
+        }
+        return null;
+    }
+
+    private static void readRequest(InputStream in) throws IOException {
+        int matched = 0;
+        byte[] end = "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+        while (matched < end.length) {
+            int b = in.read();
+            if (b == -1) {
+                throw new IOException("Unexpected end of request.");
+            }
+            matched = b == end[matched] ? matched + 1 : (b == end[0] ? 1 : 0);
+        }
+    }
+
+    private static void writeHeaders(OutputStream out, long contentLength) throws IOException {
+        String headers = "HTTP/1.1 200 OK\r\nContent-Type: application/octet-stream\r\nContent-Length: " + contentLength
+                + "\r\n\r\n";
+        out.write(headers.getBytes(StandardCharsets.US_ASCII));
+    }
+}
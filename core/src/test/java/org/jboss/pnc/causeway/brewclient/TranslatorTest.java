@@ -37,6 +37,7 @@ import org.jboss.pnc.causeway.CausewayException;
 import org.jboss.pnc.causeway.brewclient.ImportFileGenerator.Artifact;
 import org.jboss.pnc.causeway.config.CausewayConfig;
 import org.jboss.pnc.causeway.pncclient.BuildArtifacts;
+import org.jboss.pnc.causeway.pncclient.BuildLog;
 import org.jboss.pnc.causeway.rest.BrewNVR;
 import org.jboss.pnc.causeway.source.RenamedSources;
 import org.jboss.pnc.causeway.source.SourceRenamer;
@@ -46,12 +47,15 @@ import org.junit.Test;
 import static org.assertj.core.api.Assertions.anyOf;
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
@@ -61,6 +65,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 /**
  *
@@ -74,6 +79,7 @@ public class TranslatorTest {
     private static final ObjectMapper mapper = new ObjectMapper();
     private static final String SOURCES_PATH = "sources.tar.gz";
     private static final String SOURCES = "Burn this after reading!";
+    private static final long GB = 1024L * 1024L * 1024L;
 
     @BeforeClass
     public static void setUp() {
@@ -129,7 +135,7 @@ public class TranslatorTest {
                 build,
                 artifacts,
                 sources,
-                "foo-bar-logs",
+                prepareBuildLog(),
                 "joe");
 
         // Then
@@ -161,6 +167,87 @@ public class TranslatorTest {
                 .areExactly(1, buildLog);
     }
 
+    @Test
+    public void testLargeArtifactSizes() throws Exception {
+        String groupId = "org.jboss.pnc";
+        String artifactId = "parent";
+        String version = "2.0.0";
+        String json = readResponseBodyFromTemplate("build-dto-1.json");
+        org.jboss.pnc.dto.Build build = mapper.readValue(json, org.jboss.pnc.dto.Build.class);
+
+        BuildArtifacts artifacts = new BuildArtifacts();
+        BuildArtifacts.PncArtifact distribution = newArtifact(
+                "2371",
+                "org.apache.geronimo.specs",
+                "geronimo-annotation_1.0_spec",
+                "1.1.1.redhat-1",
+                "zip",
+                "dist",
+                5 * GB);
+        artifacts.buildArtifacts.add(distribution);
+        artifacts.dependencies.add(newArtifact("7", "org.apache.maven", "maven-project", "2.0.6", "zip", null, 3 * GB));
+
+        Path sparse = Files.createTempFile("sources", ".tar.gz");
+        try {
+            try (RandomAccessFile file = new RandomAccessFile(sparse.toFile(), "rw")) {
+                file.setLength(3 * GB); // sparse, doesn't take the disk space
+            }
+            RenamedSources sources = new RenamedSources(
+                    sparse,
+                    SOURCES_PATH,
+                    "01234",
+                    new RenamedSources.ArtifactType(groupId, artifactId, version));
+            assertEquals(3 * GB, sources.getSize());
+
+            KojiImport out = bt.translate(
+                    new BrewNVR(groupId + ":" + artifactId, version, "1"),
+                    build,
+                    artifacts,
+                    sources,
+                    prepareBuildLog(),
+                    "joe");
+
+            assertThat(out.getOutputs()).filteredOn(bo -> bo.getFilename().equals(distribution.deployPath))
+                    .extracting("fileSize")
+                    .containsExactly(5 * GB);
+            assertThat(out.getOutputs()).filteredOn(bo -> bo.getFilename().equals(SOURCES_PATH))
+                    .extracting("fileSize")
+                    .containsExactly(3 * GB);
+            assertThat(out.getBuildRoots()).flatExtracting("components")
+                    .extracting("fileSize")
+                    .containsExactly(3 * GB);
+
+            ImportFileGenerator importFiles = bt.getImportFiles(artifacts, sources, prepareBuildLog());
+            assertEquals(8 * GB + "foo-bar-logs".length(), importFiles.getTotalSize());
+        } finally {
+            Files.deleteIfExists(sparse);
+        }
+    }
+
+    @Test
+    public void testUnknownArtifactSize() throws Exception {
+        String json = readResponseBodyFromTemplate("build-dto-1.json");
+        org.jboss.pnc.dto.Build build = mapper.readValue(json, org.jboss.pnc.dto.Build.class);
+        BuildArtifacts artifacts = new BuildArtifacts();
+        artifacts.buildArtifacts.add(
+                newArtifact(
+                        "2370",
+                        "org.apache.geronimo.specs",
+                        "geronimo-annotation_1.0_spec",
+                        "1.1.1.redhat-1",
+                        "jar",
+                        null,
+                        BuildArtifacts.UNKNOWN_SIZE));
+
+        try {
+            BrewNVR nvr = new BrewNVR("org.jboss.pnc:parent", "2.0.0", "1");
+            bt.translate(nvr, build, artifacts, null, prepareBuildLog(), "joe");
+            fail("Artifact with unknown size must not be imported.");
+        } catch (CausewayException ex) {
+            assertThat(ex.getMessage()).contains("geronimo-annotation_1.0_spec-1.1.1.redhat-1.jar");
+        }
+    }
+
     @Test
     public void testReadNpmBuildArtifacts() throws Exception {
         // given
@@ -187,7 +274,7 @@ public class TranslatorTest {
                 build,
                 artifacts,
                 sources,
-                "foo-bar-logs",
+                prepareBuildLog(),
                 "joe");
 
         // Then
@@ -247,7 +334,7 @@ public class TranslatorTest {
                 build,
                 artifacts,
                 sources,
-                "foo-bar-logs",
+                prepareBuildLog(),
                 "joe");
     }
 
@@ -350,6 +437,10 @@ public class TranslatorTest {
         return new RenamedSources(tempFile, SOURCES_PATH, "01234", artifactType);
     }
 
+    private BuildLog prepareBuildLog() throws IOException {
+        return BuildLog.spool(new ByteArrayInputStream("foo-bar-logs".getBytes(StandardCharsets.UTF_8)));
+    }
+
     private static org.jboss.pnc.causeway.pncclient.BuildArtifacts.PncArtifact newArtifact(
             String id,
             String groupId,
@@ -366,6 +457,17 @@ public class TranslatorTest {
             String version,
             String type,
             String specifier) {
+        return newArtifact(id, groupId, artifactId, version, type, specifier, 13245);
+    }
+
+    private static BuildArtifacts.PncArtifact newArtifact(
+            String id,
+            String groupId,
+            String artifactId,
+            String version,
+            String type,
+            String specifier,
+            long size) {
         final String filename;
         final String identifier;
         if (specifier == null) {
@@ -382,7 +484,7 @@ public class TranslatorTest {
                 filename,
                 "bedf8af1b107b36c72f52009e6fcc768",
                 "http://ulozto.cz/api/hosted/build_geronimo-annotation_1-0_spec-1-1-1_20160804.0721/" + path,
-                13245,
+                size,
                 ArtifactQuality.NEW);
     }
 
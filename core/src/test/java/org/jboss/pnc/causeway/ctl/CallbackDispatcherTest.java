@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.ctl;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+
+import org.jboss.pnc.api.dto.Request;
+import org.jboss.pnc.causeway.config.CausewayConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CallbackDispatcherTest {
+
+    @Rule
+    public WireMockRule wireMockRule = (new WireMockRule(8081));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final Request CALLBACK_TARGET = new Request(
+            Request.Method.POST,
+            URI.create("http://localhost:8081/callback"));
+
+    private final CausewayConfig config = mock(CausewayConfig.class);
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    @Before
+    public void before() {
+        when(config.getCallbackConnections()).thenReturn(1);
+        when(config.getCallbackQueueSize()).thenReturn(10);
+        when(config.getCallbackRetries()).thenReturn(3);
+        when(config.getCallbackRetryDelay()).thenReturn(0);
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldRetryFailedCallback() throws InterruptedException {
+        stubFor(
+                post(urlEqualTo("/callback")).inScenario("retry")
+                        .whenScenarioStateIs(Scenario.STARTED)
+                        .willReturn(aResponse().withStatus(503))
+                        .willSetStateTo("available"));
+        stubFor(
+                post(urlEqualTo("/callback")).inScenario("retry")
+                        .whenScenarioStateIs("available")
+                        .willReturn(aResponse().withStatus(200)));
+        CallbackDispatcher dispatcher = new CallbackDispatcher(config, executor);
+
+        dispatcher.post(CALLBACK_TARGET, Collections.singletonMap("status", "SUCCESS"));
+        awaitDelivery(dispatcher);
+
+        WireMock.verify(2, postRequestedFor(urlEqualTo("/callback")));
+    }
+
+    @Test
+    public void shouldNotRetryRejectedCallback() throws InterruptedException {
+        stubFor(post(urlEqualTo("/callback")).willReturn(aResponse().withStatus(400)));
+        CallbackDispatcher dispatcher = new CallbackDispatcher(config, executor);
+
+        dispatcher.post(CALLBACK_TARGET, Collections.singletonMap("status", "SUCCESS"));
+        awaitDelivery(dispatcher);
+
+        WireMock.verify(1, postRequestedFor(urlEqualTo("/callback")));
+    }
+
+    @Test
+    public void shouldResendPersistedCallbacks() throws InterruptedException {
+        stubFor(post(urlEqualTo("/callback")).willReturn(aResponse().withStatus(200)));
+        when(config.getCallbackDir()).thenReturn(folder.getRoot().getAbsolutePath());
+        ScheduledExecutorService stopped = Executors.newSingleThreadScheduledExecutor();
+        stopped.shutdown();
+        CallbackDispatcher dispatcher = new CallbackDispatcher(config, stopped);
+
+        dispatcher.post(CALLBACK_TARGET, Collections.singletonMap("status", "SUCCESS"));
+        File[] persisted = folder.getRoot().listFiles();
+        assertEquals(1, persisted.length);
+        WireMock.verify(0, postRequestedFor(urlEqualTo("/callback")));
+
+        CallbackDispatcher restarted = new CallbackDispatcher(config, executor);
+        awaitDelivery(restarted);
+
+        String body = "{\"status\":\"SUCCESS\"}";
+        WireMock.verify(1, postRequestedFor(urlEqualTo("/callback")).withRequestBody(WireMock.equalToJson(body)));
+        assertEquals(0, folder.getRoot().listFiles().length);
+    }
+
+    private static void awaitDelivery(CallbackDispatcher dispatcher) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dispatcher.getPending() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, dispatcher.getPending());
+    }
+}
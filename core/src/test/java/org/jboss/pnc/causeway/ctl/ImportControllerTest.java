@@ -34,13 +34,16 @@ import org.jboss.pnc.api.causeway.dto.push.NpmBuiltArtifact;
 import org.jboss.pnc.api.dto.Request;
 import org.jboss.pnc.causeway.CausewayException;
 import org.jboss.pnc.causeway.CausewayFailure;
+import org.jboss.pnc.causeway.brewclient.BatchResult;
 import org.jboss.pnc.causeway.brewclient.BrewClient;
 import org.jboss.pnc.causeway.brewclient.BuildTranslatorImpl;
 import org.jboss.pnc.causeway.brewclient.ExternalLogImportFileGenerator;
 import org.jboss.pnc.causeway.config.CausewayConfig;
+import org.jboss.pnc.causeway.util.ImportMetrics;
 import org.jboss.pnc.pncmetrics.MetricsConfiguration;
 import org.jboss.pnc.causeway.rest.BrewBuild;
 import org.jboss.pnc.causeway.rest.BrewNVR;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -48,6 +51,7 @@ import org.mockito.InjectMocks;
 import static org.junit.Assert.assertEquals;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -56,6 +60,11 @@ import java.lang.reflect.Modifier;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.post;
@@ -73,6 +82,7 @@ import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.same;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.skyscreamer.jsonassert.JSONCompareMode.LENIENT;
@@ -118,9 +128,14 @@ public class ImportControllerTest {
     @Mock
     public MetricRegistry metricRegistry;
 
+    @Spy
+    private ImportMetrics importMetrics = new ImportMetrics(new MetricRegistry());
+
     @InjectMocks
     private ImportControllerImpl importController;
 
+    private final ScheduledExecutorService callbackExecutor = Executors.newSingleThreadScheduledExecutor();
+
     @Before
     public void before() throws Exception {
         MockitoAnnotations.initMocks(this);
@@ -139,6 +154,19 @@ public class ImportControllerTest {
         mapper.registerSubtypes(MavenBuild.class, NpmBuild.class, MavenBuiltArtifact.class, NpmBuiltArtifact.class);
 
         stubFor(post(urlEqualTo("/callback")).willReturn(aResponse().withStatus(200)));
+
+        when(causewayConfig.getCallbackConnections()).thenReturn(1);
+        when(causewayConfig.getCallbackQueueSize()).thenReturn(10);
+        when(causewayConfig.getCallbackRetries()).thenReturn(0);
+        when(causewayConfig.getCallbackRetryDelay()).thenReturn(0);
+        Field dispatcher = ImportControllerImpl.class.getDeclaredField("callbackDispatcher");
+        dispatcher.setAccessible(true);
+        dispatcher.set(importController, new CallbackDispatcher(causewayConfig, callbackExecutor));
+    }
+
+    @After
+    public void after() {
+        callbackExecutor.shutdownNow();
     }
 
     private Build getMavenBuild() throws IOException {
@@ -158,6 +186,27 @@ public class ImportControllerTest {
         doReturn(true).when(brewClient).tagsExists(eq(TAG_PREFIX));
         when(brewClient.getBuildUrl(anyInt())).then(inv -> KOJI_BUILD_URL + inv.getArguments()[0]);
         doNothing().when(brewClient).tagBuild(eq(TAG_PREFIX), any());
+        // batched lookups answer from the mocked single lookups
+        when(brewClient.findBrewBuildsOfNVRs(any())).then(inv -> {
+            BatchResult<BrewNVR, BrewBuild> result = new BatchResult<>();
+            for (Object nvr : (Collection<?>) inv.getArguments()[0]) {
+                try {
+                    result.put((BrewNVR) nvr, brewClient.findBrewBuildOfNVR((BrewNVR) nvr));
+                } catch (CausewayException ex) {
+                    result.fail((BrewNVR) nvr, ex);
+                }
+            }
+            return result;
+        });
+        when(brewClient.findTaggedBuilds(eq(TAG_PREFIX), any())).then(inv -> {
+            Set<BrewBuild> result = new HashSet<>();
+            for (Object build : (Collection<?>) inv.getArguments()[1]) {
+                if (brewClient.isBuildTagged(TAG_PREFIX, (BrewBuild) build)) {
+                    result.add((BrewBuild) build);
+                }
+            }
+            return result;
+        });
     }
 
     private void mockTranslator() throws CausewayException {
@@ -211,6 +260,31 @@ public class ImportControllerTest {
         verifySuccess("Build was previously imported. Reimported again with revision 2 and with id 12.", "12");
     }
 
+    @Test
+    public void testReImportBuildWhenManyTaggedImportsExist() throws Exception {
+        // Test setup
+        mockBrew();
+        mockTranslator();
+
+        // Mock existing Brew builds, more than one batch of revisions
+        for (int revision = 1; revision <= 12; revision++) {
+            mockExistingBuild(100 + revision, new BrewNVR(BUILD_NAME, BUILD_VERSION, String.valueOf(revision)), true);
+        }
+        BrewNVR nvr13 = new BrewNVR(BUILD_NAME, BUILD_VERSION, "13");
+        KojiImport kojiImport = mock(KojiImport.class);
+        doReturn(kojiImport).when(translator).translate(eq(nvr13), any(), any(), any());
+        BrewBuild brewBuild = new BrewBuild(113, nvr13);
+        doReturn(brewBuild).when(brewClient).importBuild(eq(nvr13), same(kojiImport), same(IMPORT_FILE_GENERATOR));
+
+        // Run import
+        importController.importBuild(getMavenBuild(), CALLBACK_TARGET, USERNAME, true);
+
+        // Verify
+        verify(brewClient, times(2)).findBrewBuildsOfNVRs(any());
+        verify(brewClient).tagBuild(eq(TAG_PREFIX), same(brewBuild));
+        verifySuccess("Build was previously imported. Reimported again with revision 13 and with id 113.", "113");
+    }
+
     @Test
     public void testImportBuildWhenPreviousTaggedImportExists() throws Exception {
         // Test setup
@@ -366,6 +440,7 @@ public class ImportControllerTest {
                 + log + "\"," + "\"brewBuildId\":" + id + "," + "\"brewBuildUrl\":\"" + KOJI_BUILD_URL + id + "\""
                 + "}";
 
+        awaitCallback();
         WireMock.verify(
                 postRequestedFor(urlEqualTo("/callback")).withRequestBody(WireMock.equalToJson(result, LENIENT)));
     }
@@ -374,6 +449,7 @@ public class ImportControllerTest {
         String result = "{" + "\"id\":null," + "\"buildId\":\"61\"," + "\"status\":\"FAILED\"," + "\"message\":\""
                 + message + "\"," + "\"brewBuildId\":null," + "\"brewBuildUrl\":null" + "}";
 
+        awaitCallback();
         WireMock.verify(
                 postRequestedFor(urlEqualTo("/callback")).withRequestBody(WireMock.equalToJson(result, LENIENT)));
     }
@@ -382,10 +458,27 @@ public class ImportControllerTest {
         String result = "{" + "\"id\":null," + "\"buildId\":\"61\"," + "\"status\":\"SYSTEM_ERROR\"," + "\"message\":\""
                 + message + "\"," + "\"brewBuildId\":null," + "\"brewBuildUrl\":null" + "}";
 
+        awaitCallback();
         WireMock.verify(
                 postRequestedFor(urlEqualTo("/callback")).withRequestBody(WireMock.equalToJson(result, LENIENT)));
     }
 
+    /**
+     * Callbacks are sent in the background, wait until the callback arrives.
+     */
+    private void awaitCallback() {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (WireMock.findAll(postRequestedFor(urlEqualTo("/callback"))).isEmpty()
+                && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
     private String readResponseBodyFromTemplate(String name) throws IOException {
         String folderName = getClass().getPackage().getName().replace(".", "/");
         try (InputStream inputStream = getContextClassLoader().getResourceAsStream(folderName + "/" + name)) {
@@ -0,0 +1,185 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.ctl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.apache.commons.io.IOUtils;
+import org.jboss.pnc.api.causeway.dto.push.Build;
+import org.jboss.pnc.api.causeway.dto.push.MavenBuild;
+import org.jboss.pnc.api.causeway.dto.push.MavenBuiltArtifact;
+import org.jboss.pnc.api.causeway.dto.untag.TaggedBuild;
+import org.jboss.pnc.api.dto.Request;
+import org.jboss.pnc.causeway.config.CausewayConfig;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ImportQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final CausewayConfig config = mock(CausewayConfig.class);
+
+    private final List<Runnable> scheduled = new ArrayList<>();
+
+    private final List<String> processed = new ArrayList<>();
+
+    private final ImportController controller = new ImportController() {
+        @Override
+        public void importBuild(Build build, Request callback, String username, boolean reimport) {
+            processed.add(build.getTagPrefix() + ":" + build.getExternalBuildID());
+        }
+
+        @Override
+        public void untagBuild(TaggedBuild build, Request callback) {
+            processed.add(build.getTagPrefix() + ":untag");
+        }
+    };
+
+    @Before
+    public void before() {
+        mapper.registerSubtypes(MavenBuild.class, MavenBuiltArtifact.class);
+        when(config.getImportWorkers()).thenReturn(1);
+        when(config.getImportQueueSize()).thenReturn(10);
+    }
+
+    @Test
+    public void shouldTakeJobsFromTagsInTurn() throws IOException {
+        ImportQueue queue = new ImportQueue(controller, config, scheduled::add);
+
+        assertTrue(queue.submit(importJob("tag-a", 1)));
+        assertTrue(queue.submit(importJob("tag-a", 2)));
+        assertTrue(queue.submit(importJob("tag-a", 3)));
+        assertTrue(queue.submit(importJob("tag-b", 4)));
+        runScheduled();
+
+        assertEquals(4, processed.size());
+        assertEquals("tag-a:1", processed.get(0));
+        assertEquals("tag-a:2", processed.get(1));
+        assertEquals("tag-b:4", processed.get(2));
+        assertEquals("tag-a:3", processed.get(3));
+    }
+
+    @Test
+    public void shouldRejectJobsWhenFull() throws IOException {
+        when(config.getImportQueueSize()).thenReturn(2);
+        ImportQueue queue = new ImportQueue(controller, config, scheduled::add);
+
+        assertTrue(queue.submit(importJob("tag-a", 1))); // running
+        assertTrue(queue.submit(importJob("tag-a", 2)));
+        assertTrue(queue.submit(importJob("tag-a", 3)));
+        assertFalse(queue.submit(importJob("tag-a", 4)));
+        runScheduled();
+
+        assertEquals(3, processed.size());
+        assertTrue(queue.submit(importJob("tag-a", 5)));
+    }
+
+    @Test
+    public void shouldResumePersistedJobs() throws IOException {
+        when(config.getImportQueueDir()).thenReturn(folder.getRoot().getAbsolutePath());
+        ImportQueue queue = new ImportQueue(controller, config, r -> {});
+        queue.submit(importJob("tag-a", 1));
+        queue.submit(importJob("tag-b", 2));
+        TaggedBuild taggedBuild = mapper
+                .readValue("{\"tagPrefix\": \"tag-b\", \"brewBuildId\": 42}", TaggedBuild.class);
+        queue.submit(ImportJob.untagBuild(taggedBuild, null));
+
+        ImportQueue restarted = new ImportQueue(controller, config, scheduled::add);
+        assertEquals(2, restarted.getWaiting());
+        runScheduled();
+
+        assertEquals(3, processed.size());
+        assertEquals("tag-a:1", processed.get(0));
+        assertEquals("tag-b:2", processed.get(1));
+        assertEquals("tag-b:untag", processed.get(2));
+        assertEquals(0, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void shouldRetryJobsRejectedByExecutor() throws IOException {
+        when(config.getImportWorkers()).thenReturn(2);
+        ScheduledExecutorService retryScheduler = mock(ScheduledExecutorService.class);
+        AtomicBoolean rejecting = new AtomicBoolean(true);
+        Executor executor = r -> {
+            if (rejecting.get()) {
+                throw new RejectedExecutionException("Executor is saturated");
+            }
+            scheduled.add(r);
+        };
+        ImportQueue queue = new ImportQueue(controller, config, executor, retryScheduler);
+
+        assertTrue(queue.submit(importJob("tag-a", 1)));
+        assertTrue(queue.submit(importJob("tag-a", 2)));
+        assertEquals(2, queue.getWaiting());
+        assertEquals(0, queue.getRunning());
+
+        ArgumentCaptor<Runnable> retry = ArgumentCaptor.forClass(Runnable.class);
+        verify(retryScheduler, times(1)).schedule(retry.capture(), anyLong(), eq(TimeUnit.SECONDS));
+
+        rejecting.set(false);
+        retry.getValue().run();
+        runScheduled();
+
+        assertEquals(2, processed.size());
+        assertEquals("tag-a:1", processed.get(0));
+        assertEquals("tag-a:2", processed.get(1));
+        assertEquals(0, queue.getWaiting());
+    }
+
+    private void runScheduled() {
+        while (!scheduled.isEmpty()) {
+            scheduled.remove(0).run();
+        }
+    }
+
+    private ImportJob importJob(String tag, int id) throws IOException {
+        String json;
+        try (InputStream in = getClass().getResourceAsStream("build.json")) {
+            json = IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+        json = json.replace("\"pnc-foo-0.1\"", "\"" + tag + "\"")
+                .replace("\"externalBuildID\": 61", "\"externalBuildID\": " + id);
+        return ImportJob.importBuild(mapper.readValue(json, Build.class), null, "joe", false);
+    }
+}
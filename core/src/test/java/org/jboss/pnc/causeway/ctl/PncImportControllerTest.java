@@ -23,13 +23,17 @@ import com.redhat.red.build.koji.model.json.KojiImport;
 
 import org.jboss.pnc.api.dto.Request;
 import org.jboss.pnc.causeway.CausewayException;
+import org.jboss.pnc.causeway.CausewayFailure;
 import org.jboss.pnc.causeway.bpmclient.BPMClient;
+import org.jboss.pnc.causeway.brewclient.BatchResult;
 import org.jboss.pnc.causeway.brewclient.BrewClient;
 import org.jboss.pnc.causeway.brewclient.BuildTranslatorImpl;
-import org.jboss.pnc.causeway.brewclient.StringLogImportFileGenerator;
+import org.jboss.pnc.causeway.brewclient.BuildLogImportFileGenerator;
 import org.jboss.pnc.causeway.config.CausewayConfig;
+import org.jboss.pnc.causeway.util.ImportMetrics;
 import org.jboss.pnc.pncmetrics.MetricsConfiguration;
 import org.jboss.pnc.causeway.pncclient.BuildArtifacts;
+import org.jboss.pnc.causeway.pncclient.BuildLog;
 import org.jboss.pnc.causeway.pncclient.PncClient;
 import org.jboss.pnc.causeway.rest.BrewBuild;
 import org.jboss.pnc.causeway.rest.BrewNVR;
@@ -37,6 +41,7 @@ import org.jboss.pnc.causeway.rest.pnc.BuildImportResultRest;
 import org.jboss.pnc.causeway.rest.pnc.BuildImportStatus;
 import org.jboss.pnc.causeway.rest.pnc.MilestoneReleaseResultRest;
 import org.jboss.pnc.causeway.rest.pnc.ReleaseStatus;
+import org.jboss.pnc.constants.MDCKeys;
 import org.jboss.pnc.dto.Build;
 import org.jboss.pnc.dto.BuildConfigurationRevision;
 import org.jboss.pnc.dto.Environment;
@@ -46,16 +51,25 @@ import org.jboss.pnc.enums.ArtifactQuality;
 import org.jboss.pnc.enums.BuildStatus;
 import org.jboss.pnc.enums.BuildType;
 import org.jboss.pnc.enums.SystemImageType;
+import org.junit.After;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.slf4j.MDC;
 
+import javax.enterprise.concurrent.ManagedExecutorService;
+
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
@@ -64,6 +78,12 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.jboss.pnc.constants.Attributes.BUILD_BREW_NAME;
 import static org.jboss.pnc.constants.Attributes.BUILD_BREW_VERSION;
@@ -77,7 +97,6 @@ import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.doAnswer;
-import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.eq;
@@ -101,10 +120,13 @@ public class PncImportControllerTest {
 
     private static final BrewNVR NVR = new BrewNVR(BREW_BUILD_NAME, BREW_BUILD_VERSION, "1");
 
-    private static final StringLogImportFileGenerator IMPORT_FILE_GENERATOR = mock(StringLogImportFileGenerator.class);
+    private static final BuildLogImportFileGenerator IMPORT_FILE_GENERATOR = mock(BuildLogImportFileGenerator.class);
     private static final KojiImport KOJI_IMPORT = mock(KojiImport.class);
 
     private static final Random generator = new Random();
+
+    private static final String MDC_KEY = "test-context";
+
     @Mock
     private PncClient pncClient;
     @Mock
@@ -123,9 +145,14 @@ public class PncImportControllerTest {
     @Mock
     public BuildTranslatorImpl translator;
 
+    @Spy
+    private ImportMetrics importMetrics = new ImportMetrics(new MetricRegistry());
+
     @InjectMocks
     private PncImportControllerImpl importController;
 
+    private ExecutorService pool;
+
     @Before
     public void before() throws Exception {
         MockitoAnnotations.initMocks(this);
@@ -140,6 +167,13 @@ public class PncImportControllerTest {
         // importController = new PncImportControllerImpl(pncClient, brewClient, bpmClient, translator, causewayConfig);
     }
 
+    @After
+    public void after() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
     private void mockPNC(Integer milestoneId, BuildType buildType) throws CausewayException {
         mockPNC(milestoneId, String.valueOf(generator.nextInt()), buildType);
     }
@@ -165,7 +199,9 @@ public class PncImportControllerTest {
         doReturn(buildRecords).when(pncClient).findBuildsOfProductMilestone(eq(milestoneId));
         doReturn(TAG_PREFIX).when(pncClient).getTagForMilestone(eq(milestoneId));
         doReturn(buildArtifacts).when(pncClient).findBuildArtifacts(eq(buildId));
-        doAnswer(i -> "Log of build " + i.getArguments()[0]).when(pncClient).getBuildLog(anyString());
+        doAnswer(i -> BuildLog.spool(new ByteArrayInputStream(("Log of build " + i.getArguments()[0]).getBytes())))
+                .when(pncClient)
+                .getBuildLog(anyString());
     }
 
     private Environment createEnvironment(BuildType buildType) {
@@ -200,12 +236,13 @@ public class PncImportControllerTest {
 
     private void mockBrew() throws CausewayException {
         doReturn(true).when(brewClient).tagsExists(eq(TAG_PREFIX));
-        doNothing().when(brewClient).tagBuild(eq(TAG_PREFIX), any());
+        doReturn(new BatchResult<>()).when(brewClient).findBrewBuildsOfNVRs(any());
+        doReturn(new BatchResult<>()).when(brewClient).tagBuilds(eq(TAG_PREFIX), any());
     }
 
     private void mockTranslator() throws CausewayException {
-        doReturn(KOJI_IMPORT).when(translator).translate(eq(NVR), any(), any(), any(), anyString(), any());
-        doReturn(IMPORT_FILE_GENERATOR).when(translator).getImportFiles(any(), any(), anyString());
+        doReturn(KOJI_IMPORT).when(translator).translate(eq(NVR), any(), any(), any(), any(), any());
+        doReturn(IMPORT_FILE_GENERATOR).when(translator).getImportFiles(any(), any(), any());
         doReturn("/path/to/sources.tar.gz").when(translator).getSourcesDeployPath(any(), any());
     }
 
@@ -218,7 +255,9 @@ public class PncImportControllerTest {
         mockBrew();
 
         // Mock existing Brew build
-        doReturn(new BrewBuild(11, NVR)).when(brewClient).findBrewBuildOfNVR(eq(NVR));
+        BatchResult<BrewNVR, BrewBuild> existing = new BatchResult<>();
+        existing.put(NVR, new BrewBuild(11, NVR));
+        doReturn(existing).when(brewClient).findBrewBuildsOfNVRs(any());
 
         // Run import
         importController.importMilestone(milestoneId, CALLBACK_TARGET, CALLBACK_ID, USERNAME);
@@ -308,7 +347,9 @@ public class PncImportControllerTest {
         mockBrew();
 
         // Mock exception from Brew Client
-        doThrow(new CausewayException(exceptionMessage)).when(brewClient).findBrewBuildOfNVR(eq(NVR));
+        BatchResult<BrewNVR, BrewBuild> existing = new BatchResult<>();
+        existing.fail(NVR, new CausewayException(exceptionMessage));
+        doReturn(existing).when(brewClient).findBrewBuildsOfNVRs(any());
 
         // Run import
         importController.importMilestone(milestoneId, CALLBACK_TARGET, CALLBACK_ID, USERNAME);
@@ -328,6 +369,35 @@ public class PncImportControllerTest {
                 buildImportResultRest.getErrorMessage().contains(exceptionMessage));
     }
 
+    @Test
+    public void testImportProductReleaseWhereTaggingFails() throws Exception {
+        Integer milestoneId = generator.nextInt();
+        String buildId = String.valueOf(generator.nextInt());
+        String exceptionMessage = "Tagging failed";
+
+        // Test setup
+        mockPNC(milestoneId, buildId, BuildType.MVN);
+        mockBrew();
+
+        BrewBuild brewBuild = new BrewBuild(11, NVR);
+        BatchResult<BrewNVR, BrewBuild> existing = new BatchResult<>();
+        existing.put(NVR, brewBuild);
+        doReturn(existing).when(brewClient).findBrewBuildsOfNVRs(any());
+        BatchResult<BrewBuild, Void> tagged = new BatchResult<>();
+        tagged.fail(brewBuild, new CausewayFailure(exceptionMessage));
+        doReturn(tagged).when(brewClient).tagBuilds(eq(TAG_PREFIX), any());
+
+        // Run import
+        importController.importMilestone(milestoneId, CALLBACK_TARGET, CALLBACK_ID, USERNAME);
+
+        // Verify
+        MilestoneReleaseResultRest result = verifyError(false);
+        BuildImportResultRest buildImportResultRest = result.getBuilds().get(0);
+        assertEquals(buildId, buildImportResultRest.getBuildRecordId());
+        assertEquals(BuildImportStatus.ERROR, buildImportResultRest.getStatus());
+        assertEquals(exceptionMessage, buildImportResultRest.getErrorMessage());
+    }
+
     @Test
     public void testImportProductReleaseWithArtifactImportErrors() throws Exception {
         Integer milestoneId = generator.nextInt();
@@ -418,6 +488,188 @@ public class PncImportControllerTest {
         assertEquals("0.1.18.redhat_1", nvr.getVersion());
     }
 
+    @Test
+    public void testParallelImportKeepsBuildOrder() throws Exception {
+        Integer milestoneId = generator.nextInt();
+        List<String> buildIds = mockParallelImport(milestoneId, 5, 3);
+        doAnswer(i -> {
+            String buildId = (String) i.getArguments()[1];
+            Thread.sleep((buildIds.size() - buildIds.indexOf(buildId)) * 20L); // later builds finish first
+            return successResult(buildId);
+        }).when(brewClient).importBuild(eq(NVR), anyString(), same(KOJI_IMPORT), same(IMPORT_FILE_GENERATOR));
+
+        importController.importMilestone(milestoneId, CALLBACK_TARGET, CALLBACK_ID, USERNAME);
+
+        List<BuildImportResultRest> results = verifyParallelResult(true);
+        for (int i = 0; i < buildIds.size(); i++) {
+            assertEquals(buildIds.get(i), results.get(i).getBuildRecordId());
+        }
+    }
+
+    @Test
+    public void testParallelImportRespectsParallelism() throws Exception {
+        Integer milestoneId = generator.nextInt();
+        List<String> buildIds = mockParallelImport(milestoneId, 6, 2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        doAnswer(i -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(50);
+                return successResult((String) i.getArguments()[1]);
+            } finally {
+                running.decrementAndGet();
+            }
+        }).when(brewClient).importBuild(eq(NVR), anyString(), same(KOJI_IMPORT), same(IMPORT_FILE_GENERATOR));
+
+        importController.importMilestone(milestoneId, CALLBACK_TARGET, CALLBACK_ID, USERNAME);
+
+        assertEquals(buildIds.size(), verifyParallelResult(true).size());
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    public void testParallelImportPropagatesMdc() throws Exception {
+        Integer milestoneId = generator.nextInt();
+        List<String> buildIds = mockParallelImport(milestoneId, 3, 3);
+        Map<String, String> workerContexts = new ConcurrentHashMap<>();
+        doAnswer(i -> {
+            String buildId = (String) i.getArguments()[1];
+            workerContexts.put(buildId, MDC.get(MDC_KEY) + "/" + MDC.get(MDCKeys.BUILD_ID_KEY));
+            return successResult(buildId);
+        }).when(brewClient).importBuild(eq(NVR), anyString(), same(KOJI_IMPORT), same(IMPORT_FILE_GENERATOR));
+
+        MDC.put(MDC_KEY, "milestone-context");
+        Assume.assumeTrue("SLF4J binding doesn't support MDC", "milestone-context".equals(MDC.get(MDC_KEY)));
+        try {
+            importController.importMilestone(milestoneId, CALLBACK_TARGET, CALLBACK_ID, USERNAME);
+        } finally {
+            MDC.remove(MDC_KEY);
+        }
+
+        verifyParallelResult(true);
+        assertEquals(buildIds.size(), workerContexts.size());
+        for (String buildId : buildIds) {
+            assertEquals("milestone-context/" + buildId, workerContexts.get(buildId));
+        }
+    }
+
+    @Test
+    public void testParallelImportFailureDoesNotAbortOtherBuilds() throws Exception {
+        Integer milestoneId = generator.nextInt();
+        List<String> buildIds = mockParallelImport(milestoneId, 4, 2);
+        String failingBuildId = buildIds.get(1);
+        String exceptionMessage = "Upload failed";
+        doAnswer(i -> {
+            String buildId = (String) i.getArguments()[1];
+            if (failingBuildId.equals(buildId)) {
+                throw new IllegalStateException(exceptionMessage);
+            }
+            return successResult(buildId);
+        }).when(brewClient).importBuild(eq(NVR), anyString(), same(KOJI_IMPORT), same(IMPORT_FILE_GENERATOR));
+
+        importController.importMilestone(milestoneId, CALLBACK_TARGET, CALLBACK_ID, USERNAME);
+
+        List<BuildImportResultRest> results = verifyParallelResult(false);
+        assertEquals(buildIds.size(), results.size());
+        for (int i = 0; i < buildIds.size(); i++) {
+            BuildImportResultRest result = results.get(i);
+            assertEquals(buildIds.get(i), result.getBuildRecordId());
+            if (failingBuildId.equals(result.getBuildRecordId())) {
+                assertEquals(BuildImportStatus.ERROR, result.getStatus());
+                assertEquals(exceptionMessage, result.getErrorMessage());
+            } else {
+                assertEquals(BuildImportStatus.SUCCESSFUL, result.getStatus());
+            }
+        }
+    }
+
+    @Test
+    public void testParallelImportRunsRejectedBuildInline() throws Exception {
+        Integer milestoneId = generator.nextInt();
+        List<String> buildIds = mockParallelImport(milestoneId, 3, 3);
+        Field field = PncImportControllerImpl.class.getDeclaredField("executorService");
+        field.setAccessible(true);
+        ManagedExecutorService executorService = (ManagedExecutorService) field.get(importController);
+        AtomicInteger submitted = new AtomicInteger();
+        doAnswer(i -> {
+            if (submitted.incrementAndGet() == 2) {
+                throw new RejectedExecutionException("Queue full");
+            }
+            return pool.submit((Callable<?>) i.getArguments()[0]);
+        }).when(executorService).submit(any(Callable.class));
+        doAnswer(i -> successResult((String) i.getArguments()[1])).when(brewClient)
+                .importBuild(eq(NVR), anyString(), same(KOJI_IMPORT), same(IMPORT_FILE_GENERATOR));
+
+        importController.importMilestone(milestoneId, CALLBACK_TARGET, CALLBACK_ID, USERNAME);
+
+        List<BuildImportResultRest> results = verifyParallelResult(true);
+        assertEquals(buildIds.size(), results.size());
+        for (int i = 0; i < buildIds.size(); i++) {
+            assertEquals(buildIds.get(i), results.get(i).getBuildRecordId());
+            assertEquals(BuildImportStatus.SUCCESSFUL, results.get(i).getStatus());
+        }
+    }
+
+    /**
+     * Mocks milestone with the given number of builds that are imported in parallel by executor with a thread for
+     * each build.
+     *
+     * @return Ids of the builds in the order they are returned by PNC.
+     */
+    private List<String> mockParallelImport(Integer milestoneId, int builds, int parallelism) throws Exception {
+        Environment env = createEnvironment(BuildType.MVN);
+        BuildConfigurationRevision bcar = createBuildConfiguration(generator.nextInt(), env, BuildType.MVN);
+        List<String> buildIds = new ArrayList<>();
+        List<Build> buildRecords = new ArrayList<>();
+        for (int i = 0; i < builds; i++) {
+            String buildId = String.valueOf(1000 + i);
+            buildIds.add(buildId);
+            buildRecords.add(createBuildRecord(buildId, bcar, BREW_BUILD_NAME, BREW_BUILD_VERSION));
+            BuildArtifacts buildArtifacts = new BuildArtifacts();
+            buildArtifacts.buildArtifacts.add(createArtifact(buildId));
+            doReturn(buildArtifacts).when(pncClient).findBuildArtifacts(eq(buildId));
+        }
+        doReturn(buildRecords).when(pncClient).findBuildsOfProductMilestone(eq(milestoneId));
+        doReturn(TAG_PREFIX).when(pncClient).getTagForMilestone(eq(milestoneId));
+        doAnswer(i -> BuildLog.spool(new ByteArrayInputStream(("Log of build " + i.getArguments()[0]).getBytes())))
+                .when(pncClient)
+                .getBuildLog(anyString());
+        mockBrew();
+        mockTranslator();
+
+        when(causewayConfig.getMilestoneImportParallelism()).thenReturn(parallelism);
+        pool = Executors.newFixedThreadPool(builds);
+        ManagedExecutorService executorService = mock(ManagedExecutorService.class);
+        when(executorService.submit(any(Callable.class)))
+                .thenAnswer(i -> pool.submit((Callable<?>) i.getArguments()[0]));
+        Field field = PncImportControllerImpl.class.getDeclaredField("executorService");
+        field.setAccessible(true);
+        field.set(importController, executorService);
+        return buildIds;
+    }
+
+    private static BuildImportResultRest successResult(String buildId) {
+        int brewBuildId = Integer.parseInt(buildId);
+        return new BuildImportResultRest(
+                buildId,
+                brewBuildId,
+                "https://koji.myco.com/brew/buildinfo?buildID=" + brewBuildId,
+                BuildImportStatus.SUCCESSFUL,
+                null);
+    }
+
+    private List<BuildImportResultRest> verifyParallelResult(boolean success) {
+        ArgumentCaptor<MilestoneReleaseResultRest> resultArgument = ArgumentCaptor
+                .forClass(MilestoneReleaseResultRest.class);
+        if (success) {
+            verify(bpmClient).success(eq(CALLBACK_TARGET), eq(CALLBACK_ID), resultArgument.capture());
+        } else {
+            verify(bpmClient).failure(eq(CALLBACK_TARGET), eq(CALLBACK_ID), resultArgument.capture());
+        }
+        return resultArgument.getValue().getBuilds();
+    }
+
     private void verifySuccess() {
         ArgumentCaptor<MilestoneReleaseResultRest> resultArgument = ArgumentCaptor
                 .forClass(MilestoneReleaseResultRest.class);
@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.pncclient;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DependencyStoreTest {
+
+    @Test
+    public void shouldReadBackStoredDependencies() {
+        DependencyStore store = new DependencyStore();
+        for (int i = 0; i < 1000; i++) {
+            store.add("org/foo/bar/" + (i % 10) + "/bar-" + i + ".jar", String.format("%032x", i), i * 1000L);
+        }
+
+        assertEquals(1000, store.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("org/foo/bar/" + (i % 10) + "/bar-" + i + ".jar", store.getDeployPath(i));
+            assertEquals(String.format("%032x", i), store.getMd5(i));
+            assertEquals(i * 1000L, store.getSize(i));
+        }
+    }
+
+    @Test
+    public void shouldKeepIrregularValues() {
+        DependencyStore store = new DependencyStore();
+        store.add("no-directory.tgz", "BEDF8AF1B107B36C72F52009E6FCC768", 1);
+        store.add("@scope/pkg/-/pkg-1.0.0-ünïcødé.tgz", "not-a-checksum", 3_000_000_000L);
+        store.add("dir/", null, 0);
+
+        assertEquals("no-directory.tgz", store.getDeployPath(0));
+        assertEquals("BEDF8AF1B107B36C72F52009E6FCC768", store.getMd5(0));
+        assertEquals("@scope/pkg/-/pkg-1.0.0-ünïcødé.tgz", store.getDeployPath(1));
+        assertEquals("not-a-checksum", store.getMd5(1));
+        assertEquals(3_000_000_000L, store.getSize(1));
+        assertEquals("dir/", store.getDeployPath(2));
+        assertNull(store.getMd5(2));
+    }
+
+    @Test
+    public void shouldIgnoreDuplicateDependencies() {
+        DependencyStore store = new DependencyStore();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(store.add("org/foo/" + (i % 10) + "/foo-" + i + ".jar", String.format("%032x", i), i));
+        }
+        assertFalse(store.add("org/foo/3/foo-3.jar", String.format("%032x", 3), 3));
+        assertTrue(store.add("org/foo/3/foo-3.jar", String.format("%032x", 4), 3));
+        assertTrue(store.add("org/foo/3/foo-3.jar", String.format("%032x", 3), 4));
+        assertTrue(store.add("org/foo/4/foo-3.jar", String.format("%032x", 3), 3));
+        assertTrue(store.add("dir/", null, 0));
+        assertFalse(store.add("dir/", null, 0));
+        assertTrue(store.add("dir/", "not-a-checksum", 0));
+        assertFalse(store.add("dir/", "not-a-checksum", 0));
+
+        assertEquals(1005, store.size());
+        assertEquals(3, store.indexOf("org/foo/3/foo-3.jar", String.format("%032x", 3), 3));
+        assertEquals(1001, store.indexOf("org/foo/3/foo-3.jar", String.format("%032x", 3), 4));
+        assertEquals(1004, store.indexOf("dir/", "not-a-checksum", 0));
+        assertEquals(-1, store.indexOf("org/bar/foo-3.jar", String.format("%032x", 3), 3));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void shouldRejectIndexOutOfRange() {
+        DependencyStore store = new DependencyStore();
+        assertTrue(store.isEmpty());
+        store.getDeployPath(0);
+    }
+}
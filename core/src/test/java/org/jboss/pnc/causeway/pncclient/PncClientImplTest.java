@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.pncclient;
+
+import org.jboss.pnc.client.BuildClient;
+import org.jboss.pnc.client.ProductMilestoneClient;
+import org.jboss.pnc.client.RemoteCollection;
+import org.jboss.pnc.dto.Artifact;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PncClientImplTest {
+
+    private final BuildClient buildClient = mock(BuildClient.class);
+
+    private final PncClientImpl pncClient = new PncClientImpl(mock(ProductMilestoneClient.class), buildClient);
+
+    private ExecutorService pool;
+
+    @After
+    public void after() {
+        pncClient.shutdown();
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldFetchArtifactsFromSaturatedPool() throws Exception {
+        int parallelism = 2;
+        RemoteCollection<Artifact> built = artifacts(artifact("1", "org/foo/foo-1.jar"));
+        RemoteCollection<Artifact> dependencies = artifacts(artifact("2", "org/bar/bar-1.jar"));
+        when(buildClient.getBuiltArtifacts(anyString())).thenReturn(built);
+        when(buildClient.getDependencyArtifacts(anyString())).thenReturn(dependencies);
+
+        pool = Executors.newFixedThreadPool(parallelism);
+        CountDownLatch allRunning = new CountDownLatch(parallelism);
+        List<Future<BuildArtifacts>> results = new ArrayList<>();
+        for (int i = 0; i < parallelism; i++) {
+            String buildId = String.valueOf(i);
+            results.add(pool.submit(() -> {
+                allRunning.countDown();
+                allRunning.await(); // every thread of the pool is taken by a worker
+                return pncClient.findBuildArtifacts(buildId);
+            }));
+        }
+
+        for (Future<BuildArtifacts> result : results) {
+            BuildArtifacts artifacts = result.get(30, TimeUnit.SECONDS);
+            assertEquals(1, artifacts.buildArtifacts.size());
+            assertEquals(1, artifacts.dependencies.size());
+            assertEquals("org/bar/bar-1.jar", artifacts.dependencies.getDeployPath(0));
+        }
+    }
+
+    private static Artifact artifact(String id, String deployPath) {
+        return Artifact.builder()
+                .id(id)
+                .identifier("org:" + id)
+                .deployPath("/" + deployPath)
+                .md5("bedf8af1b107b36c72f52009e6fcc768")
+                .size(10L)
+                .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RemoteCollection<Artifact> artifacts(Artifact artifact) {
+        RemoteCollection<Artifact> collection = mock(RemoteCollection.class);
+        when(collection.iterator()).thenAnswer(i -> Collections.singletonList(artifact).iterator());
+        return collection;
+    }
+}
@@ -0,0 +1,108 @@
+package org.jboss.pnc.causeway.source;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelGzipOutputStreamTest {
+
+    private static final int BLOCK_SIZE = 32 * 1024;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldProduceValidGzipOverMultipleBlocks() throws IOException {
+        byte[] data = prepareData(10 * BLOCK_SIZE + 123);
+
+        byte[] compressed = compress(data);
+
+        assertArrayEquals(data, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+        assertArrayEquals(
+                data,
+                IOUtils.toByteArray(new GzipCompressorInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    public void shouldProduceValidGzipOfEmptyInput() throws IOException {
+        byte[] compressed = compress(new byte[0]);
+
+        assertArrayEquals(new byte[0], IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    public void shouldReadAheadAllData() throws IOException {
+        byte[] data = prepareData(5 * BLOCK_SIZE);
+
+        byte[] read;
+        try (InputStream in = new ReadAheadInputStream(new ByteArrayInputStream(data), executor, 1000, 2)) {
+            read = IOUtils.toByteArray(in);
+        }
+
+        assertArrayEquals(data, read);
+    }
+
+    @Test(timeout = 10000)
+    public void shouldFailReadAheadWhenReaderThrows() throws IOException {
+        byte[] data = prepareData(3000);
+        InputStream failing = new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                if (pos >= 2000) {
+                    throw new IllegalStateException("broken stream");
+                }
+                return super.read(b, off, len);
+            }
+        };
+
+        try (InputStream in = new ReadAheadInputStream(failing, executor, 1000, 2)) {
+            IOUtils.toByteArray(in);
+            fail("Failure of the underlying stream should be propagated.");
+        } catch (IOException ex) {
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    private byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(baos, executor, BLOCK_SIZE, 3)) {
+            // odd sized writes so that they straddle block boundaries
+            for (int off = 0; off < data.length; off += 1000) {
+                out.write(data, off, Math.min(1000, data.length - off));
+            }
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Mix of repeating text and random bytes, so that both back references across blocks and incompressible data are
+     * exercised.
+     */
+    private static byte[] prepareData(int size) {
+        Random random = new Random(42);
+        byte[] text = "The quick brown fox jumps over the lazy dog. ".getBytes();
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (i / 4096) % 3 == 0 ? (byte) random.nextInt() : text[i % text.length];
+        }
+        return data;
+    }
+}
@@ -1,13 +1,30 @@
 package org.jboss.pnc.causeway.source;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.jboss.pnc.causeway.CausewayException;
 import org.jboss.pnc.causeway.brewclient.BuildTranslatorImpl;
 import org.jboss.pnc.causeway.config.CausewayConfig;
@@ -18,6 +35,7 @@ import org.jboss.pnc.enums.BuildType;
 import org.junit.Test;
 
 import static org.jboss.pnc.causeway.source.SourceRenamer.ARCHIVE_SUFFIX;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -27,6 +45,20 @@ public class SourceRenamerTest {
 
     @Test
     public void shouldRenameRootDirectory() throws CausewayException, IOException {
+        assertRenamed(renamer);
+    }
+
+    @Test
+    public void shouldRenameRootDirectoryWithParallelCompression() throws CausewayException, IOException {
+        SourceRenamer parallelRenamer = new SourceRenamer(4, new SourcesCache());
+        try {
+            assertRenamed(parallelRenamer);
+        } finally {
+            parallelRenamer.shutdown();
+        }
+    }
+
+    private void assertRenamed(SourceRenamer renamer) throws CausewayException, IOException {
         String groupId = "org.foo.bar";
         String artifactId = "foo-bar-utils";
         String version = "1.0.0.Final-redhat-00001";
@@ -51,6 +83,94 @@ public class SourceRenamerTest {
         assertEquals(5, count);
     }
 
+    @Test
+    public void shouldCopyArchiveWithMatchingRoot() throws CausewayException, IOException {
+        byte[] archive = tarGz("foo-1.0/", "foo-1.0/bar/", "foo-1.0/bar/baz.java", "foo-1.0/foo.java");
+
+        RenamedSources repack = renamer.repackNPM(new ByteArrayInputStream(archive), "foo", "1.0");
+
+        byte[] content = readFully(repack);
+        assertArrayEquals(archive, content);
+        assertEquals(md5Hex(archive), repack.getMd5());
+    }
+
+    @Test
+    public void shouldRewriteArchiveWithMatchingRootAndOtherEntries() throws CausewayException, IOException {
+        byte[] archive = tarGz("foo-1.0/", "foo-1.0/foo.java", "other/bar.java");
+
+        RenamedSources repack = renamer.repackNPM(new ByteArrayInputStream(archive), "foo", "1.0");
+
+        byte[] content = readFully(repack);
+        assertEquals(md5Hex(content), repack.getMd5());
+        List<String> names = new ArrayList<>();
+        try (TarArchiveInputStream in = new TarArchiveInputStream(
+                new GzipCompressorInputStream(new ByteArrayInputStream(content)))) {
+            for (ArchiveEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                names.add(entry.getName().replaceAll("/$", ""));
+            }
+        }
+        assertEquals(Arrays.asList("foo-1.0", "foo-1.0/foo.java", "foo-1.0/bar.java"), names);
+    }
+
+    private static String md5Hex(byte[] data) throws IOException {
+        try {
+            return String.format("%032x", new BigInteger(1, MessageDigest.getInstance("MD5").digest(data)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static byte[] tarGz(String... names) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream out = new TarArchiveOutputStream(new GzipCompressorOutputStream(baos))) {
+            for (String name : names) {
+                TarArchiveEntry entry = new TarArchiveEntry(name);
+                byte[] content = name.endsWith("/") ? new byte[0] : name.getBytes(StandardCharsets.UTF_8);
+                entry.setSize(content.length);
+                out.putArchiveEntry(entry);
+                out.write(content);
+                out.closeArchiveEntry();
+            }
+        }
+        return baos.toByteArray();
+    }
+
+    @Test
+    public void shouldReuseCachedSources() throws CausewayException, IOException {
+        String groupId = "org.foo.bar";
+        String artifactId = "foo-bar-utils";
+        String version = "1.0.0.Final-redhat-00001";
+        String sourcesId = "http://example.com/foobar.tar.gz";
+        Path cacheDir = Files.createTempDirectory("sources-cache");
+        SourceRenamer cachingRenamer = new SourceRenamer(1, new SourcesCache(cacheDir, Long.MAX_VALUE));
+        AtomicInteger opened = new AtomicInteger();
+        SourcesProvider provider = () -> {
+            opened.incrementAndGet();
+            return SourceRenamerTest.class.getResourceAsStream("foobar.tar.gz");
+        };
+
+        try {
+            RenamedSources first = cachingRenamer.repackMaven(sourcesId, provider, groupId, artifactId, version);
+            byte[] content = readFully(first);
+            RenamedSources second = cachingRenamer.repackMaven(sourcesId, provider, groupId, artifactId, version);
+
+            assertEquals(1, opened.get());
+            assertEquals(first.getName(), second.getName());
+            assertEquals(first.getMd5(), second.getMd5());
+            assertEquals(first.getSize(), second.getSize());
+            assertArrayEquals(content, readFully(second));
+            assertArrayEquals(content, readFully(second));
+        } finally {
+            FileUtils.deleteDirectory(cacheDir.toFile());
+        }
+    }
+
+    private static byte[] readFully(RenamedSources sources) throws IOException {
+        try (InputStream in = sources.read()) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
     @Test
     public void shouldGetMavenDeployPath() {
         String groupId = "org.foo.bar";
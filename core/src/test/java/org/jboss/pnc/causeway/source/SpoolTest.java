@@ -0,0 +1,223 @@
+package org.jboss.pnc.causeway.source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SpoolTest {
+
+    private static final int MB = 1024 * 1024;
+
+    private Path directory;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @Before
+    public void before() throws IOException {
+        directory = Files.createTempDirectory("spool");
+    }
+
+    @After
+    public void after() throws IOException {
+        executor.shutdownNow();
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    public void shouldKeepSmallArchiveInMemory() throws IOException {
+        Spool spool = new Spool(directory, 1024 * 1024, 0);
+        byte[] data = data(100_000);
+
+        Spool.Content content = write(spool, data);
+
+        assertEquals(0, countFiles());
+        assertEquals(data.length, content.size());
+        assertArrayEquals(data, read(content.open()));
+        assertArrayEquals(data, read(content.openAndRelease()));
+        assertEquals(0, spool.getMemoryUsed());
+    }
+
+    @Test
+    public void shouldSpillLargeArchiveToDirectory() throws IOException {
+        Spool spool = new Spool(directory, 1024, 0);
+        byte[] data = data(100_000);
+
+        Spool.Content content = write(spool, data);
+
+        assertEquals(1, countFiles());
+        assertEquals(0, spool.getMemoryUsed());
+        assertEquals(data.length, spool.getDiskUsed());
+        Path copy = directory.resolve("copy");
+        content.copyTo(copy);
+        assertArrayEquals(data, Files.readAllBytes(copy));
+        Files.delete(copy);
+
+        assertArrayEquals(data, read(content.openAndRelease()));
+        assertEquals(0, countFiles());
+        assertEquals(0, spool.getDiskUsed());
+    }
+
+    @Test
+    public void shouldWaitForDiskBudget() throws Exception {
+        Spool spool = new Spool(directory, 0, 10 * MB);
+        Spool.Content first = write(spool, data(9 * MB));
+
+        Spool.Output blocker = spool.create(); // keeps the second writer from being the only one
+        Future<Spool.Content> second = executor.submit(() -> write(spool, data(2 * MB)));
+        while (spool.getWaiting() == 0) {
+            Thread.sleep(10);
+        }
+        assertFalse(second.isDone());
+
+        first.release();
+        Spool.Content content = second.get(5, TimeUnit.SECONDS);
+        blocker.close();
+
+        assertEquals(2 * MB, content.size());
+        content.release();
+        blocker.getContent().release();
+        assertEquals(0, spool.getDiskUsed());
+    }
+
+    @Test
+    public void shouldLetSingleWriterExceedBudget() throws IOException {
+        Spool spool = new Spool(directory, 0, MB);
+
+        Spool.Content content = write(spool, data(3 * MB));
+
+        assertEquals(3 * MB, content.size());
+        content.release();
+        assertEquals(0, spool.getDiskUsed());
+    }
+
+    @Test
+    public void shouldDeleteDiscardedArchive() throws IOException {
+        Spool spool = new Spool(directory, 0, 0);
+        Spool.Output output = spool.create();
+        output.write(data(1000));
+
+        output.discard();
+
+        assertEquals(0, countFiles());
+        assertEquals(0, spool.getDiskUsed());
+    }
+
+    @Test
+    public void shouldReleaseLeakedArchivesWhenScopeCloses() throws IOException {
+        Spool spool = new Spool(directory, 1024, 0);
+        Spool.Content uploaded;
+        try (Spool.Scope scope = Spool.openScope()) {
+            write(spool, data(100_000));
+            write(spool, data(500));
+            uploaded = write(spool, data(2000));
+            read(uploaded.openAndRelease());
+            assertEquals(1, countFiles());
+        }
+
+        assertEquals(0, countFiles());
+        assertEquals(0, spool.getDiskUsed());
+        assertEquals(0, spool.getMemoryUsed());
+        assertEquals(2, spool.getReclaimedCount());
+        assertEquals(100_500, spool.getReclaimedBytes());
+
+        Spool.Content outside = write(spool, data(100_000));
+        assertEquals(1, countFiles());
+        outside.release();
+    }
+
+    @Test
+    public void shouldSweepOnlyOldOrphanedFiles() throws IOException {
+        Spool spool = new Spool(directory, 0, 0);
+        long old = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2);
+        Path orphan = Files.write(directory.resolve("renamer-1.tar.gz"), data(1000));
+        Files.setLastModifiedTime(orphan, FileTime.fromMillis(old));
+        Path recent = Files.write(directory.resolve("renamer-2.tar.gz"), data(1000));
+        Path other = Files.write(directory.resolve("other.tar.gz"), data(1000));
+        Files.setLastModifiedTime(other, FileTime.fromMillis(old));
+        Spool.Content live = write(spool, data(1000));
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(f -> f.getFileName().toString().startsWith("renamer-"))
+                    .forEach(f -> f.toFile().setLastModified(old));
+        }
+        Files.setLastModifiedTime(recent, FileTime.fromMillis(System.currentTimeMillis()));
+
+        assertEquals(1, spool.sweep(TimeUnit.HOURS.toMillis(1)));
+
+        assertFalse(Files.exists(orphan));
+        assertTrue(Files.exists(recent));
+        assertTrue(Files.exists(other));
+        assertArrayEquals(data(1000), read(live.openAndRelease()));
+        assertEquals(1, spool.getReclaimedCount());
+        assertEquals(1000, spool.getReclaimedBytes());
+    }
+
+    @Test
+    public void shouldSweepOrphanedBuildLogs() throws IOException {
+        String tempDir = System.getProperty("java.io.tmpdir");
+        System.setProperty("java.io.tmpdir", directory.toString());
+        try {
+            Spool spool = new Spool(directory, 0, 0);
+            long old = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2);
+            Path orphan = Files.write(directory.resolve("buildlog-1.log"), data(1000));
+            Files.setLastModifiedTime(orphan, FileTime.fromMillis(old));
+            Path recent = Files.write(directory.resolve("buildlog-2.log"), data(1000));
+
+            assertEquals(1, spool.sweep(TimeUnit.HOURS.toMillis(1)));
+
+            assertFalse(Files.exists(orphan));
+            assertTrue(Files.exists(recent));
+        } finally {
+            System.setProperty("java.io.tmpdir", tempDir);
+        }
+    }
+
+    private static Spool.Content write(Spool spool, byte[] data) throws IOException {
+        Spool.Output output = spool.create();
+        try (Spool.Output out = output) {
+            for (int off = 0; off < data.length; off += 4096) {
+                out.write(data, off, Math.min(4096, data.length - off));
+            }
+        }
+        return output.getContent();
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            return IOUtils.toByteArray(stream);
+        }
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static byte[] data(int size) {
+        byte[] data = new byte[size];
+        Arrays.fill(data, (byte) 'x');
+        for (int i = 0; i < size; i += 7) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+}
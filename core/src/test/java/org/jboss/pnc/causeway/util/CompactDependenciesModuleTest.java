@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.util;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.jboss.pnc.api.causeway.dto.push.Build;
+import org.jboss.pnc.api.causeway.dto.push.Dependency;
+import org.jboss.pnc.api.causeway.dto.push.MavenBuild;
+import org.jboss.pnc.api.causeway.dto.push.MavenBuiltArtifact;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompactDependenciesModuleTest {
+
+    private static final String BUILD = "/org/jboss/pnc/causeway/ctl/build.json";
+
+    @Test
+    public void shouldReadSameDependenciesAsPlainMapper() throws IOException {
+        Build expected = read(mapper(false), BUILD);
+        Build actual = read(mapper(true), BUILD);
+
+        assertEquals(expected.getDependencies().size(), actual.getDependencies().size());
+        assertEquals(expected.getDependencies(), new HashSet<>(actual.getDependencies()));
+        assertEquals(expected.getBuiltArtifacts(), actual.getBuiltArtifacts());
+    }
+
+    @Test
+    public void shouldSerializeDependenciesBack() throws IOException {
+        ObjectMapper mapper = mapper(true);
+        Build build = read(mapper, BUILD);
+
+        Build copy = mapper.readValue(mapper.writeValueAsString(build), Build.class);
+
+        assertEquals(new HashSet<>(build.getDependencies()), new HashSet<>(copy.getDependencies()));
+    }
+
+    @Test
+    public void shouldReadDependencyArray() throws IOException {
+        String json = "[{\"size\": 3000000000, \"md5\": \"bedf8af1b107b36c72f52009e6fcc768\", \"filename\": \"a.jar\"},"
+                + "{\"filename\": \"b-1.0.pom\", \"md5\": \"0123456789abcdef0123456789abcdef\", \"size\": 10}]";
+
+        Set<Dependency> dependencies = mapper(true).readValue(
+                json,
+                mapper(true).getTypeFactory().constructCollectionType(Set.class, Dependency.class));
+
+        assertEquals(2, dependencies.size());
+        Dependency first = dependencies.iterator().next();
+        assertEquals("a.jar", first.getFilename());
+        assertEquals("bedf8af1b107b36c72f52009e6fcc768", first.getMd5());
+        assertEquals(3_000_000_000L, (long) first.getSize());
+    }
+
+    @Test
+    public void shouldDropDuplicateDependencies() throws IOException {
+        String json = "[{\"filename\": \"a.jar\", \"md5\": \"bedf8af1b107b36c72f52009e6fcc768\", \"size\": 10},"
+                + "{\"filename\": \"a.jar\", \"md5\": \"bedf8af1b107b36c72f52009e6fcc768\", \"size\": 10},"
+                + "{\"filename\": \"a.jar\", \"md5\": \"0123456789abcdef0123456789abcdef\", \"size\": 10}]";
+
+        Set<Dependency> dependencies = mapper(true).readValue(
+                json,
+                mapper(true).getTypeFactory().constructCollectionType(Set.class, Dependency.class));
+
+        assertEquals(2, dependencies.size());
+        Dependency duplicate = Dependency.builder()
+                .filename("a.jar")
+                .md5("bedf8af1b107b36c72f52009e6fcc768")
+                .size(10L)
+                .build();
+        assertTrue(dependencies.contains(duplicate));
+        assertFalse(dependencies.contains(Dependency.builder().filename("a.jar").md5("other").size(10L).build()));
+    }
+
+    @Test(expected = JsonMappingException.class)
+    public void shouldRejectUnknownProperty() throws IOException {
+        String json = "[{\"filename\": \"a.jar\", \"md5\": \"bedf8af1b107b36c72f52009e6fcc768\", \"foo\": 1}]";
+
+        ObjectMapper mapper = mapper(true);
+        mapper.readValue(json, mapper.getTypeFactory().constructCollectionType(Set.class, Dependency.class));
+    }
+
+    private static ObjectMapper mapper(boolean compact) {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerSubtypes(MavenBuild.class, MavenBuiltArtifact.class);
+        if (compact) {
+            mapper.registerModule(new CompactDependenciesModule());
+        }
+        return mapper;
+    }
+
+    private static Build read(ObjectMapper mapper, String resource) throws IOException {
+        try (InputStream in = CompactDependenciesModuleTest.class.getResourceAsStream(resource)) {
+            return mapper.readValue(in, Build.class);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.util;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.jboss.pnc.causeway.CausewayException;
+import org.jboss.pnc.enums.BuildType;
+import org.junit.Test;
+
+import static org.jboss.pnc.causeway.util.ImportMetrics.Phase.KOJI_METADATA;
+import static org.jboss.pnc.causeway.util.ImportMetrics.Phase.UPLOAD;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ImportMetricsTest {
+
+    private final MetricRegistry registry = new MetricRegistry();
+
+    private final ImportMetrics metrics = new ImportMetrics(registry);
+
+    @Test
+    public void shouldRegisterTimersUpFront() {
+        assertTrue(registry.getTimers().containsKey("causeway.import.phase.koji-metadata"));
+        assertTrue(registry.getTimers().containsKey("causeway.import.phase.upload.maven"));
+        assertTrue(registry.getTimers().containsKey("causeway.import.phase.sources-repack.npm"));
+        assertEquals(ImportMetrics.MAVEN, ImportMetrics.buildType(BuildType.MVN));
+    }
+
+    @Test
+    public void shouldTimeFailedCalls() {
+        try {
+            metrics.time(UPLOAD, ImportMetrics.MAVEN, () -> {
+                throw new CausewayException("Upload failed");
+            });
+            fail("Exception expected");
+        } catch (CausewayException ex) {
+            assertEquals("Upload failed", ex.getMessage());
+        }
+        metrics.time(KOJI_METADATA).stop();
+
+        assertEquals(1, registry.timer("causeway.import.phase.upload.maven").getCount());
+        assertEquals(1, registry.timer("causeway.import.phase.koji-metadata").getCount());
+        assertEquals(0, registry.timer("causeway.import.phase.upload.npm").getCount());
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.util;
+
+import org.junit.Test;
+
+public class JfrEventTest {
+
+    @Test
+    public void shouldNotFailWhetherOrNotJfrIsAvailable() {
+        for (JfrEvent.Type type : JfrEvent.Type.values()) {
+            JfrEvent event = JfrEvent.begin(type).buildId(42).nvr("foo-1.0-1").bytes(1024).operation("test");
+            event.close();
+            event.close();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.util;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PrometheusExporterTest {
+
+    private final MetricRegistry registry = new MetricRegistry();
+
+    private final AtomicLong time = new AtomicLong();
+
+    private final PrometheusExporter exporter = new PrometheusExporter(registry, time::get);
+
+    @Test
+    public void shouldRenderRegistryMetrics() {
+        registry.meter("causeway.import.build.meter").mark(3);
+        registry.counter("causeway.koji.logins").inc(2);
+        Gauge<Integer> gauge = () -> 7;
+        registry.register("causeway.storage.pool.leased", gauge);
+        registry.timer("causeway.import.phase.upload.maven").update(2, TimeUnit.SECONDS);
+        registry.histogram("pushed-file-to-brew.logs.size").update(100);
+
+        String text = exporter.scrape();
+
+        assertTrue(text.contains("# TYPE causeway_import_build_meter_total counter\n"));
+        assertTrue(text.contains("causeway_import_build_meter_total 3\n"));
+        assertTrue(text.contains("causeway_koji_logins 2\n"));
+        assertTrue(text.contains("causeway_storage_pool_leased 7\n"));
+        assertTrue(text.contains("# TYPE causeway_import_phase_upload_maven summary\n"));
+        assertTrue(text.contains("causeway_import_phase_upload_maven{quantile=\"0.5\"} 2\n"));
+        assertTrue(text.contains("causeway_import_phase_upload_maven_count 1\n"));
+        assertTrue(text.contains("pushed_file_to_brew_logs_size{quantile=\"0.99\"} 100\n"));
+        assertTrue(text.contains("jvm_memory_bytes_used{area=\"heap\"}"));
+        assertTrue(text.contains("jvm_threads_current"));
+    }
+
+    @Test
+    public void shouldCacheRenderedText() {
+        registry.counter("causeway.koji.logins").inc();
+        String first = exporter.scrape();
+
+        registry.counter("causeway.koji.logins").inc();
+        assertSame(first, exporter.scrape());
+
+        time.addAndGet(PrometheusExporter.CACHE_MILLIS);
+        String refreshed = exporter.scrape();
+        assertFalse(refreshed.contains("causeway_koji_logins 1\n"));
+        assertTrue(refreshed.contains("causeway_koji_logins 2\n"));
+    }
+
+    @Test
+    public void shouldSanitizeNames() {
+        assertEquals("pushed_file_to_brew_logs_size", PrometheusExporter.name("pushed-file-to-brew.logs.size"));
+        assertEquals("_1xx", PrometheusExporter.name("1xx"));
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.util;
+
+import org.jboss.pnc.causeway.CausewayException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    private final SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldShareResultOfConcurrentCall() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<Integer> first = executor.submit(() -> singleFlight.execute("nvr", () -> {
+            started.countDown();
+            release.await();
+            return calls.incrementAndGet();
+        }));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        Future<Integer> second = executor.submit(() -> singleFlight.execute("nvr", calls::incrementAndGet));
+        Thread.sleep(200); // let the second call attach to the running one
+        assertFalse(second.isDone());
+        release.countDown();
+
+        assertEquals(Integer.valueOf(1), first.get(10, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(1), second.get(10, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+        assertFalse(singleFlight.isInFlight("nvr"));
+    }
+
+    @Test
+    public void shouldRunAgainAfterCallFinished() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals(Integer.valueOf(1), singleFlight.execute("nvr", calls::incrementAndGet));
+        assertEquals(Integer.valueOf(2), singleFlight.execute("nvr", calls::incrementAndGet));
+    }
+
+    @Test
+    public void shouldPropagateException() {
+        try {
+            singleFlight.execute("nvr", () -> {
+                throw new CausewayException("Import failed");
+            });
+            fail("Exception expected");
+        } catch (CausewayException ex) {
+            assertEquals("Import failed", ex.getMessage());
+        }
+        assertFalse(singleFlight.isInFlight("nvr"));
+    }
+}
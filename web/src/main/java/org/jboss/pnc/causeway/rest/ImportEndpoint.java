@@ -16,7 +16,8 @@
 package org.jboss.pnc.causeway.rest;
 
 import org.jboss.pnc.api.causeway.dto.push.BuildImportRequest;
-import org.jboss.pnc.causeway.ctl.ImportController;
+import org.jboss.pnc.causeway.ctl.ImportJob;
+import org.jboss.pnc.causeway.ctl.ImportQueue;
 import org.jboss.pnc.causeway.rest.spi.Import;
 
 import javax.enterprise.context.RequestScoped;
@@ -26,8 +27,10 @@ import javax.ws.rs.core.Response;
 @RequestScoped
 public class ImportEndpoint implements Import {
 
+    static final String QUEUE_FULL = "Import queue is full, try again later.";
+
     @Inject
-    private ImportController controller;
+    private ImportQueue queue;
 
     @Inject
     private UserService userSerivce;
@@ -39,11 +42,14 @@ public class ImportEndpoint implements Import {
 
     @Override
     public Response importBuild(BuildImportRequest request) {
-        controller.importBuild(
+        ImportJob job = ImportJob.importBuild(
                 request.getBuild(),
                 request.getCallback(),
                 userSerivce.getUsername(),
                 request.isReimport());
+        if (!queue.submit(job)) {
+            return Response.status(Response.Status.TOO_MANY_REQUESTS).entity(QUEUE_FULL).build();
+        }
         return Response.accepted().build();
     }
 
@@ -20,6 +20,7 @@ import javax.ws.rs.core.Application;
 
 import java.util.HashSet;
 import java.util.Set;
+import org.jboss.pnc.causeway.rest.filter.GzipRequestInterceptor;
 import org.jboss.pnc.causeway.rest.filter.MDCLoggingFilter;
 
 /**
@@ -47,6 +48,9 @@ public class ReportsRestActivator extends Application {
         resources.add(PncImportResourceEndpoint.class);
         resources.add(ImportEndpoint.class);
         resources.add(UntagEndpoint.class);
+        resources.add(MetricsEndpoint.class);
         resources.add(MDCLoggingFilter.class);
+        resources.add(GzipRequestInterceptor.class);
+        resources.add(ObjectMapperResolver.class);
     }
 }
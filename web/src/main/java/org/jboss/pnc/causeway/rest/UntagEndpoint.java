@@ -16,7 +16,8 @@
 package org.jboss.pnc.causeway.rest;
 
 import org.jboss.pnc.api.causeway.dto.untag.UntagRequest;
-import org.jboss.pnc.causeway.ctl.ImportController;
+import org.jboss.pnc.causeway.ctl.ImportJob;
+import org.jboss.pnc.causeway.ctl.ImportQueue;
 import org.jboss.pnc.causeway.rest.spi.Untag;
 
 import javax.enterprise.context.RequestScoped;
@@ -27,11 +28,13 @@ import javax.ws.rs.core.Response;
 public class UntagEndpoint implements Untag {
 
     @Inject
-    private ImportController controller;
+    private ImportQueue queue;
 
     @Override
     public Response untagBuild(UntagRequest request) {
-        controller.untagBuild(request.getBuild(), request.getCallback());
+        if (!queue.submit(ImportJob.untagBuild(request.getBuild(), request.getCallback()))) {
+            return Response.status(Response.Status.TOO_MANY_REQUESTS).entity(ImportEndpoint.QUEUE_FULL).build();
+        }
         return Response.accepted().build();
     }
 
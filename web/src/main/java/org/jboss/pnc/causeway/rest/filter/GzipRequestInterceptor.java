@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2015 Red Hat, Inc. (jbrazdil@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.causeway.rest.filter;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.ReaderInterceptor;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Decompresses request bodies sent with {@code Content-Encoding: gzip}, so that large import requests can be sent
+ * compressed.
+ */
+@Provider
+public class GzipRequestInterceptor implements ReaderInterceptor {
+
+    @Override
+    public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException {
+        List<String> encodings = context.getHeaders().get(HttpHeaders.CONTENT_ENCODING);
+        if (encodings != null && encodings.stream().anyMatch(GzipRequestInterceptor::isGzip)) {
+            context.getHeaders().remove(HttpHeaders.CONTENT_ENCODING);
+            context.setInputStream(new GZIPInputStream(context.getInputStream()));
+        }
+        return context.proceed();
+    }
+
+    private static boolean isGzip(String encoding) {
+        String trimmed = encoding.trim();
+        return "gzip".equalsIgnoreCase(trimmed) || "x-gzip".equalsIgnoreCase(trimmed);
+    }
+}